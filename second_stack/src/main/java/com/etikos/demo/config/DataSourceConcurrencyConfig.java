@@ -0,0 +1,40 @@
+package com.etikos.demo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Envuelve el {@link DataSource} de Hikari en un {@link ConcurrencyLimitedDataSource}, de modo que
+ * JPA, {@code JdbcTemplate}, la ingesta con COPY y Flyway comparten el mismo límite de conexiones
+ * simultáneas ({@code audit.datasource.max-concurrency}; {@code 0} lo desactiva).
+ */
+@Configuration(proxyBeanMethods = false)
+public class DataSourceConcurrencyConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceConcurrencyConfig.class);
+
+    @Bean
+    static BeanPostProcessor dataSourceConcurrencyLimit(
+            @Value("${audit.datasource.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+            @Value("${audit.datasource.acquire-timeout:5s}") Duration acquireTimeout) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (maxConcurrency <= 0 || !(bean instanceof DataSource dataSource)
+                        || bean instanceof ConcurrencyLimitedDataSource) {
+                    return bean;
+                }
+                log.info("DataSource '{}' limitado a {} conexiones simultáneas (espera máxima {})",
+                        beanName, maxConcurrency, acquireTimeout);
+                return new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeout);
+            }
+        };
+    }
+}
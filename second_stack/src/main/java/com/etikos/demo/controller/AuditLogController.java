@@ -1,8 +1,14 @@
 package com.etikos.demo.controller;
 
+import com.etikos.demo.dto.AuditBatchResponse;
+import com.etikos.demo.dto.AuditCursorPage;
+import com.etikos.demo.dto.AuditIngestResponse;
 import com.etikos.demo.dto.AuditLogRequest;
 import com.etikos.demo.dto.AuditLogResponse;
 import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.service.AuditCopyIngestService;
+import com.etikos.demo.service.AuditCursor;
 import com.etikos.demo.service.AuditLogService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,15 +19,26 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/audits")
@@ -29,10 +46,20 @@ import java.time.Instant;
 @Tag(name = "Auditoria", description = "Registro y consulta de eventos de auditoria")
 public class AuditLogController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 1000;
+    private static final String METADATA_PARAM_PREFIX = "meta.";
+    private static final int MAX_METADATA_FILTERS = 10;
+
     private final AuditLogService auditLogService;
+    private final AuditCopyIngestService copyIngestService;
+    private final int maxBatchSize;
 
-    public AuditLogController(AuditLogService auditLogService) {
+    public AuditLogController(AuditLogService auditLogService,
+                              AuditCopyIngestService copyIngestService,
+                              @Value("${audit.batch.max-size:1000}") int maxBatchSize) {
         this.auditLogService = auditLogService;
+        this.copyIngestService = copyIngestService;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Operation(
@@ -49,12 +76,49 @@ public class AuditLogController {
         return AuditLogResponse.from(auditLogService.record(request));
     }
 
+    @Operation(
+            summary = "Registrar eventos de auditoria por lotes",
+            description = "Valida cada evento por separado y guarda los validos en una sola transaccion con INSERT agrupados. Los invalidos se informan por indice."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "201", description = "Al menos un evento registrado", content = @Content(schema = @Schema(implementation = AuditBatchResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Lote vacio, demasiado grande o sin eventos validos", content = @Content(schema = @Schema(implementation = AuditBatchResponse.class)))
+    })
+    @PostMapping("/batch")
+    public ResponseEntity<AuditBatchResponse> recordAuditBatch(
+            @RequestBody List<AuditLogRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El lote no puede estar vacio");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El lote supera el maximo de " + maxBatchSize + " eventos");
+        }
+        AuditBatchResponse result = auditLogService.recordBatch(requests);
+        HttpStatus status = result.accepted() > 0 ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    @Operation(
+            summary = "Ingesta masiva NDJSON",
+            description = "Recibe un objeto AuditLogRequest por linea (application/x-ndjson) y lo carga con COPY en streaming. Pensado para backfills y picos de carga; la memoria usada no depende del tamano del cuerpo."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Resumen de lineas insertadas y rechazadas", content = @Content(schema = @Schema(implementation = AuditIngestResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Error de base de datos; no se inserta ninguna fila")
+    })
+    @PostMapping(value = "/ingest", consumes = "application/x-ndjson")
+    public AuditIngestResponse ingestAudits(InputStream body) throws IOException, SQLException {
+        return copyIngestService.ingest(body);
+    }
+
     @Operation(
             summary = "Buscar eventos de auditoria",
-            description = "Filtra los eventos por usuario, accion y rango de fechas. Soporta parametros de paginacion de Spring."
+            description = "Filtra los eventos por usuario, accion, rango de fechas y pares meta.<clave>=<valor> sobre metadata (por ejemplo meta.reason=INVALID_PASSWORD&meta.email=a@b.com). Soporta parametros de paginacion de Spring."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Resultados paginados"),
+            @ApiResponse(responseCode = "400", description = "Filtro de metadata invalido"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @GetMapping
@@ -65,10 +129,72 @@ public class AuditLogController {
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
             @Parameter(description = "Fecha-hora final (ISO-8601)") @RequestParam(required = false)
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(hidden = true) @RequestParam Map<String, String> params,
             @Parameter(description = "Parametros de paginacion (page, size, sort)") @PageableDefault(sort = "timestamp", direction = Sort.Direction.DESC)
             Pageable pageable) {
-        return auditLogService.search(uid, action, from, to, pageable)
+        return auditLogService.search(uid, action, from, to, metadataFilters(params), pageable)
                 .map(AuditLogResponse::from);
     }
-}
 
+    @Operation(
+            summary = "Buscar eventos de auditoria por cursor",
+            description = "Mismos filtros que la busqueda paginada (incluidos meta.<clave>=<valor>), ordenados por timestamp e id descendentes. Devuelve un cursor opaco para la pagina siguiente y no calcula el total, por lo que la latencia no depende de la profundidad."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Pagina de resultados", content = @Content(schema = @Schema(implementation = AuditCursorPage.class))),
+            @ApiResponse(responseCode = "400", description = "Cursor o tamano invalido")
+    })
+    @GetMapping("/cursor")
+    public AuditCursorPage searchAuditsByCursor(
+            @Parameter(description = "UID del usuario afectado") @RequestParam(required = false) String uid,
+            @Parameter(description = "Accion auditada") @RequestParam(required = false) AuditAction action,
+            @Parameter(description = "Fecha-hora inicial (ISO-8601)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "Fecha-hora final (ISO-8601)") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(description = "Cursor devuelto por la pagina anterior (vacio para la primera)") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Elementos por pagina (1-" + MAX_CURSOR_PAGE_SIZE + ")") @RequestParam(defaultValue = "20") int size,
+            @Parameter(hidden = true) @RequestParam Map<String, String> params) {
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "size debe estar entre 1 y " + MAX_CURSOR_PAGE_SIZE);
+        }
+        KeysetScrollPosition position;
+        try {
+            position = AuditCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        Window<AuditLog> window = auditLogService.scroll(uid, action, from, to, metadataFilters(params), size, position);
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? AuditCursor.encode(window.positionAt(window.size() - 1))
+                : null;
+        return new AuditCursorPage(
+                window.map(AuditLogResponse::from).getContent(),
+                window.size(),
+                window.hasNext(),
+                nextCursor);
+    }
+
+    /**
+     * Extrae los parámetros {@code meta.<clave>=<valor>} de la query string.
+     */
+    private static Map<String, String> metadataFilters(Map<String, String> params) {
+        Map<String, String> filters = new LinkedHashMap<>();
+        params.forEach((name, value) -> {
+            if (name.startsWith(METADATA_PARAM_PREFIX)) {
+                String key = name.substring(METADATA_PARAM_PREFIX.length());
+                if (key.isBlank()) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Filtro de metadata sin clave: " + name);
+                }
+                filters.put(key, value);
+            }
+        });
+        if (filters.size() > MAX_METADATA_FILTERS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Como maximo " + MAX_METADATA_FILTERS + " filtros de metadata");
+        }
+        return filters;
+    }
+}
@@ -0,0 +1,14 @@
+package com.etikos.demo.dto;
+
+import java.util.List;
+
+/**
+ * Error de validación de un elemento concreto dentro de un lote.
+ *
+ * @param index posición (0-index) del elemento en el arreglo recibido
+ */
+public record AuditBatchItemError(
+        int index,
+        List<String> errors
+) {
+}
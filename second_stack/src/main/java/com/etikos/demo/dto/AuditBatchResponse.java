@@ -0,0 +1,15 @@
+package com.etikos.demo.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de un registro por lotes: los elementos válidos se guardan en una sola transacción
+ * y los inválidos se informan por índice.
+ */
+public record AuditBatchResponse(
+        int received,
+        int accepted,
+        int rejected,
+        List<AuditBatchItemError> errors
+) {
+}
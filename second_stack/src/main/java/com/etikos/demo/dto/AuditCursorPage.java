@@ -0,0 +1,18 @@
+package com.etikos.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Página de una búsqueda por cursor (keyset). {@code nextCursor} es opaco y sólo está presente
+ * cuando hay más resultados; no se calcula el total para evitar el {@code count(*)}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AuditCursorPage(
+        List<AuditLogResponse> content,
+        int size,
+        boolean hasNext,
+        String nextCursor
+) {
+}
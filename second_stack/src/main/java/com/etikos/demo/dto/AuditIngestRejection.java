@@ -0,0 +1,12 @@
+package com.etikos.demo.dto;
+
+/**
+ * Línea NDJSON descartada durante una ingesta masiva.
+ *
+ * @param line número de línea (1-index) dentro del cuerpo recibido
+ */
+public record AuditIngestRejection(
+        long line,
+        String reason
+) {
+}
@@ -0,0 +1,15 @@
+package com.etikos.demo.dto;
+
+import java.util.List;
+
+/**
+ * Resumen de una ingesta NDJSON. {@code rejections} sólo incluye las primeras líneas rechazadas
+ * para que la respuesta no crezca con el tamaño del cuerpo; {@code rejected} las cuenta todas.
+ */
+public record AuditIngestResponse(
+        long lines,
+        long inserted,
+        long rejected,
+        List<AuditIngestRejection> rejections
+) {
+}
@@ -3,18 +3,19 @@ package com.etikos.demo.dto;
 import com.etikos.demo.entity.AuditAction;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
 import java.time.Instant;
 import java.util.Map;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public record AuditLogRequest(
-        String uid,
-        String actorUid,
+        @Size(max = 150) String uid,
+        @Size(max = 150) String actorUid,
         @NotNull AuditAction action,
         Instant timestamp,
-        String ip,
-        String userAgent,
+        @Size(max = 100) String ip,
+        @Size(max = 500) String userAgent,
         Map<String, Object> metadata
 ) {
 }
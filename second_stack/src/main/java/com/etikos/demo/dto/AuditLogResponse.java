@@ -2,7 +2,9 @@ package com.etikos.demo.dto;
 
 import com.etikos.demo.entity.AuditAction;
 import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.entity.AuditMetadataJson;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.time.Instant;
 import java.util.Map;
@@ -16,6 +18,7 @@ public record AuditLogResponse(
         Instant timestamp,
         String ip,
         String userAgent,
+        @JsonSerialize(using = AuditMetadataSerializer.class)
         Map<String, Object> metadata
 ) {
     public static AuditLogResponse from(AuditLog log) {
@@ -27,8 +30,19 @@ public record AuditLogResponse(
                 log.getTimestamp(),
                 log.getIp(),
                 log.getUserAgent(),
-                log.getMetadata() != null ? Map.copyOf(log.getMetadata()) : Map.of()
+                metadata(log.getMetadata())
         );
     }
+
+    /**
+     * La metadata leída de la base ya es inmutable y se reutiliza sin parsear; la de una entidad
+     * recién creada se copia como antes.
+     */
+    private static Map<String, Object> metadata(Map<String, Object> metadata) {
+        if (metadata == null) {
+            return Map.of();
+        }
+        return metadata instanceof AuditMetadataJson ? metadata : Map.copyOf(metadata);
+    }
 }
 
@@ -0,0 +1,30 @@
+package com.etikos.demo.dto;
+
+import com.etikos.demo.entity.AuditMetadataJson;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Escribe la metadata leída de la base tal cual ({@link AuditMetadataJson#json()}), sin pasar
+ * por un mapa; cualquier otro mapa se serializa de la forma habitual.
+ */
+public class AuditMetadataSerializer extends StdSerializer<Map<String, Object>> {
+
+    @SuppressWarnings("unchecked")
+    public AuditMetadataSerializer() {
+        super((Class<Map<String, Object>>) (Class<?>) Map.class);
+    }
+
+    @Override
+    public void serialize(Map<String, Object> value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (value instanceof AuditMetadataJson metadata) {
+            gen.writeRawValue(metadata.json());
+        } else {
+            provider.defaultSerializeValue(value, gen);
+        }
+    }
+}
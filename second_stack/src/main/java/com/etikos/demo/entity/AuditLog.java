@@ -8,7 +8,9 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.Instant;
 import java.util.Map;
@@ -17,8 +19,18 @@ import java.util.Map;
 @Table(name = "audit_logs")
 public class AuditLog {
 
+    /**
+     * Incremento de {@code audit_logs_seq}: cada nextval reserva este número de ids.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Secuencia con optimizador pooled: Hibernate reserva {@code allocationSize} ids por cada
+     * nextval y puede agrupar los INSERT en lotes JDBC (IDENTITY lo impide).
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_logs_seq")
+    @SequenceGenerator(name = "audit_logs_seq", sequenceName = "audit_logs_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(nullable = true, length = 150)
@@ -41,7 +53,8 @@ public class AuditLog {
     private String userAgent;
 
     @Convert(converter = AuditMetadataConverter.class)
-    @Column(name = "metadata", columnDefinition = "TEXT")
+    @Column(name = "metadata", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "cast(? as jsonb)")
     private Map<String, Object> metadata;
 
     public AuditLog() {
@@ -1,26 +1,31 @@
 package com.etikos.demo.entity;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 
-import java.io.IOException;
 import java.util.Map;
 
 /**
- * Convierte un mapa de metadata hacia/desde la columna JSON almacenada en Postgres.
+ * Convierte un mapa de metadata hacia/desde la columna jsonb almacenada en Postgres. Al leer no
+ * parsea el JSON: devuelve un {@link AuditMetadataJson} que lo hace sólo si se accede a sus claves.
  */
 @Converter
 public class AuditMetadataConverter implements AttributeConverter<Map<String, Object>, String> {
 
     private static final ObjectMapper mapper = new ObjectMapper();
-    private static final TypeReference<Map<String, Object>> TYPE = new TypeReference<>() {};
 
     @Override
     public String convertToDatabaseColumn(Map<String, Object> attribute) {
-        if (attribute == null || attribute.isEmpty()) {
+        if (attribute == null) {
+            return null;
+        }
+        if (attribute instanceof AuditMetadataJson metadata) {
+            // Leída de la base y sin cambios posibles (es inmutable): se devuelve el mismo JSON
+            return metadata.json();
+        }
+        if (attribute.isEmpty()) {
             return null;
         }
         try {
@@ -35,11 +40,7 @@ public class AuditMetadataConverter implements AttributeConverter<Map<String, Ob
         if (dbData == null || dbData.isBlank()) {
             return Map.of();
         }
-        try {
-            return mapper.readValue(dbData, TYPE);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("No se pudo deserializar el JSON de metadata de auditoría", e);
-        }
+        return new AuditMetadataJson(dbData);
     }
 }
 
@@ -0,0 +1,26 @@
+package com.etikos.demo.entity;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registra en Hibernate la función {@value #CONTAINS}, que se traduce al operador {@code @>} de
+ * jsonb. Llamar a {@code jsonb_contains(...)} como función daría el mismo resultado pero Postgres
+ * sólo usa el índice GIN de {@code metadata} con el operador.
+ */
+public class AuditMetadataFunctions implements FunctionContributor {
+
+    public static final String CONTAINS = "audit_metadata_contains";
+
+    @Override
+    public void contributeFunctions(FunctionContributions contributions) {
+        contributions.getFunctionRegistry()
+                .patternDescriptorBuilder(CONTAINS, "(?1 @> cast(?2 as jsonb))")
+                .setExactArgumentCount(2)
+                .setInvariantType(contributions.getTypeConfiguration()
+                        .getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.BOOLEAN))
+                .register();
+    }
+}
@@ -0,0 +1,73 @@
+package com.etikos.demo.entity;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata leída de la base de datos: conserva el JSON tal cual lo devuelve Postgres y sólo lo
+ * convierte en mapa la primera vez que alguien accede a sus claves. Así la lectura de una página
+ * de {@code GET /api/audits} no parsea ni copia la metadata: {@code AuditLogResponse} la escribe
+ * en la respuesta sin modificarla. Es inmutable.
+ */
+public final class AuditMetadataJson extends AbstractMap<String, Object> {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> TYPE = new TypeReference<>() {};
+
+    private final String json;
+    private volatile Map<String, Object> map;
+
+    public AuditMetadataJson(String json) {
+        this.json = json;
+    }
+
+    /**
+     * JSON original, válido para incrustarlo directamente en otra salida JSON.
+     */
+    public String json() {
+        return json;
+    }
+
+    public boolean isParsed() {
+        return map != null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return map().entrySet();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return map().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map().size();
+    }
+
+    private Map<String, Object> map() {
+        Map<String, Object> result = map;
+        if (result == null) {
+            try {
+                result = Collections.unmodifiableMap(mapper.readValue(json, TYPE));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("No se pudo deserializar el JSON de metadata de auditoría", e);
+            }
+            map = result;
+        }
+        return result;
+    }
+}
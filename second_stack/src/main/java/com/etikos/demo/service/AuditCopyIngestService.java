@@ -0,0 +1,396 @@
+package com.etikos.demo.service;
+
+import com.etikos.demo.dto.AuditIngestRejection;
+import com.etikos.demo.dto.AuditIngestResponse;
+import com.etikos.demo.entity.AuditAction;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ingesta masiva de eventos en formato NDJSON (un objeto JSON por línea) usando {@code COPY ... FROM STDIN}.
+ * <p>
+ * El cuerpo se lee línea a línea y cada línea se recorre con el parser de streaming de Jackson,
+ * sin construir mapas ni entidades. Las filas válidas se codifican como CSV en un buffer reutilizable
+ * que se envía a Postgres cada {@value #COPY_CHUNK_CHARS} caracteres, así que la memoria usada no
+ * depende del tamaño del cuerpo.
+ * <p>
+ * Toda la ingesta usa una sola conexión y una sola transacción. Mientras dura un COPY la conexión no
+ * admite otras consultas, así que cuando se agotan los ids reservados se cierra el COPY en curso, se
+ * piden más a la secuencia por la misma conexión y se abre otro. Si Postgres rechaza cualquiera de
+ * ellos, o el cuerpo no se puede leer, se deshace la transacción y no se inserta ninguna fila.
+ */
+@Service
+public class AuditCopyIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditCopyIngestService.class);
+
+    private static final String COPY_SQL =
+            "COPY audit_logs (id, uid, actor_uid, action, timestamp, ip, user_agent, metadata) FROM STDIN WITH (FORMAT csv)";
+
+    private static final int MAX_LINE_CHARS = 64 * 1024;
+    private static final int COPY_CHUNK_CHARS = 64 * 1024;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+    private static final int ID_BLOCKS_PER_FETCH = 200;
+
+    private final DataSource dataSource;
+    private final JsonFactory jsonFactory;
+
+    public AuditCopyIngestService(DataSource dataSource, ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public AuditIngestResponse ingest(InputStream body) throws IOException, SQLException {
+        AuditIdAllocator ids = new AuditIdAllocator(ID_BLOCKS_PER_FETCH);
+        LineReader reader = new LineReader(new InputStreamReader(body, StandardCharsets.UTF_8), MAX_LINE_CHARS);
+        Row row = new Row();
+        StringBuilder csv = new StringBuilder(COPY_CHUNK_CHARS + MAX_LINE_CHARS);
+        List<AuditIngestRejection> rejections = new ArrayList<>();
+
+        long lines = 0;
+        long inserted = 0;
+        long rejected = 0;
+
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            CopyManager copyApi = connection.unwrap(PGConnection.class).getCopyAPI();
+            CopyIn copyIn = null;
+            try {
+                LineReader.Result result;
+                while ((result = reader.next()) != LineReader.Result.EOF) {
+                    long lineNumber = reader.lineNumber();
+                    if (result == LineReader.Result.LINE && isBlank(reader.line())) {
+                        continue;
+                    }
+                    lines++;
+
+                    String reason = result == LineReader.Result.TOO_LONG
+                            ? "la linea supera " + MAX_LINE_CHARS + " caracteres"
+                            : parse(reader.line(), row);
+                    if (reason != null) {
+                        rejected++;
+                        if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                            rejections.add(new AuditIngestRejection(lineNumber, reason));
+                        }
+                        continue;
+                    }
+
+                    if (ids.needsFetch()) {
+                        copyIn = finishCopy(copyApi, copyIn, csv);
+                        ids.fetch(connection);
+                    }
+                    appendCsv(csv, ids.nextId(), row);
+                    inserted++;
+                    if (csv.length() >= COPY_CHUNK_CHARS) {
+                        if (copyIn == null) {
+                            copyIn = copyApi.copyIn(COPY_SQL);
+                        }
+                        writeChunk(copyIn, csv);
+                    }
+                }
+                copyIn = finishCopy(copyApi, copyIn, csv);
+                connection.commit();
+            } catch (IOException | SQLException | RuntimeException e) {
+                if (copyIn != null && copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        log.info("Ingesta NDJSON completada: {} lineas, {} insertadas, {} rechazadas", lines, inserted, rejected);
+        return new AuditIngestResponse(lines, inserted, rejected, rejections);
+    }
+
+    /**
+     * Rellena {@code row} a partir de una línea NDJSON.
+     *
+     * @return {@code null} si la línea es válida, o el motivo del rechazo
+     */
+    private String parse(CharSequence line, Row row) {
+        row.clear();
+        try (JsonParser parser = jsonFactory.createParser(line.toString())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return "se esperaba un objeto JSON";
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "uid" -> row.uid = text(parser, value, field, 150);
+                    case "actorUid" -> row.actorUid = text(parser, value, field, 150);
+                    case "ip" -> row.ip = text(parser, value, field, 100);
+                    case "userAgent" -> row.userAgent = text(parser, value, field, 500);
+                    case "action" -> row.action = action(parser, value);
+                    case "timestamp" -> row.timestamp = timestamp(parser, value);
+                    case "metadata" -> row.metadata = metadata(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                return "contenido inesperado despues del objeto JSON";
+            }
+        } catch (RowException e) {
+            return e.getMessage();
+        } catch (JsonProcessingException e) {
+            return "JSON invalido: " + e.getOriginalMessage();
+        } catch (IOException e) {
+            return "JSON invalido: " + e.getMessage();
+        }
+        if (row.action == null) {
+            return "action: no debe ser nulo";
+        }
+        if (row.timestamp == null) {
+            row.timestamp = Instant.now().toString();
+        }
+        return null;
+    }
+
+    private static String text(JsonParser parser, JsonToken value, String field, int maxLength) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw new RowException(field + ": debe ser un texto");
+        }
+        String text = parser.getText();
+        if (text.length() > maxLength) {
+            throw new RowException(field + ": el tamaño debe estar entre 0 y " + maxLength);
+        }
+        if (text.indexOf('\u0000') >= 0) {
+            throw new RowException(field + ": contiene caracteres nulos");
+        }
+        return text;
+    }
+
+    private static String action(JsonParser parser, JsonToken value) throws IOException {
+        String text = text(parser, value, "action", 60);
+        if (text == null) {
+            return null;
+        }
+        try {
+            return AuditAction.valueOf(text).name();
+        } catch (IllegalArgumentException e) {
+            throw new RowException("action: valor desconocido '" + text + "'");
+        }
+    }
+
+    private static String timestamp(JsonParser parser, JsonToken value) throws IOException {
+        String text = text(parser, value, "timestamp", 64);
+        if (text == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(text).toString();
+        } catch (DateTimeParseException e) {
+            throw new RowException("timestamp: se esperaba un instante ISO-8601");
+        }
+    }
+
+    private String metadata(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.START_OBJECT) {
+            throw new RowException("metadata: debe ser un objeto JSON");
+        }
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.copyCurrentStructure(parser);
+        }
+        String json = out.toString();
+        if (json.indexOf("\\u0000") >= 0) {
+            throw new RowException("metadata: contiene caracteres nulos");
+        }
+        // Igual que AuditMetadataConverter: un mapa vacío se guarda como NULL
+        return "{}".equals(json) ? null : json;
+    }
+
+    private static void appendCsv(StringBuilder csv, long id, Row row) {
+        csv.append(id).append(',');
+        appendCsvValue(csv, row.uid);
+        csv.append(',');
+        appendCsvValue(csv, row.actorUid);
+        csv.append(',');
+        appendCsvValue(csv, row.action);
+        csv.append(',');
+        appendCsvValue(csv, row.timestamp);
+        csv.append(',');
+        appendCsvValue(csv, row.ip);
+        csv.append(',');
+        appendCsvValue(csv, row.userAgent);
+        csv.append(',');
+        appendCsvValue(csv, row.metadata);
+        csv.append('\n');
+    }
+
+    /**
+     * En formato CSV de COPY un campo vacío sin comillas es NULL; cualquier valor se escribe entre
+     * comillas duplicando las comillas internas.
+     */
+    private static void appendCsvValue(StringBuilder csv, String value) {
+        if (value == null) {
+            return;
+        }
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        csv.append('"');
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Envía lo que quede en {@code csv} y cierra el COPY en curso, abriéndolo antes si aún no se
+     * había escrito nada. Devuelve {@code null} para que el siguiente trozo abra otro.
+     */
+    private static CopyIn finishCopy(CopyManager copyApi, CopyIn copyIn, StringBuilder csv) throws SQLException {
+        if (copyIn == null && !csv.isEmpty()) {
+            copyIn = copyApi.copyIn(COPY_SQL);
+        }
+        if (copyIn != null) {
+            writeChunk(copyIn, csv);
+            copyIn.endCopy();
+        }
+        return null;
+    }
+
+    private static void writeChunk(CopyIn copyIn, StringBuilder csv) throws SQLException {
+        if (csv.isEmpty()) {
+            return;
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        csv.setLength(0);
+    }
+
+    /**
+     * Fila en construcción; se reutiliza entre líneas para no asignar un objeto por evento.
+     */
+    private static final class Row {
+        private String uid;
+        private String actorUid;
+        private String action;
+        private String timestamp;
+        private String ip;
+        private String userAgent;
+        private String metadata;
+
+        void clear() {
+            uid = actorUid = action = timestamp = ip = userAgent = metadata = null;
+        }
+    }
+
+    private static final class RowException extends IOException {
+        RowException(String message) {
+            super(message, null);
+        }
+    }
+
+    /**
+     * Lector de líneas con buffer propio y límite de longitud: una línea demasiado larga se
+     * descarta hasta el siguiente salto de línea sin acumularla en memoria.
+     */
+    static final class LineReader {
+
+        enum Result { LINE, TOO_LONG, EOF }
+
+        private final Reader reader;
+        private final int maxChars;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line;
+        private int position;
+        private int limit;
+        private long lineNumber;
+
+        LineReader(Reader reader, int maxChars) {
+            this.reader = reader;
+            this.maxChars = maxChars;
+            this.line = new StringBuilder(Math.min(maxChars, 1024));
+        }
+
+        Result next() throws IOException {
+            line.setLength(0);
+            boolean tooLong = false;
+            boolean readAny = false;
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (!readAny) {
+                            return Result.EOF;
+                        }
+                        lineNumber++;
+                        return tooLong ? Result.TOO_LONG : Result.LINE;
+                    }
+                }
+                readAny = true;
+                char c = buffer[position++];
+                if (c == '\n') {
+                    lineNumber++;
+                    return tooLong ? Result.TOO_LONG : Result.LINE;
+                }
+                if (c == '\r' || tooLong) {
+                    continue;
+                }
+                if (line.length() == maxChars) {
+                    tooLong = true;
+                    line.setLength(0);
+                    continue;
+                }
+                line.append(c);
+            }
+        }
+
+        CharSequence line() {
+            return line;
+        }
+
+        long lineNumber() {
+            return lineNumber;
+        }
+    }
+}
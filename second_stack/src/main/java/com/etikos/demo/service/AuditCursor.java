@@ -0,0 +1,52 @@
+package com.etikos.demo.service;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Codifica la posición keyset {@code (timestamp, id)} de la búsqueda por cursor como un token
+ * Base64URL opaco para el cliente.
+ */
+public final class AuditCursor {
+
+    private AuditCursor() {
+    }
+
+    public static String encode(ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset) || keyset.isInitial()) {
+            throw new IllegalArgumentException("Solo se pueden codificar posiciones keyset");
+        }
+        Instant timestamp = (Instant) keyset.getKeys().get("timestamp");
+        Long id = ((Number) keyset.getKeys().get("id")).longValue();
+        String raw = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException si el token no es un cursor válido
+     */
+    public static KeysetScrollPosition decode(String token) {
+        if (token == null || token.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            String[] parts = raw.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Cursor invalido");
+            }
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("timestamp", Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+            keys.put("id", Long.parseLong(parts[2]));
+            return ScrollPosition.forward(keys);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor invalido", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.etikos.demo.service;
+
+import com.etikos.demo.entity.AuditLog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reparte ids de {@code audit_logs_seq} siguiendo la misma semántica que el optimizador pooled
+ * de Hibernate: cada valor {@code hi} devuelto por nextval reserva el rango
+ * {@code [hi - ID_ALLOCATION_SIZE + 1, hi]}. Los valores se piden en bloque con una sola consulta
+ * para no hacer un round trip cada {@link AuditLog#ID_ALLOCATION_SIZE} filas.
+ * <p>
+ * Los bloques se piden con {@link #fetch(Connection)} sobre la conexión de quien ingesta, para no
+ * ocupar una segunda conexión del pool; {@link #needsFetch()} indica cuándo hace falta. No es
+ * thread-safe: se crea una instancia por ingesta.
+ */
+class AuditIdAllocator {
+
+    private static final String NEXT_BLOCKS =
+            "SELECT nextval('audit_logs_seq') FROM generate_series(1, ?)";
+
+    private final int blocksPerFetch;
+    private final Deque<Long> hiValues = new ArrayDeque<>();
+
+    private long next;
+    private long hi = -1;
+
+    AuditIdAllocator(int blocksPerFetch) {
+        this.blocksPerFetch = blocksPerFetch;
+    }
+
+    /**
+     * {@code true} si el siguiente {@link #nextId()} necesita antes un {@link #fetch(Connection)}.
+     */
+    boolean needsFetch() {
+        return next > hi && hiValues.isEmpty();
+    }
+
+    /**
+     * Reserva {@code blocksPerFetch} bloques más con una consulta sobre {@code connection}.
+     */
+    void fetch(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(NEXT_BLOCKS)) {
+            statement.setInt(1, blocksPerFetch);
+            while (hiValues.isEmpty()) {
+                try (ResultSet values = statement.executeQuery()) {
+                    while (values.next()) {
+                        long candidate = values.getLong(1);
+                        // Los primeros valores de una secuencia nueva no cubren un rango completo de ids positivos
+                        if (candidate >= AuditLog.ID_ALLOCATION_SIZE) {
+                            hiValues.add(candidate);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    long nextId() {
+        if (next > hi) {
+            Long candidate = hiValues.poll();
+            if (candidate == null) {
+                throw new IllegalStateException("No quedan ids reservados: falta llamar a fetch");
+            }
+            hi = candidate;
+            next = candidate - AuditLog.ID_ALLOCATION_SIZE + 1;
+        }
+        return next++;
+    }
+}
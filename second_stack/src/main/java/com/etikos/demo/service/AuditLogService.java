@@ -1,46 +1,140 @@
 package com.etikos.demo.service;
 
+import com.etikos.demo.dto.AuditBatchItemError;
+import com.etikos.demo.dto.AuditBatchResponse;
 import com.etikos.demo.dto.AuditLogRequest;
 import com.etikos.demo.entity.AuditAction;
 import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.entity.AuditMetadataFunctions;
 import com.etikos.demo.repository.AuditLogRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class AuditLogService {
 
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "timestamp", "id");
+
     private final AuditLogRepository repository;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int jdbcBatchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
-    public AuditLogService(AuditLogRepository repository) {
+    public AuditLogService(AuditLogRepository repository,
+                           Validator validator,
+                           ObjectMapper objectMapper,
+                           @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int jdbcBatchSize) {
         this.repository = repository;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.jdbcBatchSize = jdbcBatchSize;
     }
 
     @Transactional
     public AuditLog record(AuditLogRequest request) {
-        AuditLog log = new AuditLog();
-        log.setUid(request.uid());
-        log.setActorUid(request.actorUid());
-        log.setAction(request.action());
-        log.setTimestamp(request.timestamp() != null ? request.timestamp() : Instant.now());
-        log.setIp(request.ip());
-        log.setUserAgent(request.userAgent());
-        log.setMetadata(request.metadata() != null ? new LinkedHashMap<>(request.metadata()) : null);
-        return repository.save(log);
+        return repository.save(toEntity(request));
     }
 
+    /**
+     * Valida cada elemento por separado y guarda los válidos en una única transacción. Los INSERT
+     * se agrupan en lotes JDBC de {@code hibernate.jdbc.batch_size}; el contexto de persistencia se
+     * vacía tras cada lote para que la memoria no crezca con el tamaño de la petición.
+     */
+    @Transactional
+    public AuditBatchResponse recordBatch(List<AuditLogRequest> requests) {
+        List<AuditBatchItemError> errors = new ArrayList<>();
+        int accepted = 0;
+
+        for (int i = 0; i < requests.size(); i++) {
+            AuditLogRequest request = requests.get(i);
+            if (request == null) {
+                errors.add(new AuditBatchItemError(i, List.of("el elemento no puede ser nulo")));
+                continue;
+            }
+            Set<ConstraintViolation<AuditLogRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                errors.add(new AuditBatchItemError(i, violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .toList()));
+                continue;
+            }
+
+            entityManager.persist(toEntity(request));
+            accepted++;
+            if (accepted % jdbcBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        return new AuditBatchResponse(requests.size(), accepted, errors.size(), errors);
+    }
+
+    /**
+     * @param metadata pares clave/valor que deben estar todos en {@code metadata}; se comparan con
+     *                 el operador {@code @>}, que usa el índice GIN. Un valor que también es un
+     *                 número o booleano JSON ({@code 3}, {@code true}) casa con el texto y con el
+     *                 valor tipado, igual que {@code metadata->>'clave' = 'valor'}
+     */
     @Transactional(readOnly = true)
     public Page<AuditLog> search(String uid,
                                  AuditAction action,
                                  Instant from,
                                  Instant to,
+                                 Map<String, String> metadata,
                                  Pageable pageable) {
+        return repository.findAll(filters(uid, action, from, to, metadata), pageable);
+    }
+
+    /**
+     * Búsqueda por cursor ordenada por {@code (timestamp, id)} descendente. Usa el siguiente
+     * registro como límite ({@code timestamp < ? OR (timestamp = ? AND id < ?)}) en vez de OFFSET
+     * y no ejecuta {@code count(*)}, así que el coste de cada página no depende de su profundidad.
+     */
+    @Transactional(readOnly = true)
+    public Window<AuditLog> scroll(String uid,
+                                   AuditAction action,
+                                   Instant from,
+                                   Instant to,
+                                   Map<String, String> metadata,
+                                   int size,
+                                   KeysetScrollPosition position) {
+        return repository.findBy(filters(uid, action, from, to, metadata),
+                query -> query.sortBy(KEYSET_SORT).limit(size).scroll(position));
+    }
+
+    private Specification<AuditLog> filters(String uid,
+                                            AuditAction action,
+                                            Instant from,
+                                            Instant to,
+                                            Map<String, String> metadata) {
         Specification<AuditLog> spec = Specification.where((root, query, cb) -> cb.conjunction());
 
         if (uid != null && !uid.isBlank()) {
@@ -55,8 +149,60 @@ public class AuditLogService {
         if (to != null) {
             spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("timestamp"), to));
         }
+        if (metadata != null && !metadata.isEmpty()) {
+            // Los pares de texto en un único objeto: metadata @> '{"reason":"...","email":"..."}'
+            Map<String, Object> text = new LinkedHashMap<>();
+            for (Map.Entry<String, String> pair : metadata.entrySet()) {
+                JsonNode typed = scalarLiteral(pair.getValue());
+                if (typed == null) {
+                    text.put(pair.getKey(), pair.getValue());
+                    continue;
+                }
+                // metadata @> '{"attempts":"3"}' OR metadata @> '{"attempts":3}'
+                Specification<AuditLog> asText = contains(toJson(Map.of(pair.getKey(), pair.getValue())));
+                spec = spec.and(asText.or(contains(toJson(Map.of(pair.getKey(), typed)))));
+            }
+            if (!text.isEmpty()) {
+                spec = spec.and(contains(toJson(text)));
+            }
+        }
+        return spec;
+    }
 
-        return repository.findAll(spec, pageable);
+    private static Specification<AuditLog> contains(String containment) {
+        return (root, query, cb) -> cb.isTrue(cb.function(AuditMetadataFunctions.CONTAINS,
+                Boolean.class, root.get("metadata"), cb.literal(containment)));
+    }
+
+    /**
+     * El valor como número o booleano JSON, o {@code null} si sólo puede ser texto.
+     */
+    private JsonNode scalarLiteral(String value) {
+        try {
+            JsonNode node = objectMapper.readTree(value);
+            return node != null && (node.isNumber() || node.isBoolean()) ? node : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private String toJson(Map<String, ?> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("No se pudo serializar el filtro de metadata", e);
+        }
     }
-}
 
+    private AuditLog toEntity(AuditLogRequest request) {
+        AuditLog log = new AuditLog();
+        log.setUid(request.uid());
+        log.setActorUid(request.actorUid());
+        log.setAction(request.action());
+        log.setTimestamp(request.timestamp() != null ? request.timestamp() : Instant.now());
+        log.setIp(request.ip());
+        log.setUserAgent(request.userAgent());
+        log.setMetadata(request.metadata() != null ? new LinkedHashMap<>(request.metadata()) : null);
+        return log;
+    }
+}
@@ -0,0 +1,248 @@
+package com.etikos.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Mantiene las particiones por rango de {@code audit_logs} (ver {@code V4__partition_audit_logs.sql}):
+ * crea por adelantado las de los próximos periodos y aplica la retención eliminando o separando
+ * particiones completas en lugar de ejecutar DELETE masivos.
+ * <p>
+ * Los límites son fechas UTC. Si al crear una partición ya hay filas de su rango en
+ * {@code audit_logs_default}, se mueven a la nueva partición en la misma transacción.
+ */
+@Service
+public class AuditPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditPartitionManager.class);
+
+    private static final String PARENT = "audit_logs";
+    private static final String DEFAULT_PARTITION = "audit_logs_default";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String PARTITIONS_SQL = """
+            SELECT name,
+                   CASE WHEN bound LIKE 'FOR VALUES FROM (MINVALUE)%' THEN NULL
+                        ELSE (regexp_match(bound, 'FROM \\(''([^'']+)''\\)'))[1]::timestamptz END AS lower_bound,
+                   (regexp_match(bound, 'TO \\(''([^'']+)''\\)'))[1]::timestamptz AS upper_bound
+            FROM (SELECT c.relname AS name, pg_get_expr(c.relpartbound, c.oid) AS bound
+                  FROM pg_inherits i
+                  JOIN pg_class c ON c.oid = i.inhrelid
+                  WHERE i.inhparent = 'audit_logs'::regclass) p
+            WHERE bound <> 'DEFAULT'
+            """;
+
+    public enum Granularity { DAILY, MONTHLY }
+
+    public enum RetentionMode { DROP, DETACH }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Granularity granularity;
+    private final int premake;
+    private final Duration retention;
+    private final RetentionMode retentionMode;
+
+    public AuditPartitionManager(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${audit.partitions.granularity:MONTHLY}") Granularity granularity,
+                                 @Value("${audit.partitions.premake:3}") int premake,
+                                 @Value("${audit.partitions.retention:0d}") Duration retention,
+                                 @Value("${audit.partitions.retention-mode:DROP}") RetentionMode retentionMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.granularity = granularity;
+        this.premake = Math.max(0, premake);
+        this.retention = retention;
+        this.retentionMode = retentionMode;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    /**
+     * Crea las particiones del periodo actual y de los {@code premake} siguientes y aplica la retención.
+     */
+    @Scheduled(cron = "${audit.partitions.cron:0 15 0 * * *}", zone = "UTC")
+    public void maintain() {
+        try {
+            Instant now = Instant.now();
+            LocalDate current = periodStart(now);
+            int created = ensurePartitions(now, toInstant(advance(current, premake)));
+            int removed = applyRetention(now);
+            log.info("Mantenimiento de particiones de audit_logs: {} creadas, {} retiradas ({})",
+                    created, removed, granularity);
+        } catch (RuntimeException e) {
+            log.error("Fallo en el mantenimiento de particiones de audit_logs", e);
+        }
+    }
+
+    /**
+     * Garantiza que existe una partición para cada periodo que toca {@code [from, to]}. Útil
+     * también antes de cargar eventos históricos, para que no terminen en la partición DEFAULT.
+     *
+     * @return número de particiones creadas
+     */
+    public int ensurePartitions(Instant from, Instant to) {
+        Integer created = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return 0;
+            }
+            List<Partition> existing = partitions();
+            int count = 0;
+            for (LocalDate start = periodStart(from); !toInstant(start).isAfter(to); start = advance(start, 1)) {
+                count += createPartitions(toInstant(start), toInstant(advance(start, 1)), existing);
+            }
+            return count;
+        });
+        return created != null ? created : 0;
+    }
+
+    /**
+     * Elimina o separa (según {@code retention-mode}) las particiones cuyo rango termina antes de
+     * {@code now - retention}. Con retención 0 no se retira nada. Las tablas separadas conservan
+     * sus datos y pueden archivarse antes de borrarlas manualmente.
+     *
+     * @return número de particiones retiradas
+     */
+    public int applyRetention(Instant now) {
+        if (retention.isZero() || retention.isNegative()) {
+            return 0;
+        }
+        Instant cutoff = now.minus(retention);
+        Integer removed = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return 0;
+            }
+            int count = 0;
+            for (Partition partition : partitions()) {
+                if (partition.upper() == null || partition.upper().isAfter(cutoff)) {
+                    continue;
+                }
+                if (retentionMode == RetentionMode.DETACH) {
+                    jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition.name());
+                } else {
+                    jdbcTemplate.execute("DROP TABLE " + partition.name());
+                }
+                log.info("Partición {} de audit_logs retirada ({}, hasta {})",
+                        partition.name(), retentionMode, partition.upper());
+                count++;
+            }
+            return count;
+        });
+        return removed != null ? removed : 0;
+    }
+
+    /**
+     * Cubre el periodo {@code [start, end)} con una partición por cada hueco que dejan las
+     * existentes (por ejemplo la histórica, o las de otra granularidad si se cambió la
+     * configuración), para que ninguna parte del periodo quede en la partición DEFAULT.
+     *
+     * @return número de particiones creadas
+     */
+    private int createPartitions(Instant start, Instant end, List<Partition> existing) {
+        List<Partition> overlapping = existing.stream()
+                .filter(partition -> (partition.upper() == null || partition.upper().isAfter(start))
+                        && partition.lower().isBefore(end))
+                .toList();
+        int count = 0;
+        Instant gapStart = start;
+        for (Partition partition : overlapping) {
+            if (partition.lower().isAfter(gapStart)) {
+                createPartition(gapStart, partition.lower(), existing);
+                count++;
+            }
+            Instant covered = partition.upper() == null ? end : partition.upper();
+            if (covered.isAfter(gapStart)) {
+                gapStart = covered;
+            }
+        }
+        if (gapStart.isBefore(end)) {
+            createPartition(gapStart, end, existing);
+            count++;
+        }
+        return count;
+    }
+
+    private void createPartition(Instant start, Instant end, List<Partition> existing) {
+        String name = PARENT + "_p" + NAME_FORMAT.format(start.atOffset(ZoneOffset.UTC));
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + PARENT + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE timestamp >= ? AND timestamp < ? RETURNING *) INSERT INTO " + name + " SELECT * FROM moved",
+                start.atOffset(ZoneOffset.UTC), end.atOffset(ZoneOffset.UTC));
+        jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+        existing.add(new Partition(name, start, end));
+        existing.sort(Comparator.comparing(Partition::lower));
+
+        if (moved > 0) {
+            log.warn("Partición {} creada con {} eventos movidos desde {}", name, moved, DEFAULT_PARTITION);
+        } else {
+            log.info("Partición {} creada [{}, {})", name, start, end);
+        }
+    }
+
+    private List<Partition> partitions() {
+        List<Partition> result = new ArrayList<>(jdbcTemplate.query(PARTITIONS_SQL, (rs, i) -> new Partition(
+                rs.getString("name"),
+                toInstant(rs.getObject("lower_bound", OffsetDateTime.class), Instant.MIN),
+                toInstant(rs.getObject("upper_bound", OffsetDateTime.class), null))));
+        result.sort(Comparator.comparing(Partition::lower));
+        return result;
+    }
+
+    private boolean tryLock() {
+        // Evita que dos instancias del servicio mantengan las particiones a la vez
+        Boolean locked = jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext('audit_logs_partitions'))", Boolean.class);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("Otra instancia está manteniendo las particiones de audit_logs; se omite");
+            return false;
+        }
+        return true;
+    }
+
+    private LocalDate periodStart(Instant instant) {
+        LocalDate date = LocalDate.ofInstant(instant, ZoneOffset.UTC);
+        return granularity == Granularity.MONTHLY ? date.withDayOfMonth(1) : date;
+    }
+
+    private LocalDate advance(LocalDate start, int periods) {
+        return granularity == Granularity.MONTHLY ? start.plusMonths(periods) : start.plusDays(periods);
+    }
+
+    private static Instant toInstant(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static Instant toInstant(OffsetDateTime value, Instant fallback) {
+        return value != null ? value.toInstant() : fallback;
+    }
+
+    /**
+     * Partición existente; {@code lower} es {@link Instant#MIN} para MINVALUE y {@code upper} es
+     * {@code null} para MAXVALUE.
+     */
+    private record Partition(String name, Instant lower, Instant upper) {
+    }
+}
@@ -0,0 +1,12 @@
+-- Esquema inicial de audit_logs. IF NOT EXISTS permite aplicar la migracion sobre bases
+-- creadas antes con spring.jpa.hibernate.ddl-auto=update (baseline-version=0).
+CREATE TABLE IF NOT EXISTS audit_logs (
+    id          BIGINT                      NOT NULL PRIMARY KEY,
+    uid         VARCHAR(150),
+    actor_uid   VARCHAR(150),
+    action      VARCHAR(60)                 NOT NULL,
+    timestamp   TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    ip          VARCHAR(100),
+    user_agent  VARCHAR(500),
+    metadata    TEXT
+);
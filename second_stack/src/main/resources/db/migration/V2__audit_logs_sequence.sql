@@ -0,0 +1,5 @@
+-- Secuencia pooled para audit_logs.id (AuditLog.ID_ALLOCATION_SIZE = 50).
+-- Se posiciona por encima del mayor id existente, generado antes con IDENTITY.
+CREATE SEQUENCE IF NOT EXISTS audit_logs_seq INCREMENT BY 50;
+ALTER SEQUENCE audit_logs_seq INCREMENT BY 50;
+SELECT setval('audit_logs_seq', GREATEST((SELECT last_value FROM audit_logs_seq), (SELECT COALESCE(MAX(id), 0) FROM audit_logs) + 1));
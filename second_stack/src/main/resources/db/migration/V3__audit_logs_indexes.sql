@@ -0,0 +1,19 @@
+-- Indices para los filtros de AuditLogService.search/scroll. CONCURRENTLY evita bloquear las
+-- escrituras sobre una tabla ya poblada; Flyway ejecuta este script fuera de transaccion.
+
+-- uid = ? ordenado por fecha (y keyset por id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_audit_logs_uid_timestamp
+    ON audit_logs (uid, timestamp DESC, id DESC);
+
+-- action = ? ordenado por fecha (y keyset por id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_audit_logs_action_timestamp
+    ON audit_logs (action, timestamp DESC, id DESC);
+
+-- Busqueda por cursor sin filtros: ORDER BY timestamp DESC, id DESC LIMIT n
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_audit_logs_timestamp_id
+    ON audit_logs (timestamp DESC, id DESC);
+
+-- Rangos from/to: la tabla es append-only y timestamp esta correlacionado con el orden fisico,
+-- asi que un BRIN ocupa unos pocos KB y descarta la mayoria de bloques.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_audit_logs_timestamp_brin
+    ON audit_logs USING BRIN (timestamp) WITH (pages_per_range = 32);
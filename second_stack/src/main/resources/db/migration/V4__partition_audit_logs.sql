@@ -0,0 +1,50 @@
+-- audit_logs pasa a ser una tabla particionada por rango de timestamp. La tabla anterior se
+-- conserva como particion historica (MINVALUE hasta el dia siguiente a su ultimo evento) y una
+-- particion DEFAULT recoge lo que llegue fuera de las particiones creadas por
+-- AuditPartitionManager, que despues mueve esas filas a su particion.
+
+ALTER TABLE audit_logs RENAME TO audit_logs_legacy;
+ALTER TABLE audit_logs_legacy RENAME CONSTRAINT audit_logs_pkey TO audit_logs_legacy_pkey;
+ALTER INDEX idx_audit_logs_uid_timestamp RENAME TO audit_logs_legacy_uid_timestamp_idx;
+ALTER INDEX idx_audit_logs_action_timestamp RENAME TO audit_logs_legacy_action_timestamp_idx;
+ALTER INDEX idx_audit_logs_timestamp_id RENAME TO audit_logs_legacy_timestamp_id_idx;
+ALTER INDEX idx_audit_logs_timestamp_brin RENAME TO audit_logs_legacy_timestamp_brin_idx;
+
+-- La clave primaria de una tabla particionada debe incluir la columna de particion
+CREATE TABLE audit_logs (
+    id          BIGINT                      NOT NULL,
+    uid         VARCHAR(150),
+    actor_uid   VARCHAR(150),
+    action      VARCHAR(60)                 NOT NULL,
+    timestamp   TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    ip          VARCHAR(100),
+    user_agent  VARCHAR(500),
+    metadata    TEXT,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- Los indices de la tabla particionada se crean en cada particion automaticamente
+CREATE INDEX idx_audit_logs_uid_timestamp ON audit_logs (uid, timestamp DESC, id DESC);
+CREATE INDEX idx_audit_logs_action_timestamp ON audit_logs (action, timestamp DESC, id DESC);
+CREATE INDEX idx_audit_logs_timestamp_id ON audit_logs (timestamp DESC, id DESC);
+CREATE INDEX idx_audit_logs_timestamp_brin ON audit_logs USING BRIN (timestamp) WITH (pages_per_range = 32);
+
+CREATE TABLE audit_logs_default PARTITION OF audit_logs DEFAULT;
+
+DO $$
+DECLARE
+    legacy_upper TIMESTAMPTZ;
+BEGIN
+    SELECT date_trunc('day', MAX(timestamp), 'UTC') + INTERVAL '1 day' INTO legacy_upper FROM audit_logs_legacy;
+    IF legacy_upper IS NULL THEN
+        DROP TABLE audit_logs_legacy;
+    ELSE
+        -- La clave primaria debe coincidir con la del padre; los demas indices ya coinciden y se
+        -- adjuntan sin reconstruirse
+        ALTER TABLE audit_logs_legacy
+            DROP CONSTRAINT audit_logs_legacy_pkey,
+            ADD CONSTRAINT audit_logs_legacy_pkey PRIMARY KEY (id, timestamp);
+        EXECUTE format('ALTER TABLE audit_logs ATTACH PARTITION audit_logs_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+                       legacy_upper);
+    END IF;
+END $$;
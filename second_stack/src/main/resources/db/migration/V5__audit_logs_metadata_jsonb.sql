@@ -0,0 +1,7 @@
+-- metadata pasa de TEXT a jsonb para poder filtrar por su contenido. Los valores existentes los
+-- escribio AuditMetadataConverter, asi que son JSON valido. Reescribe todas las particiones.
+ALTER TABLE audit_logs ALTER COLUMN metadata TYPE jsonb USING metadata::jsonb;
+
+-- jsonb_path_ops sólo soporta @> (el unico operador que usa la busqueda) y es bastante mas
+-- pequeño y rapido que el operador por defecto jsonb_ops
+CREATE INDEX idx_audit_logs_metadata ON audit_logs USING GIN (metadata jsonb_path_ops);
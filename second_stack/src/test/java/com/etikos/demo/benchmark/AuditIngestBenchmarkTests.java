@@ -0,0 +1,101 @@
+package com.etikos.demo.benchmark;
+
+import com.etikos.demo.dto.AuditBatchResponse;
+import com.etikos.demo.dto.AuditLogRequest;
+import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.service.AuditLogService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara eventos/segundo entre el registro uno a uno (una transacción por evento, como
+ * {@code POST /api/audits}) y el registro por lotes ({@code POST /api/audits/batch}).
+ * <p>
+ * Necesita una base Postgres real: se ejecuta sólo con {@code AUDIT_BENCHMARK=true} y
+ * {@code SUPABASE_JDBC_URL} apuntando a una base de pruebas.
+ * <pre>
+ * AUDIT_BENCHMARK=true SUPABASE_JDBC_URL=jdbc:postgresql://... \
+ *   ./mvnw test -Dtest=AuditIngestBenchmarkTests -Dspring.jpa.show-sql=false
+ * </pre>
+ */
+@SpringBootTest
+@EnabledIfEnvironmentVariable(named = "AUDIT_BENCHMARK", matches = "true")
+class AuditIngestBenchmarkTests {
+
+    private static final int EVENTS = Integer.getInteger("audit.benchmark.events", 5_000);
+    private static final int BATCH_SIZE = 1_000;
+
+    private final String runId = "bench-" + UUID.randomUUID();
+
+    @Autowired
+    private AuditLogService service;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE uid = ?", runId);
+    }
+
+    @Test
+    void singleInsertVersusBatch() {
+        List<AuditLogRequest> events = events(EVENTS);
+
+        // Calentamiento para no medir la carga de clases ni la apertura de conexiones
+        service.recordBatch(events.subList(0, Math.min(BATCH_SIZE, events.size())));
+        service.record(events.get(0));
+        cleanUp();
+
+        long start = System.nanoTime();
+        for (AuditLogRequest event : events) {
+            service.record(event);
+        }
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+        cleanUp();
+
+        start = System.nanoTime();
+        int accepted = 0;
+        for (int i = 0; i < events.size(); i += BATCH_SIZE) {
+            AuditBatchResponse result = service.recordBatch(events.subList(i, Math.min(i + BATCH_SIZE, events.size())));
+            accepted += result.accepted();
+        }
+        double batchSeconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(EVENTS, accepted);
+        assertEquals(EVENTS, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM audit_logs WHERE uid = ?", Integer.class, runId));
+
+        System.out.printf("audit ingest: %d eventos%n", EVENTS);
+        System.out.printf("  single insert : %8.0f eventos/s (%.2f s)%n", EVENTS / singleSeconds, singleSeconds);
+        System.out.printf("  batch (%d)  : %8.0f eventos/s (%.2f s)%n", BATCH_SIZE, EVENTS / batchSeconds, batchSeconds);
+    }
+
+    private List<AuditLogRequest> events(int count) {
+        List<AuditLogRequest> events = new ArrayList<>(count);
+        Instant now = Instant.now();
+        for (int i = 0; i < count; i++) {
+            events.add(new AuditLogRequest(
+                    runId,
+                    runId,
+                    i % 5 == 0 ? AuditAction.LOGIN_FAILED : AuditAction.LOGIN,
+                    now.plusMillis(i),
+                    "10.0.0." + (i % 250),
+                    "benchmark",
+                    Map.of("seq", i, "method", "password")));
+        }
+        return events;
+    }
+}
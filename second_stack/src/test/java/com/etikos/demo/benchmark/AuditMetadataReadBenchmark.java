@@ -0,0 +1,112 @@
+package com.etikos.demo.benchmark;
+
+import com.etikos.demo.dto.AuditLogResponse;
+import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.entity.AuditMetadataConverter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el coste de serializar una página de {@code GET /api/audits} con la metadata parseada a
+ * mapa y copiada (lectura anterior) frente a la metadata incrustada tal cual la devuelve Postgres.
+ * Mide desde el texto de la columna hasta el JSON de la respuesta.
+ * <pre>
+ * AUDIT_BENCHMARK=true ./mvnw test -Dtest=AuditMetadataReadBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditMetadataReadBenchmark {
+
+    private static final TypeReference<Map<String, Object>> TYPE = new TypeReference<>() {};
+
+    @Param({"20", "200"})
+    public int pageSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final AuditMetadataConverter converter = new AuditMetadataConverter();
+    private List<String> columns;
+
+    @Setup
+    public void setUp() {
+        columns = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            // Formato en que Postgres devuelve jsonb, con las claves que escribe UserController
+            columns.add("{\"email\": \"user" + i + "@example.com\", \"reason\": \"INVALID_PASSWORD\", "
+                    + "\"attempts\": " + (i % 5) + ", \"mfa\": false, \"client\": {\"os\": \"Android\", "
+                    + "\"version\": \"14\", \"app\": \"2.3.1\"}, \"roles\": [\"USER\", \"AUDITOR\"], "
+                    + "\"description\": \"Intento de acceso con credenciales incorrectas desde la app movil\"}");
+        }
+    }
+
+    @Benchmark
+    public String parseAndCopy() throws IOException {
+        List<AuditLogResponse> page = new ArrayList<>(pageSize);
+        for (String column : columns) {
+            AuditLog log = entity();
+            log.setMetadata(objectMapper.readValue(column, TYPE));
+            page.add(AuditLogResponse.from(log));
+        }
+        return objectMapper.writeValueAsString(page);
+    }
+
+    @Benchmark
+    public String rawPassthrough() throws IOException {
+        List<AuditLogResponse> page = new ArrayList<>(pageSize);
+        for (String column : columns) {
+            AuditLog log = entity();
+            log.setMetadata(converter.convertToEntityAttribute(column));
+            page.add(AuditLogResponse.from(log));
+        }
+        return objectMapper.writeValueAsString(page);
+    }
+
+    private static AuditLog entity() {
+        AuditLog log = new AuditLog();
+        log.setId(1L);
+        log.setUid("uid-1");
+        log.setAction(AuditAction.LOGIN_FAILED);
+        log.setTimestamp(Instant.parse("2025-01-01T00:00:00Z"));
+        log.setIp("10.0.0.1");
+        log.setUserAgent("Mozilla/5.0");
+        return log;
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "AUDIT_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuditMetadataReadBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
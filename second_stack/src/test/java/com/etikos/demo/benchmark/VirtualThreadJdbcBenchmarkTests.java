@@ -0,0 +1,171 @@
+package com.etikos.demo.benchmark;
+
+import com.etikos.demo.config.ConcurrencyLimitedDataSource;
+import com.etikos.demo.support.EmbeddedPostgresSupport;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Peticiones simultáneas sobre un pool Hikari de {@value #POOL_SIZE} conexiones limitado con
+ * {@link ConcurrencyLimitedDataSource}, en hilos de plataforma (un pool de 200, como Tomcat por
+ * defecto) y en hilos virtuales. La mitad de las peticiones hace una consulta de
+ * {@value #WORK_MS} ms y la otra mitad espera lo mismo sin tocar la base (otra llamada bloqueante),
+ * para ver si las que esperan conexión retrasan a las demás. Informa el p99 de cada tipo, el
+ * máximo de peticiones en curso y el máximo de conexiones abiertas.
+ * <p>
+ * {@link #releasesPermitOnceAndFailsFastWhenSaturated()} comprueba el límite sin
+ * {@code AUDIT_BENCHMARK}.
+ * <pre>
+ * AUDIT_BENCHMARK=true ./mvnw test -Dtest=VirtualThreadJdbcBenchmarkTests
+ * </pre>
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class VirtualThreadJdbcBenchmarkTests {
+
+    private static final int POOL_SIZE = 10;
+    private static final int REQUESTS = 1000;
+    private static final long WORK_MS = 50;
+    private static final int PLATFORM_THREADS = 200;
+
+    private HikariDataSource hikari;
+
+    @BeforeAll
+    void startPool() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(EmbeddedPostgresSupport.jdbcUrl());
+        config.setMaximumPoolSize(POOL_SIZE);
+        config.setMinimumIdle(POOL_SIZE);
+        config.setConnectionTimeout(TimeUnit.MINUTES.toMillis(1));
+        hikari = new HikariDataSource(config);
+    }
+
+    @AfterAll
+    void closePool() {
+        hikari.close();
+    }
+
+    @Test
+    void releasesPermitOnceAndFailsFastWhenSaturated() throws Exception {
+        ConcurrencyLimitedDataSource limited = new ConcurrencyLimitedDataSource(hikari, 1, Duration.ofMillis(100));
+
+        Connection held = limited.getConnection();
+        assertThat(held.unwrap(PGConnection.class)).isNotNull();
+        assertThat(limited.getActiveConnections()).isEqualTo(1);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(limited::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+
+        held.close();
+        // Un segundo close() no devuelve otro permiso
+        held.close();
+        assertThat(limited.getActiveConnections()).isZero();
+        try (Connection first = limited.getConnection()) {
+            assertThatThrownBy(limited::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "AUDIT_BENCHMARK", matches = "true")
+    void platformVersusVirtualThreads() throws Exception {
+        ConcurrencyLimitedDataSource limited = new ConcurrencyLimitedDataSource(hikari, POOL_SIZE, Duration.ofMinutes(1));
+        // Calentamiento
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            run(executor, limited);
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(PLATFORM_THREADS)) {
+            report("platform", run(executor, limited));
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            report("virtual", run(executor, limited));
+        }
+    }
+
+    private record Result(long totalMillis, long[] dbMillis, long[] otherMillis, int maxInFlight, int maxConnections) {
+    }
+
+    private static Result run(ExecutorService executor, ConcurrencyLimitedDataSource dataSource) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger maxConnections = new AtomicInteger();
+        List<Future<Long>> db = new ArrayList<>(REQUESTS / 2);
+        List<Future<Long>> other = new ArrayList<>(REQUESTS / 2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            boolean usesDatabase = i % 2 == 0;
+            long submitted = System.nanoTime();
+            Future<Long> future = executor.submit(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    if (usesDatabase) {
+                        query(dataSource, maxConnections);
+                    } else {
+                        Thread.sleep(WORK_MS);
+                    }
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted);
+            });
+            (usesDatabase ? db : other).add(future);
+        }
+        long[] dbMillis = collect(db);
+        long[] otherMillis = collect(other);
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(maxConnections.get()).isLessThanOrEqualTo(POOL_SIZE);
+        return new Result(total, dbMillis, otherMillis, maxInFlight.get(), maxConnections.get());
+    }
+
+    private static void query(ConcurrencyLimitedDataSource dataSource, AtomicInteger maxConnections) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            maxConnections.accumulateAndGet(dataSource.getActiveConnections(), Math::max);
+            statement.execute("SELECT pg_sleep(" + WORK_MS / 1000.0 + ")");
+        }
+    }
+
+    private static long[] collect(List<Future<Long>> futures) throws Exception {
+        long[] millis = new long[futures.size()];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = futures.get(i).get();
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static void report(String mode, Result result) {
+        System.out.printf("%-8s requests=%d inFlight=%d connections=%d total=%dms db p50=%dms p99=%dms | other p50=%dms p99=%dms%n",
+                mode, REQUESTS, result.maxInFlight(), result.maxConnections(), result.totalMillis(),
+                percentile(result.dbMillis(), 0.5), percentile(result.dbMillis(), 0.99),
+                percentile(result.otherMillis(), 0.5), percentile(result.otherMillis(), 0.99));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
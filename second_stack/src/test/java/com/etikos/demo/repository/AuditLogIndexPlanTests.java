@@ -0,0 +1,200 @@
+package com.etikos.demo.repository;
+
+import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.service.AuditLogService;
+import com.etikos.demo.service.AuditPartitionManager;
+import com.etikos.demo.support.EmbeddedPostgresSupport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Comprueba con EXPLAIN que el planificador usa los índices de las migraciones para los filtros
+ * de la búsqueda de auditoría y que descarta las particiones fuera del rango pedido, sobre una
+ * tabla con datos y estadísticas reales.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AuditLogIndexPlanTests {
+
+    private static final int ROWS = 200_000;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        EmbeddedPostgresSupport.register(registry);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AuditPartitionManager partitionManager;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeAll
+    void seed() {
+        partitionManager.ensurePartitions(Instant.parse("2025-01-01T00:00:00Z"), Instant.parse("2025-06-01T00:00:00Z"));
+        // 2000 usuarios, LOGIN mayoritario y LOGIN_FAILED ~1% con la metadata que escribe el login,
+        // timestamps crecientes (append-only)
+        jdbcTemplate.update("""
+                INSERT INTO audit_logs (id, uid, actor_uid, action, timestamp, ip, user_agent, metadata)
+                SELECT nextval('audit_logs_seq'),
+                       'plan-user-' || (g % 2000),
+                       'plan-user-' || (g % 2000),
+                       CASE WHEN g % 100 = 0 THEN 'LOGIN_FAILED' WHEN g % 10 = 0 THEN 'LOGOUT' ELSE 'LOGIN' END,
+                       TIMESTAMPTZ '2025-01-01 00:00:00+00' + g * INTERVAL '1 minute',
+                       '10.0.0.1',
+                       'plan-test',
+                       CASE WHEN g % 100 = 0 THEN jsonb_build_object(
+                               'email', 'plan-user-' || (g % 2000) || '@example.com',
+                               'reason', CASE WHEN g % 300 = 0 THEN 'USER_BLOCKED' ELSE 'INVALID_PASSWORD' END)
+                       END
+                FROM generate_series(1, ?) AS g
+                """, ROWS);
+        jdbcTemplate.execute("ANALYZE audit_logs");
+    }
+
+    @Test
+    void uidFilterUsesUidTimestampIndex() {
+        assertThat(indexesUsed("""
+                SELECT * FROM audit_logs
+                WHERE uid = 'plan-user-42'
+                ORDER BY timestamp DESC, id DESC LIMIT 20
+                """)).contains("idx_audit_logs_uid_timestamp");
+    }
+
+    @Test
+    void actionFilterUsesActionTimestampIndex() {
+        assertThat(indexesUsed("""
+                SELECT * FROM audit_logs
+                WHERE action = 'LOGIN_FAILED'
+                ORDER BY timestamp DESC, id DESC LIMIT 20
+                """)).contains("idx_audit_logs_action_timestamp");
+    }
+
+    @Test
+    void keysetPageWithoutFiltersUsesTimestampIdIndex() {
+        assertThat(indexesUsed("""
+                SELECT * FROM audit_logs
+                WHERE timestamp < TIMESTAMPTZ '2025-03-01 00:00:00+00'
+                   OR (timestamp = TIMESTAMPTZ '2025-03-01 00:00:00+00' AND id < 1000)
+                ORDER BY timestamp DESC, id DESC LIMIT 20
+                """)).contains("idx_audit_logs_timestamp_id");
+    }
+
+    @Test
+    void timeRangeScanUsesAnIndexOnTimestamp() {
+        assertThat(indexesUsed("""
+                SELECT count(*) FROM audit_logs
+                WHERE timestamp >= TIMESTAMPTZ '2025-02-01 00:00:00+00'
+                  AND timestamp <  TIMESTAMPTZ '2025-02-02 00:00:00+00'
+                """)).containsAnyOf("idx_audit_logs_timestamp_brin", "idx_audit_logs_timestamp_id");
+    }
+
+    @Test
+    void brinIndexCoversTimeRangeScans() {
+        // Sin el btree (dentro de una transacción que se revierte) el rango debe resolverse con el BRIN
+        Set<String> indexes = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            jdbcTemplate.execute("DROP INDEX idx_audit_logs_timestamp_id");
+            return indexesUsed("""
+                    SELECT count(*) FROM audit_logs
+                    WHERE timestamp >= TIMESTAMPTZ '2025-02-01 00:00:00+00'
+                      AND timestamp <  TIMESTAMPTZ '2025-02-02 00:00:00+00'
+                    """);
+        });
+        assertThat(indexes).contains("idx_audit_logs_timestamp_brin");
+    }
+
+    @Test
+    void timeRangeOnlyScansMatchingPartition() {
+        assertThat(relationsScanned("""
+                SELECT * FROM audit_logs
+                WHERE timestamp >= TIMESTAMPTZ '2025-02-01 00:00:00+00'
+                  AND timestamp <= TIMESTAMPTZ '2025-02-10 00:00:00+00'
+                ORDER BY timestamp DESC, id DESC LIMIT 20
+                """)).containsExactly("audit_logs_p20250201");
+    }
+
+    @Test
+    void metadataContainmentUsesGinIndex() {
+        assertThat(indexesUsed("""
+                SELECT * FROM audit_logs
+                WHERE metadata @> '{"reason":"INVALID_PASSWORD","email":"plan-user-100@example.com"}'
+                ORDER BY timestamp DESC, id DESC LIMIT 20
+                """)).contains("idx_audit_logs_metadata");
+    }
+
+    @Test
+    void searchFiltersByMetadataPairs() {
+        Page<AuditLog> page = auditLogService.search(null, AuditAction.LOGIN_FAILED, null, null,
+                Map.of("reason", "INVALID_PASSWORD", "email", "plan-user-100@example.com"), PageRequest.of(0, 200));
+
+        assertThat(page.getTotalElements()).isPositive();
+        assertThat(page.getContent()).allSatisfy(log -> assertThat(log.getMetadata())
+                .containsEntry("reason", "INVALID_PASSWORD")
+                .containsEntry("email", "plan-user-100@example.com"));
+    }
+
+    /**
+     * Índices del plan, junto con el índice de {@code audit_logs} del que deriva cada índice de partición.
+     */
+    private Set<String> indexesUsed(String sql) {
+        Set<String> indexes = new HashSet<>();
+        for (String index : planValues(sql, "Index Name")) {
+            indexes.add(index);
+            indexes.addAll(jdbcTemplate.queryForList("""
+                    SELECT p.relname FROM pg_inherits i JOIN pg_class p ON p.oid = i.inhparent
+                    WHERE i.inhrelid = ?::regclass
+                    """, String.class, index));
+        }
+        return indexes;
+    }
+
+    private Set<String> relationsScanned(String sql) {
+        return planValues(sql, "Relation Name");
+    }
+
+    private Set<String> planValues(String sql, String field) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class);
+        Set<String> values = new HashSet<>();
+        try {
+            collect(mapper.readTree(plan), field, values);
+        } catch (Exception e) {
+            throw new IllegalStateException("Plan no legible: " + plan, e);
+        }
+        return values;
+    }
+
+    private static void collect(JsonNode node, String field, Set<String> values) {
+        if (node.has(field)) {
+            values.add(node.get(field).asText());
+        }
+        node.forEach(child -> collect(child, field, values));
+    }
+}
@@ -0,0 +1,152 @@
+package com.etikos.demo.service;
+
+import com.etikos.demo.dto.AuditIngestRejection;
+import com.etikos.demo.dto.AuditIngestResponse;
+import com.etikos.demo.dto.AuditLogRequest;
+import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.support.EmbeddedPostgresSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Ingesta NDJSON por COPY contra PostgreSQL embebido. El pool queda limitado a una conexión: la
+ * ingesta tiene que pedir los ids a la secuencia por la misma conexión del COPY.
+ */
+@SpringBootTest(properties = {
+        "audit.datasource.max-concurrency=1",
+        "audit.datasource.acquire-timeout=1s"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AuditCopyIngestServiceTests {
+
+    // Más filas que ids reservados por consulta (200 bloques de 50) y varios trozos de 64 KB
+    private static final int MANY_ROWS = 12_000;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        EmbeddedPostgresSupport.register(registry);
+    }
+
+    @Autowired
+    private AuditCopyIngestService ingestService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private AuditPartitionManager partitionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String runId = "copy-" + UUID.randomUUID();
+
+    @BeforeAll
+    void partitions() {
+        partitionManager.ensurePartitions(Instant.parse("2025-03-01T00:00:00Z"), Instant.parse("2025-04-01T00:00:00Z"));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE uid = ?", runId);
+    }
+
+    @Test
+    void rejectedLinesAreReportedAndValidLinesInserted() throws Exception {
+        String body = String.join("\n",
+                line("LOGIN", "{\"email\":\"a@etikos.com\",\"nota\":\"con \\\"comillas\\\", comas\\ny saltos\"}"),
+                "",
+                "{\"uid\":",
+                line("NO_EXISTE", null),
+                "{\"uid\":\"" + runId + "\"}",
+                "[1, 2]",
+                "{\"uid\":\"" + runId + "\",\"action\":\"LOGIN\",\"pad\":\"" + "x".repeat(70 * 1024) + "\"}",
+                line("LOGOUT", null)) + "\n";
+
+        AuditIngestResponse response = ingest(body);
+
+        assertThat(response.lines()).isEqualTo(7);
+        assertThat(response.inserted()).isEqualTo(2);
+        assertThat(response.rejected()).isEqualTo(5);
+        assertThat(response.rejections()).extracting(AuditIngestRejection::line).containsExactly(3L, 4L, 5L, 6L, 7L);
+        assertThat(response.rejections().get(1).reason()).isEqualTo("action: valor desconocido 'NO_EXISTE'");
+        assertThat(response.rejections().get(2).reason()).isEqualTo("action: no debe ser nulo");
+        assertThat(response.rejections().get(4).reason()).startsWith("la linea supera");
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT action, ip, metadata->>'nota' AS nota FROM audit_logs WHERE uid = ? ORDER BY id", runId);
+        assertThat(rows).extracting(row -> row.get("action")).containsExactly("LOGIN", "LOGOUT");
+        assertThat(rows.get(0).get("nota")).isEqualTo("con \"comillas\", comas\ny saltos");
+        assertThat(rows.get(1).get("ip")).isNull();
+    }
+
+    @Test
+    void idsStayUniqueAcrossChunksAndSequenceFetches() throws Exception {
+        AuditIngestResponse response = ingest(lines(MANY_ROWS));
+
+        assertThat(response.inserted()).isEqualTo(MANY_ROWS);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(DISTINCT id) FROM audit_logs WHERE uid = ?", Long.class, runId)).isEqualTo(MANY_ROWS);
+
+        // Hibernate reparte ids de la misma secuencia: no puede pisar los rangos reservados por la ingesta
+        long recorded = auditLogService.record(new AuditLogRequest(runId, runId, AuditAction.LOGIN,
+                Instant.parse("2025-03-02T00:00:00Z"), null, null, null)).getId();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM audit_logs WHERE id = ?", Long.class, recorded)).isEqualTo(1);
+    }
+
+    @Test
+    void aBodyThatFailsMidwayInsertsNothing() {
+        // El fallo llega después de haber cerrado al menos un COPY para pedir más ids
+        InputStream body = new SequenceInputStream(
+                new ByteArrayInputStream(lines(MANY_ROWS).getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("conexión cortada");
+                    }
+                });
+
+        assertThatThrownBy(() -> ingestService.ingest(body)).isInstanceOf(IOException.class);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM audit_logs WHERE uid = ?", Long.class, runId)).isZero();
+    }
+
+    private AuditIngestResponse ingest(String body) throws Exception {
+        return ingestService.ingest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String lines(int count) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append(line("LOGIN", "{\"n\":" + i + "}")).append('\n');
+        }
+        return body.toString();
+    }
+
+    private String line(String action, String metadata) {
+        return "{\"uid\":\"" + runId + "\",\"actorUid\":\"" + runId + "\",\"action\":\"" + action
+                + "\",\"timestamp\":\"2025-03-01T10:00:00Z\",\"userAgent\":\"copy-test\""
+                + (metadata != null ? ",\"metadata\":" + metadata : "") + "}";
+    }
+}
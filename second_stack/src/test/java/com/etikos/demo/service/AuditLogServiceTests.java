@@ -0,0 +1,84 @@
+package com.etikos.demo.service;
+
+import com.etikos.demo.dto.AuditLogRequest;
+import com.etikos.demo.entity.AuditAction;
+import com.etikos.demo.entity.AuditLog;
+import com.etikos.demo.support.EmbeddedPostgresSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Filtros {@code meta.<clave>=<valor>} de la búsqueda contra PostgreSQL embebido.
+ */
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AuditLogServiceTests {
+
+    private static final String UID = "metadata-filter-test";
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        EmbeddedPostgresSupport.register(registry);
+    }
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private AuditPartitionManager partitionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void seed() {
+        partitionManager.ensurePartitions(Instant.parse("2025-03-01T00:00:00Z"), Instant.parse("2025-04-01T00:00:00Z"));
+        record("numero", Map.of("attempts", 3, "mfa", true));
+        record("texto", Map.of("attempts", "3", "mfa", "true", "reason", "INVALID_PASSWORD"));
+        record("otro", Map.of("attempts", 4, "mfa", false, "reason", "INVALID_PASSWORD"));
+    }
+
+    @AfterAll
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE uid = ?", UID);
+    }
+
+    @Test
+    void numericAndBooleanValuesMatchTextAndTypedJson() {
+        assertThat(search(Map.of("attempts", "3"))).containsExactlyInAnyOrder("numero", "texto");
+        assertThat(search(Map.of("mfa", "true"))).containsExactlyInAnyOrder("numero", "texto");
+        assertThat(search(Map.of("attempts", "3", "mfa", "true", "reason", "INVALID_PASSWORD")))
+                .containsExactly("texto");
+    }
+
+    @Test
+    void textValuesOnlyMatchText() {
+        assertThat(search(Map.of("reason", "INVALID_PASSWORD"))).containsExactlyInAnyOrder("texto", "otro");
+        assertThat(search(Map.of("attempts", "03"))).isEmpty();
+    }
+
+    private void record(String agent, Map<String, Object> metadata) {
+        auditLogService.record(new AuditLogRequest(UID, UID, AuditAction.LOGIN_FAILED,
+                Instant.parse("2025-03-05T00:00:00Z"), null, agent, metadata));
+    }
+
+    private List<String> search(Map<String, String> metadata) {
+        return auditLogService.search(UID, null, null, null, metadata, Pageable.unpaged())
+                .map(AuditLog::getUserAgent)
+                .getContent();
+    }
+}
@@ -0,0 +1,82 @@
+package com.etikos.demo.service;
+
+import com.etikos.demo.support.EmbeddedPostgresSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Creación de particiones de {@code audit_logs} alrededor de particiones ya existentes, contra
+ * PostgreSQL embebido. Usa periodos de 2031 para no tocar los de otros tests.
+ */
+@SpringBootTest
+class AuditPartitionManagerTests {
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        EmbeddedPostgresSupport.register(registry);
+    }
+
+    @Autowired
+    private AuditPartitionManager partitionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropPartitions() {
+        jdbcTemplate.update("DELETE FROM audit_logs WHERE uid = 'partition-test'");
+        for (String name : partitionNames()) {
+            jdbcTemplate.execute("DROP TABLE " + name);
+        }
+    }
+
+    @Test
+    void innerPartitionLeavesOnePartitionPerGap() {
+        jdbcTemplate.execute("CREATE TABLE audit_logs_inner_2031 PARTITION OF audit_logs "
+                + "FOR VALUES FROM ('2031-05-10T00:00:00Z') TO ('2031-05-12T00:00:00Z')");
+        insert("2031-05-03T00:00:00Z");
+        insert("2031-05-20T00:00:00Z");
+
+        int created = partitionManager.ensurePartitions(
+                Instant.parse("2031-05-01T00:00:00Z"), Instant.parse("2031-05-31T00:00:00Z"));
+
+        assertThat(created).isEqualTo(2);
+        assertThat(partitionNames()).containsExactly(
+                "audit_logs_inner_2031", "audit_logs_p20310501", "audit_logs_p20310512");
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT tableoid::regclass::text FROM audit_logs WHERE uid = 'partition-test' ORDER BY timestamp",
+                String.class)).containsExactly("audit_logs_p20310501", "audit_logs_p20310512");
+    }
+
+    @Test
+    void coveredPeriodsAreNotCreatedAgain() {
+        partitionManager.ensurePartitions(Instant.parse("2031-07-01T00:00:00Z"), Instant.parse("2031-07-15T00:00:00Z"));
+
+        assertThat(partitionManager.ensurePartitions(
+                Instant.parse("2031-07-01T00:00:00Z"), Instant.parse("2031-07-31T00:00:00Z"))).isZero();
+        assertThat(partitionNames()).containsExactly("audit_logs_p20310701");
+    }
+
+    private void insert(String timestamp) {
+        jdbcTemplate.update("INSERT INTO audit_logs (id, uid, action, timestamp) "
+                + "VALUES (nextval('audit_logs_seq'), 'partition-test', 'LOGIN', ?::timestamptz)", timestamp);
+    }
+
+    private List<String> partitionNames() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'audit_logs'::regclass AND c.relname LIKE '%2031%'
+                ORDER BY c.relname
+                """, String.class);
+    }
+}
@@ -0,0 +1,22 @@
+package com.etikos.user.audit;
+
+import java.util.List;
+
+/**
+ * Respuesta de {@code POST /api/audits/batch} en el servicio de auditoría.
+ */
+public record AuditBatchResult(
+        int received,
+        int accepted,
+        int rejected,
+        List<ItemError> errors
+) {
+
+    /**
+     * Evento rechazado por validación.
+     *
+     * @param index posición del evento en el lote enviado
+     */
+    public record ItemError(int index, List<String> errors) {
+    }
+}
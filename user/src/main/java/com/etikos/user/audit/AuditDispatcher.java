@@ -0,0 +1,355 @@
+package com.etikos.user.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cola acotada en memoria y workers en segundo plano que envían los eventos de auditoría al
+ * servicio secundario en lotes (por tamaño o por tiempo), de modo que los controladores nunca
+ * esperan la llamada HTTP.
+ * <p>
+ * Con {@code spring.threads.virtual.enabled=true} los workers son hilos virtuales y el cliente HTTP
+ * (el {@code HttpClient} del JDK) ejecuta sus tareas también en hilos virtuales; si no, son hilos
+ * de plataforma daemon, como hasta ahora.
+ */
+@Component
+public class AuditDispatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditDispatcher.class);
+    private static final long SPILL_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long DROP_WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final RestTemplate restTemplate;
+    private final URI batchEndpoint;
+    private final AuditServiceProperties properties;
+    private final BlockingQueue<AuditLogPayload> queue;
+    private final AuditSpillFile spillFile;
+    private final ObjectMapper objectMapper;
+    private final long flushIntervalNanos;
+    private final boolean virtualThreads;
+    private volatile long nextReplayNanos = System.nanoTime();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong nextDropWarningNanos = new AtomicLong(System.nanoTime());
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public AuditDispatcher(RestTemplateBuilder restTemplateBuilder,
+                           AuditServiceProperties properties,
+                           ObjectMapper objectMapper,
+                           Environment environment) {
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+        if (virtualThreads) {
+            restTemplateBuilder = restTemplateBuilder.requestFactoryBuilder(ClientHttpRequestFactoryBuilder.jdk()
+                    .withHttpClientCustomizer(client -> client.executor(Executors.newVirtualThreadPerTaskExecutor())));
+        }
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setReadTimeout(properties.getReadTimeout())
+                .build();
+        this.batchEndpoint = properties.getBaseUrl().resolve("/api/audits/batch");
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.spillFile = new AuditSpillFile(properties.getSpillDirectory(), objectMapper);
+        this.objectMapper = objectMapper;
+        this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+    }
+
+    /**
+     * Encola un evento aplicando la política de desbordamiento configurada. Sólo bloquea con
+     * {@link AuditOverflowPolicy#BLOCK}, y como máximo {@code block-timeout}.
+     */
+    public void enqueue(AuditLogPayload payload) throws AuditClientException {
+        if (!running) {
+            // Fuera del ciclo de vida (arranque o apagado) no hay workers que vacíen la cola
+            spillFile.append(List.of(payload));
+            spilled.incrementAndGet();
+            return;
+        }
+        if (queue.offer(payload)) {
+            return;
+        }
+        switch (properties.getOverflowPolicy()) {
+            case BLOCK -> {
+                try {
+                    if (!queue.offer(payload, properties.getBlockTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                        dropped.incrementAndGet();
+                        throw new AuditClientException("La cola de auditoría está llena", null);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AuditClientException("Interrumpido esperando espacio en la cola de auditoría", e);
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(payload)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                // Un aviso cada DROP_WARNING_INTERVAL_NANOS como mucho: el contador ya registra cada descarte
+                long now = System.nanoTime();
+                long next = nextDropWarningNanos.get();
+                if (now - next >= 0 && nextDropWarningNanos.compareAndSet(next, now + DROP_WARNING_INTERVAL_NANOS)) {
+                    log.warn("Cola de auditoría llena: se descartó el evento más antiguo (total descartados: {})", dropped.get());
+                }
+            }
+            case SPILL -> {
+                spillFile.append(List.of(payload));
+                spilled.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread.Builder threads = virtualThreads
+                ? Thread.ofVirtual().name("audit-dispatcher-", 0)
+                : Thread.ofPlatform().daemon().name("audit-dispatcher-", 0);
+        for (int i = 0; i < Math.max(1, properties.getWorkers()); i++) {
+            workers.add(threads.start(this::runWorker));
+        }
+        log.info("Audit dispatcher iniciado: {} workers{}, cola {}, lote {}, flush cada {}, política {}",
+                workers.size(), virtualThreads ? " virtuales" : "", properties.getQueueCapacity(), properties.getBatchSize(),
+                properties.getFlushInterval(), properties.getOverflowPolicy());
+    }
+
+    /**
+     * Deja de aceptar trabajo nuevo en los workers, espera a que vacíen la cola hasta
+     * {@code shutdown-timeout} y guarda en el archivo de desbordamiento lo que quede pendiente.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.nanoTime() + properties.getShutdownTimeout().toNanos();
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if (remainingMillis > 0) {
+                    worker.join(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.forEach(Thread::interrupt);
+        workers.clear();
+
+        List<AuditLogPayload> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        if (!leftovers.isEmpty()) {
+            log.warn("Apagado con {} eventos de auditoría pendientes; se guardan en {}",
+                    leftovers.size(), properties.getSpillDirectory());
+            spillFile.append(leftovers);
+        }
+        log.info("Audit dispatcher detenido (enviados={}, desbordados={}, descartados={})",
+                sent.get(), spilled.get(), dropped.get());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Se detiene después del servidor web para no perder los eventos de las peticiones en curso.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runWorker() {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        List<AuditLogPayload> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch, batchSize);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+                return;
+            }
+            if (batch.isEmpty()) {
+                if (running && spillFile.hasPending() && System.nanoTime() - nextReplayNanos >= 0) {
+                    replaySpill(batchSize);
+                }
+                continue;
+            }
+            flush(batch);
+        }
+    }
+
+    private void replaySpill(int batchSize) {
+        spillFile.replay(batchSize, this::send);
+        if (spillFile.hasPending()) {
+            // El servicio secundario sigue fallando: no reintentar en cada ciclo vacío
+            nextReplayNanos = System.nanoTime() + SPILL_RETRY_BACKOFF_NANOS;
+        }
+    }
+
+    /**
+     * Llena {@code batch} hasta {@code batchSize} eventos o hasta que pase {@code flush-interval}
+     * desde que se empezó a esperar, lo que ocurra primero.
+     */
+    private void collect(List<AuditLogPayload> batch, int batchSize) throws InterruptedException {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            AuditLogPayload next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(List<AuditLogPayload> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<AuditLogPayload> unsent = send(batch);
+        if (!unsent.isEmpty()) {
+            if (properties.getOverflowPolicy() == AuditOverflowPolicy.SPILL) {
+                spillFile.append(unsent);
+                spilled.addAndGet(unsent.size());
+            } else {
+                dropped.addAndGet(unsent.size());
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Envía el lote a {@code /api/audits/batch} y devuelve los eventos que merecen reintento
+     * (servicio caído, 5xx o credenciales rechazadas). Los eventos que el servicio rechaza por
+     * validación se registran y descartan uno a uno, según los índices de {@link AuditBatchResult}.
+     * Si el servicio rechaza el lote sin detalle por evento (lote demasiado grande o ilegible), se
+     * parte en dos y se reenvía cada mitad hasta aislar los eventos culpables.
+     */
+    private List<AuditLogPayload> send(List<AuditLogPayload> batch) {
+        try {
+            AuditBatchResult result = restTemplate.postForObject(batchEndpoint, batch, AuditBatchResult.class);
+            if (result == null) {
+                sent.addAndGet(batch.size());
+            } else {
+                dropRejected(batch, result);
+                sent.addAndGet(result.accepted());
+            }
+            return List.of();
+        } catch (HttpClientErrorException e) {
+            AuditBatchResult result = readResult(e);
+            if (result != null && result.received() == batch.size()) {
+                dropRejected(batch, result);
+                sent.addAndGet(result.accepted());
+                return List.of();
+            }
+            if (!isMalformedBatch(e)) {
+                log.error("El servicio de auditoría respondió {} al lote de {} eventos: {}",
+                        e.getStatusCode(), batch.size(), e.getResponseBodyAsString());
+                return batch;
+            }
+            if (batch.size() == 1) {
+                log.error("El servicio de auditoría rechazó el evento {} de {} ({}): {}",
+                        batch.get(0).action(), batch.get(0).uid(), e.getStatusCode(), e.getResponseBodyAsString());
+                dropped.incrementAndGet();
+                return List.of();
+            }
+            int half = batch.size() / 2;
+            List<AuditLogPayload> unsent = new ArrayList<>(send(batch.subList(0, half)));
+            unsent.addAll(send(batch.subList(half, batch.size())));
+            return unsent;
+        } catch (RestClientException e) {
+            log.error("Fallo al enviar {} eventos de auditoría al servicio secundario {}",
+                    batch.size(), batchEndpoint, e);
+            return batch;
+        }
+    }
+
+    private void dropRejected(List<AuditLogPayload> batch, AuditBatchResult result) {
+        if (result.rejected() == 0) {
+            return;
+        }
+        if (result.errors() == null || result.errors().isEmpty()) {
+            log.warn("El servicio de auditoría rechazó {} de {} eventos", result.rejected(), result.received());
+        } else {
+            for (AuditBatchResult.ItemError error : result.errors()) {
+                AuditLogPayload event = error.index() >= 0 && error.index() < batch.size()
+                        ? batch.get(error.index()) : null;
+                log.warn("El servicio de auditoría rechazó el evento {} de {}: {}",
+                        event != null ? event.action() : "#" + error.index(),
+                        event != null ? event.uid() : "?", error.errors());
+            }
+        }
+        dropped.addAndGet(result.rejected());
+    }
+
+    /**
+     * Cuerpo de un 4xx con el resultado por evento, o {@code null} si no lo trae (por ejemplo, un
+     * lote vacío o por encima de {@code audit.batch.max-size}).
+     */
+    private AuditBatchResult readResult(HttpClientErrorException e) {
+        byte[] body = e.getResponseBodyAsByteArray();
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            AuditBatchResult result = objectMapper.readValue(body, AuditBatchResult.class);
+            return result.errors() != null ? result : null;
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    private static boolean isMalformedBatch(HttpClientErrorException e) {
+        return e.getStatusCode().isSameCodeAs(HttpStatus.BAD_REQUEST)
+                || e.getStatusCode().isSameCodeAs(HttpStatus.PAYLOAD_TOO_LARGE)
+                || e.getStatusCode().isSameCodeAs(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+}
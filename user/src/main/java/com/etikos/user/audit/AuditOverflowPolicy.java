@@ -0,0 +1,20 @@
+package com.etikos.user.audit;
+
+/**
+ * Comportamiento de la cola de auditoría cuando alcanza su capacidad máxima.
+ */
+public enum AuditOverflowPolicy {
+    /**
+     * Bloquea el hilo que registra el evento hasta {@code block-timeout}; si sigue llena se lanza
+     * {@link AuditClientException}.
+     */
+    BLOCK,
+    /**
+     * Descarta el evento más antiguo de la cola para hacer sitio al nuevo.
+     */
+    DROP_OLDEST,
+    /**
+     * Escribe el evento en un archivo NDJSON local que se reenvía cuando la cola se vacía.
+     */
+    SPILL
+}
@@ -3,13 +3,8 @@ package com.etikos.user.audit;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
-import java.net.URI;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,17 +14,16 @@ public class AuditService {
 
     private static final Logger log = LoggerFactory.getLogger(AuditService.class);
 
-    private final RestTemplate restTemplate;
-    private final URI auditEndpoint;
+    private final AuditDispatcher dispatcher;
 
-    public AuditService(RestTemplateBuilder restTemplateBuilder, AuditServiceProperties properties) {
-        this.restTemplate = restTemplateBuilder
-                .setConnectTimeout(properties.getConnectTimeout())
-                .setReadTimeout(properties.getReadTimeout())
-                .build();
-        this.auditEndpoint = properties.getBaseUrl().resolve("/api/audits");
+    public AuditService(AuditDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
     }
 
+    /**
+     * Registra el evento en la cola de auditoría. El envío al servicio secundario ocurre en
+     * segundo plano, por lo que la latencia del controlador no depende de él.
+     */
     public void log(String uid, String actorUid, AuditAction action,
                     HttpServletRequest req, Map<String, Object> meta) throws AuditClientException {
         Map<String, Object> metadata = meta != null ? new HashMap<>(meta) : null;
@@ -43,15 +37,7 @@ public class AuditService {
                 metadata
         );
 
-        try {
-            ResponseEntity<Void> response = restTemplate.postForEntity(auditEndpoint, payload, Void.class);
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                throw new AuditClientException("El servicio de auditoría respondió con estado " + response.getStatusCode(), null);
-            }
-        } catch (RestClientException e) {
-            log.error("Fallo al enviar evento de auditoría al servicio secundario {}", auditEndpoint, e);
-            throw new AuditClientException("No se pudo registrar el evento de auditoría en el servicio secundario", e);
-        }
+        dispatcher.enqueue(payload);
 
         logConsole(uid, actorUid, action, req, metadata);
     }
@@ -75,7 +61,12 @@ public class AuditService {
         }
     }
 
-    private String extractIp(HttpServletRequest req) {
+    /**
+     * IP del cliente: la primera de {@code X-Forwarded-For} si viene, si no la de la conexión. El
+     * cliente puede falsear la cabecera, así que sólo sirve como dato informativo de la auditoría;
+     * los controles de seguridad usan {@link HttpServletRequest#getRemoteAddr()}.
+     */
+    public static String extractIp(HttpServletRequest req) {
         if (req == null) return null;
         String h = req.getHeader("X-Forwarded-For");
         if (h != null && !h.isBlank()) return h.split(",")[0].trim();
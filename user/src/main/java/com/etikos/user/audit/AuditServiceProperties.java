@@ -3,6 +3,7 @@ package com.etikos.user.audit;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.net.URI;
+import java.nio.file.Path;
 import java.time.Duration;
 
 @ConfigurationProperties(prefix = "audit.service")
@@ -23,6 +24,46 @@ public class AuditServiceProperties {
      */
     private Duration readTimeout = Duration.ofSeconds(5);
 
+    /**
+     * Número máximo de eventos pendientes en memoria.
+     */
+    private int queueCapacity = 10_000;
+
+    /**
+     * Número máximo de eventos enviados en cada flush.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Tiempo máximo que un evento espera en la cola antes de enviarse aunque el lote no esté lleno.
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * Hilos en segundo plano que vacían la cola.
+     */
+    private int workers = 1;
+
+    /**
+     * Qué hacer cuando la cola está llena.
+     */
+    private AuditOverflowPolicy overflowPolicy = AuditOverflowPolicy.SPILL;
+
+    /**
+     * Espera máxima del productor con la política BLOCK.
+     */
+    private Duration blockTimeout = Duration.ofMillis(100);
+
+    /**
+     * Directorio donde se guardan los eventos desbordados o que no se pudieron enviar.
+     */
+    private Path spillDirectory = Path.of("logs", "audit-spill");
+
+    /**
+     * Tiempo máximo para vaciar la cola al apagar el servicio.
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
     public URI getBaseUrl() {
         return baseUrl;
     }
@@ -46,5 +87,68 @@ public class AuditServiceProperties {
     public void setReadTimeout(Duration readTimeout) {
         this.readTimeout = readTimeout;
     }
-}
 
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public AuditOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(AuditOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public Duration getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(Duration blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public Duration getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    public void setShutdownTimeout(Duration shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+}
@@ -0,0 +1,190 @@
+package com.etikos.user.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Almacén local (NDJSON, un evento por línea) para eventos de auditoría que no caben en la cola
+ * o que el servicio secundario rechazó. Se reenvían en lotes cuando la cola vuelve a estar libre.
+ * <p>
+ * {@link #append} se llama desde el hilo de la petición, así que nunca espera a un reenvío: el
+ * lock de escritura sólo se toma para añadir líneas o para renombrar {@code audit-spill.ndjson} a
+ * {@code audit-spill.replay}, y el reenvío lee y envía ese segundo archivo sin él. Un segundo lock
+ * evita que dos workers reenvíen a la vez. Son {@link ReentrantLock} y no {@code synchronized} para
+ * no fijar un hilo virtual a su hilo portador durante la E/S de disco.
+ * <p>
+ * Una línea que no se puede leer (por ejemplo, la última a medio escribir tras una caída) se
+ * aparta a {@code audit-spill.rejected} y el reenvío sigue con la siguiente: si detuviera el
+ * reenvío, los lotes ya enviados se repetirían en cada intento.
+ */
+class AuditSpillFile {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditSpillFile.class);
+
+    private final Path file;
+    private final Path replayFile;
+    private final Path rejectedFile;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    AuditSpillFile(Path directory, ObjectMapper objectMapper) {
+        this.file = directory.resolve("audit-spill.ndjson");
+        this.replayFile = directory.resolve("audit-spill.replay");
+        this.rejectedFile = directory.resolve("audit-spill.rejected");
+        this.objectMapper = objectMapper;
+    }
+
+    void append(Collection<AuditLogPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditLogPayload payload : payloads) {
+                    writer.write(objectMapper.writeValueAsString(payload));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            log.error("No se pudieron guardar {} eventos de auditoría en {}", payloads.size(), file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendRaw(BufferedReader remaining) throws IOException {
+        lock.lock();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            String line;
+            while ((line = remaining.readLine()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sólo la llama el reenvío, con {@code replayLock}.
+     */
+    private void reject(String line) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+
+    boolean hasPending() {
+        return Files.exists(file) || Files.exists(replayFile);
+    }
+
+    /**
+     * Reenvía los eventos guardados en lotes de {@code batchSize}. {@code sender} devuelve los
+     * eventos del lote que hay que reintentar; si hay alguno se detiene y esos eventos, junto con
+     * los que faltaban por leer, vuelven al archivo. Si otro hilo ya está reenviando no hace nada.
+     *
+     * @return número de eventos reenviados
+     */
+    int replay(int batchSize, Function<List<AuditLogPayload>, List<AuditLogPayload>> sender) {
+        if (!replayLock.tryLock()) {
+            return 0;
+        }
+        try {
+            if (!Files.exists(replayFile) && !rotate()) {
+                return 0;
+            }
+
+            int sent = 0;
+            int rejected = 0;
+            boolean failed = false;
+            List<AuditLogPayload> batch = new ArrayList<>(batchSize);
+            try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                String line;
+                while (!failed && (line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        batch.add(objectMapper.readValue(line, AuditLogPayload.class));
+                    } catch (JsonProcessingException e) {
+                        reject(line);
+                        rejected++;
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        List<AuditLogPayload> unsent = sender.apply(batch);
+                        sent += batch.size() - unsent.size();
+                        failed = !unsent.isEmpty();
+                        batch = new ArrayList<>(unsent);
+                    }
+                }
+                if (!failed && !batch.isEmpty()) {
+                    List<AuditLogPayload> unsent = sender.apply(batch);
+                    sent += batch.size() - unsent.size();
+                    failed = !unsent.isEmpty();
+                    batch = new ArrayList<>(unsent);
+                }
+                if (failed) {
+                    append(batch);
+                    appendRaw(reader);
+                }
+            }
+
+            Files.delete(replayFile);
+            if (rejected > 0) {
+                log.error("{} líneas ilegibles de {} apartadas en {}", rejected, replayFile, rejectedFile);
+            }
+            if (sent > 0) {
+                log.info("Reenviados {} eventos de auditoría desde {}", sent, file);
+            }
+            return sent;
+        } catch (IOException e) {
+            log.error("No se pudo reenviar el archivo de auditoría {}", replayFile, e);
+            return 0;
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    /**
+     * Pasa lo acumulado a {@code audit-spill.replay}; las escrituras siguientes empiezan un
+     * {@code audit-spill.ndjson} nuevo.
+     *
+     * @return {@code false} si no había nada que reenviar
+     */
+    private boolean rotate() throws IOException {
+        lock.lock();
+        try {
+            if (!Files.exists(file)) {
+                return false;
+            }
+            Files.move(file, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package com.etikos.user.config;
 
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
-import com.google.firebase.cloud.FirestoreClient;
+import com.etikos.user.store.UserKeyConflictException;
+import com.etikos.user.store.UserStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,8 +10,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 @Component
 public class AdminInitializer implements CommandLineRunner {
@@ -20,6 +19,7 @@ public class AdminInitializer implements CommandLineRunner {
     private static final Logger log = LoggerFactory.getLogger(AdminInitializer.class);
 
     private final PasswordEncoder passwordEncoder;
+    private final UserStore store;
 
     @Value("${admin.default.username}")
     private String adminUsername;
@@ -36,45 +36,23 @@ public class AdminInitializer implements CommandLineRunner {
     @Value("${admin.default.lastname}")
     private String adminLastname;
 
-    public AdminInitializer(PasswordEncoder passwordEncoder) {
+    public AdminInitializer(PasswordEncoder passwordEncoder, UserStore store) {
         this.passwordEncoder = passwordEncoder;
+        this.store = store;
     }
 
     @Override
     public void run(String... args) throws Exception {
         log.info("Checking if default admin user exists...");
 
-        Firestore db = FirestoreClient.getFirestore();
-
         // Verificar si ya existe un usuario con rol ADMIN
-        List<QueryDocumentSnapshot> adminUsers = db.collection("users")
-                .whereEqualTo("role", "ADMIN")
-                .get().get().getDocuments();
-
-        if (!adminUsers.isEmpty()) {
+        if (store.existsWithRole("ADMIN").get()) {
             log.info("Admin user already exists. Skipping creation.");
             return;
         }
 
-        // Verificar si el email o username ya existen
-        List<QueryDocumentSnapshot> existingEmail = db.collection("users")
-                .whereEqualTo("email", adminEmail)
-                .get().get().getDocuments();
-
-        List<QueryDocumentSnapshot> existingUsername = db.collection("users")
-                .whereEqualTo("username", adminUsername)
-                .get().get().getDocuments();
-
-        if (!existingEmail.isEmpty() || !existingUsername.isEmpty()) {
-            log.warn("Admin email or username already exists but with different role. Skipping creation.");
-            return;
-        }
-
         // Crear usuario administrador por defecto
-        String uid = db.collection("users").document().getId();
-
         Map<String, Object> adminData = new HashMap<>();
-        adminData.put("uid", uid);
         adminData.put("username", adminUsername);
         adminData.put("email", adminEmail);
         adminData.put("password", passwordEncoder.encode(adminPassword));
@@ -82,13 +60,20 @@ public class AdminInitializer implements CommandLineRunner {
         adminData.put("lastname", adminLastname);
         adminData.put("role", "ADMIN");
         adminData.put("disabled", false);
-        adminData.put("createdAt", com.google.cloud.Timestamp.now());
-        adminData.put("updatedAt", com.google.cloud.Timestamp.now());
         adminData.put("biometricEnabled", false);
         adminData.put("totpEnabled", false);
         adminData.put("totpSecret", null);
 
-        db.collection("users").document(uid).set(adminData).get();
+        // Reclamar email y username junto con el usuario, igual que en el registro
+        try {
+            store.create(adminData).get();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof UserKeyConflictException)) {
+                throw e;
+            }
+            log.warn("Admin email or username already exists but with different role. Skipping creation.");
+            return;
+        }
 
         log.info("=============================================================");
         log.info("DEFAULT ADMIN USER CREATED SUCCESSFULLY");
@@ -1,10 +1,12 @@
 // com.etikos.user.config.FirebaseConfig
 package com.etikos.user.config;
 
+import com.etikos.user.store.UserStoreProperties;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 
 import jakarta.annotation.PostConstruct;
@@ -16,6 +18,7 @@ import java.io.InputStream;
  * This file is kept for reference but is no longer active
  */
 @Configuration
+@ConditionalOnProperty(name = UserStoreProperties.TYPE_PROPERTY, havingValue = "firestore", matchIfMissing = true)
 public class FirebaseConfig {
 
     @Value("${firebase.credentials}")
@@ -0,0 +1,143 @@
+package com.etikos.user.config;
+
+import com.etikos.user.store.UserKeyIndex;
+import com.etikos.user.store.UserProjection;
+import com.etikos.user.store.UserStoreProperties;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.firebase.cloud.FirestoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migración única que crea las claves {@code emails/{email}} y {@code usernames/{username}} de los
+ * usuarios registrados antes de que existiera {@link UserKeyIndex}. Al terminar guarda
+ * {@code migrations/user-key-index}; mientras ese documento exista no se vuelve a ejecutar.
+ * <p>
+ * Es idempotente: cada usuario se procesa en su propia transacción y sólo se crean las claves que
+ * faltan. Si dos usuarios comparten email o username (posible con el registro antiguo basado en
+ * queries) la clave queda para el primero y el conflicto se registra en el log.
+ * <p>
+ * Se ejecuta antes que {@link AdminInitializer} para que el admin por defecto no reclame un email
+ * que ya usa otro usuario. Sólo existe con el almacén de Firestore.
+ */
+@Component
+@ConditionalOnProperty(name = UserStoreProperties.TYPE_PROPERTY, havingValue = "firestore", matchIfMissing = true)
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class UserKeyIndexMigrator implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(UserKeyIndexMigrator.class);
+
+    private static final String MARKER_COLLECTION = "migrations";
+    private static final String MARKER_ID = "user-key-index";
+    private static final int PAGE_SIZE = 300;
+
+    private final UserKeyIndex keyIndex;
+
+    @Value("${users.key-index.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    public UserKeyIndexMigrator(UserKeyIndex keyIndex) {
+        this.keyIndex = keyIndex;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference marker = db.collection(MARKER_COLLECTION).document(MARKER_ID);
+        if (marker.get().get().exists()) {
+            log.debug("User key index already migrated. Skipping.");
+            return;
+        }
+
+        log.info("Building email/username key index for existing users...");
+        int users = 0;
+        int claimed = 0;
+        int conflicts = 0;
+
+        Query page = db.collection("users")
+                .select(UserProjection.KEYS.fields().toArray(new String[0]))
+                .orderBy(FieldPath.documentId())
+                .limit(PAGE_SIZE);
+        while (true) {
+            List<QueryDocumentSnapshot> docs = page.get().get().getDocuments();
+            for (QueryDocumentSnapshot doc : docs) {
+                Outcome outcome = migrate(db, doc);
+                users++;
+                claimed += outcome.claimed();
+                conflicts += outcome.conflicts();
+            }
+            if (docs.size() < PAGE_SIZE) {
+                break;
+            }
+            page = page.startAfter(docs.get(docs.size() - 1));
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("completedAt", Timestamp.now());
+        summary.put("users", users);
+        summary.put("claimed", claimed);
+        summary.put("conflicts", conflicts);
+        marker.set(summary).get();
+
+        if (conflicts > 0) {
+            log.warn("User key index built with {} conflicts: {} users, {} keys created", conflicts, users, claimed);
+        } else {
+            log.info("User key index built: {} users, {} keys created", users, claimed);
+        }
+    }
+
+    private Outcome migrate(Firestore db, QueryDocumentSnapshot doc) throws Exception {
+        String uid = doc.getId();
+        String email = doc.getString("email");
+        String username = doc.getString("username");
+        DocumentReference emailKey = email != null && !email.isBlank() ? keyIndex.emailRef(email) : null;
+        DocumentReference usernameKey = username != null && !username.isEmpty() ? keyIndex.usernameRef(username) : null;
+
+        Outcome outcome = db.runTransaction(tx -> {
+            String emailOwner = emailKey != null ? keyIndex.owner(tx, emailKey) : uid;
+            String usernameOwner = usernameKey != null ? keyIndex.owner(tx, usernameKey) : uid;
+            int created = 0;
+            int conflicts = 0;
+            if (emailOwner == null) {
+                keyIndex.claim(tx, emailKey, uid);
+                created++;
+            } else if (!emailOwner.equals(uid)) {
+                conflicts++;
+            }
+            if (usernameOwner == null) {
+                keyIndex.claim(tx, usernameKey, uid);
+                created++;
+            } else if (!usernameOwner.equals(uid)) {
+                conflicts++;
+            }
+            return new Outcome(created, conflicts);
+        }).get();
+
+        if (outcome.conflicts() > 0) {
+            log.warn("Key conflict migrating user {}: email '{}' or username '{}' already belongs to another user",
+                    uid, email, username);
+        }
+        return outcome;
+    }
+
+    private record Outcome(int claimed, int conflicts) {
+    }
+}
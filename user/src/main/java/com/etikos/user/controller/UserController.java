@@ -2,8 +2,15 @@
 package com.etikos.user.controller;
 
 import com.etikos.user.audit.AuditAction;
+import com.etikos.user.audit.AuditClientException;
 import com.etikos.user.audit.AuditService;
 import com.etikos.user.dto.*;
+import com.etikos.user.security.LoginRateLimiter;
+import com.etikos.user.security.PasswordHashingRejectedException;
+import com.etikos.user.security.TokenDenylist;
+import com.etikos.user.security.VerifiedToken;
+import com.etikos.user.services.TotpQrProperties;
+import com.etikos.user.services.TotpQrRenderer;
 import com.etikos.user.services.UserProfileService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -18,14 +25,28 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/users")
@@ -36,10 +57,28 @@ public class UserController {
 
     private final UserProfileService userService;
     private final AuditService audit;
+    private final TokenDenylist tokenDenylist;
+    private final TotpQrRenderer qrRenderer;
+    private final TotpQrProperties qrProperties;
+    private final LoginRateLimiter loginRateLimiter;
+    /**
+     * Donde continúan los futuros antes de auditar y armar la respuesta: sin él correrían en el hilo
+     * de gRPC de Firestore o en el pool de BCrypt que los completa.
+     */
+    private final Executor executor;
 
-    public UserController(UserProfileService userService, AuditService audit) {
+    public UserController(UserProfileService userService, AuditService audit, TokenDenylist tokenDenylist,
+                          TotpQrRenderer qrRenderer, TotpQrProperties qrProperties,
+                          LoginRateLimiter loginRateLimiter,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                          Executor executor) {
         this.userService = userService;
         this.audit = audit;
+        this.tokenDenylist = tokenDenylist;
+        this.qrRenderer = qrRenderer;
+        this.qrProperties = qrProperties;
+        this.loginRateLimiter = loginRateLimiter;
+        this.executor = executor;
     }
 
     // REGISTER (público)
@@ -50,15 +89,17 @@ public class UserController {
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Usuario registrado", content = @Content(schema = @Schema(implementation = UserProfileDto.class))),
             @ApiResponse(responseCode = "400", description = "Solicitud invalida"),
-            @ApiResponse(responseCode = "500", description = "Error interno")
+            @ApiResponse(responseCode = "500", description = "Error interno"),
+            @ApiResponse(responseCode = "503", description = "Hashing de contrasenas saturado, reintentar tras Retry-After")
     })
     @PostMapping("/register")
-    public ResponseEntity<UserProfileDto> register(@Valid @RequestBody RegisterRequest req,
-                                                   HttpServletRequest http) throws Exception {
+    public CompletableFuture<ResponseEntity<UserProfileDto>> register(@Valid @RequestBody RegisterRequest req,
+                                                                      HttpServletRequest http) {
         log.info("Registration request received for email: {}", req.getEmail());
-        UserProfileDto created = userService.register(req);
-        audit.log(created.getUid(), null, AuditAction.REGISTER, http, null);
-        return ResponseEntity.ok(created);
+        return userService.register(req).thenApplyAsync(created -> {
+            auditOrFail(created.getUid(), null, AuditAction.REGISTER, http, null);
+            return ResponseEntity.ok(created);
+        }, executor);
     }
 
     // LOGIN (público)
@@ -70,22 +111,29 @@ public class UserController {
             @ApiResponse(responseCode = "200", description = "Login exitoso", content = @Content(schema = @Schema(implementation = LoginResponse.class))),
             @ApiResponse(responseCode = "400", description = "Solicitud invalida"),
             @ApiResponse(responseCode = "401", description = "Credenciales invalidas o cuenta bloqueada"),
-            @ApiResponse(responseCode = "500", description = "Error interno")
+            @ApiResponse(responseCode = "429", description = "Demasiados intentos desde la IP o para el email, reintentar tras Retry-After"),
+            @ApiResponse(responseCode = "500", description = "Error interno"),
+            @ApiResponse(responseCode = "503", description = "Hashing de contrasenas saturado, reintentar tras Retry-After")
     })
     @PostMapping("/login")
-    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest req,
-                                               HttpServletRequest http) {
-        try {
-            log.info("Login request received for email: {}", req.getEmail());
-            LoginResponse response = userService.login(req);
-
-            // Auditar login exitoso
-            audit.log(response.getUser().getUid(), response.getUser().getUid(), AuditAction.LOGIN, http, null);
-
-            log.info("Login successful for email: {}", req.getEmail());
-            return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<LoginResponse>> login(@Valid @RequestBody LoginRequest req,
+                                                                  HttpServletRequest http) {
+        // Antes de cualquier lectura de Firestore o cálculo de BCrypt; el 429 lo responde GlobalExceptionHandler
+        loginRateLimiter.checkLogin(http, req.getEmail());
+        log.info("Login request received for email: {}", req.getEmail());
+        return userService.login(req)
+                .thenApplyAsync(response -> {
+                    // Auditar login exitoso
+                    auditOrFail(response.getUser().getUid(), response.getUser().getUid(), AuditAction.LOGIN, http, null);
+
+                    log.info("Login successful for email: {}", req.getEmail());
+                    return ResponseEntity.ok(response);
+                }, executor)
+                .exceptionallyAsync(error -> loginFailed(req, http, unwrap(error)), executor);
+    }
 
-        } catch (UserProfileService.LoginFailedException e) {
+    private ResponseEntity<LoginResponse> loginFailed(LoginRequest req, HttpServletRequest http, Throwable error) {
+        if (error instanceof UserProfileService.LoginFailedException e) {
             // Auditar login fallido con la razón específica
             log.warn("Login failed for email: {} - Reason: {}", req.getEmail(), e.getReason());
 
@@ -103,26 +151,33 @@ public class UserController {
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(null);
+        }
 
-        } catch (Exception e) {
-            // Error inesperado
-            log.error("Unexpected error during login for email: {}", req.getEmail(), e);
+        if (error instanceof PasswordHashingRejectedException e) {
+            // Nodo saturado: no es un intento fallido, el cliente debe reintentar
+            log.warn("Login rejected for email: {} - {}", req.getEmail(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
 
-            Map<String, Object> meta = Map.of(
-                    "email", req.getEmail(),
-                    "reason", "SYSTEM_ERROR",
-                    "error", e.getClass().getSimpleName()
-            );
+        // Error inesperado
+        log.error("Unexpected error during login for email: {}", req.getEmail(), error);
 
-            try {
-                audit.log(null, null, AuditAction.LOGIN_FAILED, http, meta);
-            } catch (Exception auditException) {
-                log.error("Failed to log audit for failed login attempt", auditException);
-            }
+        Map<String, Object> meta = Map.of(
+                "email", req.getEmail(),
+                "reason", "SYSTEM_ERROR",
+                "error", error.getClass().getSimpleName()
+        );
 
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(null);
+        try {
+            audit.log(null, null, AuditAction.LOGIN_FAILED, http, meta);
+        } catch (Exception auditException) {
+            log.error("Failed to log audit for failed login attempt", auditException);
         }
+
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(null);
     }
 
     // LOGIN CON BIOMETRÍA (público)
@@ -139,22 +194,25 @@ public class UserController {
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @PostMapping("/login/biometric")
-    public ResponseEntity<LoginResponse> loginWithBiometric(@RequestParam String uid,
-                                                            HttpServletRequest http) {
-        try {
-            log.info("Biometric login request received for user: {}", uid);
-            LoginResponse response = userService.loginWithBiometric(uid);
-
-            // Si no requiere TOTP, auditar login exitoso
-            if (!response.isTotpRequired()) {
-                audit.log(uid, uid, AuditAction.LOGIN, http,
-                        Map.of("method", "biometric"));
-            }
-
-            log.info("Biometric login successful for user: {}", uid);
-            return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<LoginResponse>> loginWithBiometric(@RequestParam String uid,
+                                                                               HttpServletRequest http) {
+        log.info("Biometric login request received for user: {}", uid);
+        return userService.loginWithBiometric(uid)
+                .thenApplyAsync(response -> {
+                    // Si no requiere TOTP, auditar login exitoso
+                    if (!response.isTotpRequired()) {
+                        auditOrFail(uid, uid, AuditAction.LOGIN, http,
+                                Map.of("method", "biometric"));
+                    }
+
+                    log.info("Biometric login successful for user: {}", uid);
+                    return ResponseEntity.ok(response);
+                }, executor)
+                .exceptionallyAsync(error -> biometricLoginFailed(uid, http, unwrap(error)), executor);
+    }
 
-        } catch (UserProfileService.LoginFailedException e) {
+    private ResponseEntity<LoginResponse> biometricLoginFailed(String uid, HttpServletRequest http, Throwable error) {
+        if (error instanceof UserProfileService.LoginFailedException e) {
             log.warn("Biometric login failed for user: {} - Reason: {}", uid, e.getReason());
 
             Map<String, Object> meta = Map.of(
@@ -171,45 +229,70 @@ public class UserController {
             }
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
+        }
 
-        } catch (Exception e) {
-            log.error("Unexpected error during biometric login for user: {}", uid, e);
-
-            Map<String, Object> meta = Map.of(
-                    "uid", uid,
-                    "method", "biometric",
-                    "reason", "SYSTEM_ERROR",
-                    "error", e.getClass().getSimpleName()
-            );
+        log.error("Unexpected error during biometric login for user: {}", uid, error);
 
-            try {
-                audit.log(uid, uid, AuditAction.LOGIN_FAILED, http, meta);
-            } catch (Exception auditException) {
-                log.error("Failed to log audit for failed biometric login", auditException);
-            }
+        Map<String, Object> meta = Map.of(
+                "uid", uid,
+                "method", "biometric",
+                "reason", "SYSTEM_ERROR",
+                "error", error.getClass().getSimpleName()
+        );
 
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        try {
+            audit.log(uid, uid, AuditAction.LOGIN_FAILED, http, meta);
+        } catch (Exception auditException) {
+            log.error("Failed to log audit for failed biometric login", auditException);
         }
+
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
     }
 
     // LIST ALL USERS (solo ADMIN)
     @Operation(
             summary = "Listar usuarios",
-            description = "Devuelve todos los usuarios registrados. Requiere rol ADMIN."
+            description = "Sin pageSize devuelve todos los usuarios como un array JSON que se escribe a medida que " +
+                    "llegan de Firestore. Con pageSize devuelve una pagina y nextPageToken para pedir la " +
+                    "siguiente con pageToken. Requiere rol ADMIN."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Listado de usuarios", content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserProfileDto.class)))),
+            @ApiResponse(responseCode = "400", description = "pageToken invalido"),
+            @ApiResponse(responseCode = "401", description = "Token invalido"),
+            @ApiResponse(responseCode = "403", description = "Permisos insuficientes"),
+            @ApiResponse(responseCode = "500", description = "Error interno")
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(params = "!pageSize")
+    public ResponseEntity<StreamingResponseBody> listUsers(
+            @Parameter(description = "Requiere pageSize") @RequestParam(required = false) String pageToken,
+            Authentication auth) {
+        requireNoPageToken(pageToken);
+        log.debug("Admin streaming all users");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(userService::streamUsers);
+    }
+
+    @Operation(summary = "Listar usuarios por paginas", description = "Requiere rol ADMIN.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Pagina de usuarios", content = @Content(schema = @Schema(implementation = UserPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "pageToken invalido"),
             @ApiResponse(responseCode = "401", description = "Token invalido"),
             @ApiResponse(responseCode = "403", description = "Permisos insuficientes"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
-    @GetMapping
-    public ResponseEntity<List<UserProfileDto>> listUsers(Authentication auth) throws Exception {
-        log.debug("Admin listing all users");
-        List<UserProfileDto> users = userService.listAll();
-        return ResponseEntity.ok(users);
+    @GetMapping(params = "pageSize")
+    public CompletableFuture<ResponseEntity<UserPageResponse<UserProfileDto>>> listUsersPage(
+            @Parameter(description = "Usuarios por pagina (maximo users.listing.max-page-size)") @RequestParam int pageSize,
+            @Parameter(description = "nextPageToken de la pagina anterior") @RequestParam(required = false) String pageToken,
+            Authentication auth) {
+        log.debug("Admin listing users page (size {})", pageSize);
+        return userService.listUsers(pageSize, pageToken).thenApply(ResponseEntity::ok);
     }
 
     // GET USER BY ID (solo ADMIN)
@@ -230,10 +313,9 @@ public class UserController {
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/{uid}")
-    public ResponseEntity<UserProfileDto> getUserById(@PathVariable String uid, Authentication auth) throws Exception {
+    public CompletableFuture<ResponseEntity<UserProfileDto>> getUserById(@PathVariable String uid, Authentication auth) {
         log.debug("Admin fetching user by ID: {}", uid);
-        UserProfileDto user = userService.getById(uid);
-        return ResponseEntity.ok(user);
+        return userService.getById(uid).thenApply(ResponseEntity::ok);
     }
 
     // CREDENTIALS_UPDATED (solo ADMIN)
@@ -250,22 +332,23 @@ public class UserController {
             @ApiResponse(responseCode = "401", description = "Token invalido"),
             @ApiResponse(responseCode = "403", description = "Permisos insuficientes"),
             @ApiResponse(responseCode = "404", description = "Usuario no encontrado"),
-            @ApiResponse(responseCode = "500", description = "Error interno")
+            @ApiResponse(responseCode = "500", description = "Error interno"),
+            @ApiResponse(responseCode = "503", description = "Hashing de contrasenas saturado, reintentar tras Retry-After")
     })
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
     @PutMapping("/{uid}/credentials")
-    public ResponseEntity<Void> updateCredentials(@PathVariable String uid,
-                                                  @RequestBody UpdateCredentialsRequest body,
-                                                  HttpServletRequest http,
-                                                  Authentication auth) throws Exception {
+    public CompletableFuture<ResponseEntity<Void>> updateCredentials(@PathVariable String uid,
+                                                                     @RequestBody UpdateCredentialsRequest body,
+                                                                     HttpServletRequest http,
+                                                                     Authentication auth) {
         log.info("Admin updating credentials for user: {}", uid);
-        userService.updateCredentials(uid, body.getNewEmail(), body.getNewPassword());
-
-        var meta = new java.util.HashMap<String,Object>();
-        if (body.getNewEmail() != null) meta.put("newEmail", body.getNewEmail());
-        audit.log(uid, principalUid(auth), AuditAction.CREDENTIALS_UPDATED, http, meta);
-        return ResponseEntity.ok().build();
+        return userService.updateCredentials(uid, body.getNewEmail(), body.getNewPassword()).thenApplyAsync(updated -> {
+            var meta = new java.util.HashMap<String,Object>();
+            if (body.getNewEmail() != null) meta.put("newEmail", body.getNewEmail());
+            auditOrFail(uid, principalUid(auth), AuditAction.CREDENTIALS_UPDATED, http, meta);
+            return ResponseEntity.ok().<Void>build();
+        }, executor);
     }
 
     // BLOCK / UNBLOCK (solo ADMIN)
@@ -287,15 +370,16 @@ public class UserController {
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
     @PutMapping("/{uid}/block")
-    public ResponseEntity<Void> block(@PathVariable String uid,
-                                      @Valid @RequestBody BlockRequest body,
-                                      HttpServletRequest http,
-                                      Authentication auth) throws Exception {
+    public CompletableFuture<ResponseEntity<Void>> block(@PathVariable String uid,
+                                                         @Valid @RequestBody BlockRequest body,
+                                                         HttpServletRequest http,
+                                                         Authentication auth) {
         log.info("Admin {} user: {}", body.getDisabled() ? "blocking" : "unblocking", uid);
-        userService.setDisabled(uid, body.getDisabled());
-        audit.log(uid, principalUid(auth), body.getDisabled() ? AuditAction.USER_BLOCKED : AuditAction.USER_UNBLOCKED,
-                http, null);
-        return ResponseEntity.ok().build();
+        return userService.setDisabled(uid, body.getDisabled()).thenApplyAsync(updated -> {
+            auditOrFail(uid, principalUid(auth), body.getDisabled() ? AuditAction.USER_BLOCKED : AuditAction.USER_UNBLOCKED,
+                    http, null);
+            return ResponseEntity.ok().<Void>build();
+        }, executor);
     }
 
     // DELETE USER (solo ADMIN)
@@ -316,13 +400,14 @@ public class UserController {
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/{uid}")
-    public ResponseEntity<Void> deleteUser(@PathVariable String uid,
-                                           HttpServletRequest http,
-                                           Authentication auth) throws Exception {
+    public CompletableFuture<ResponseEntity<Void>> deleteUser(@PathVariable String uid,
+                                                              HttpServletRequest http,
+                                                              Authentication auth) {
         log.info("Admin deleting user: {}", uid);
-        userService.deleteById(uid);
-        audit.log(uid, principalUid(auth), AuditAction.REGISTER, http, null);
-        return ResponseEntity.ok().build();
+        return userService.deleteById(uid).thenApplyAsync(deleted -> {
+            auditOrFail(uid, principalUid(auth), AuditAction.REGISTER, http, null);
+            return ResponseEntity.ok().<Void>build();
+        }, executor);
     }
 
     // PASSWORD RESET (público) - Placeholder para implementación futura
@@ -351,40 +436,111 @@ public class UserController {
 
     /**
      * Inicia la configuración de TOTP para el usuario autenticado.
-     * Devuelve un QR code para escanear con Google Authenticator
+     * Devuelve la URI otpauth:// y el QR para escanear con Google Authenticator: en línea
+     * ({@code qr=inline}) o como URL para pedirlo aparte ({@code qr=deferred})
      */
     @Operation(
             summary = "Iniciar configuracion TOTP",
-            description = "Genera un secreto y un QR para configurar TOTP. Requiere usuario autenticado."
+            description = "Genera un secreto y la URI otpauth:// para configurar TOTP. Con qr=inline incluye el QR como data URI PNG; " +
+                    "con qr=deferred responde sin dibujarlo y devuelve qrCodeUrl para pedir la imagen. Requiere usuario autenticado."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Secreto generado", content = @Content(schema = @Schema(implementation = TotpSetupResponse.class))),
             @ApiResponse(responseCode = "401", description = "Token invalido"),
-            @ApiResponse(responseCode = "500", description = "Error interno")
+            @ApiResponse(responseCode = "500", description = "Error interno"),
+            @ApiResponse(responseCode = "503", description = "Pool de dibujo de QR saturado (solo qr=inline)")
     })
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/totp/setup")
-    public ResponseEntity<TotpSetupResponse> setupTotp(Authentication authentication,
-                                                       HttpServletRequest http) {
-        try {
-            String uid = authentication.getName();
-            log.info("TOTP setup requested by user: {}", uid);
-
-            Map<String, String> setup = userService.setupTotp(uid);
-
-            TotpSetupResponse response = new TotpSetupResponse(
-                    setup.get("secret"),
-                    setup.get("qrCodeDataUri")
-            );
-
-            audit.log(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
-                    Map.of("action", "totp_setup_initiated"));
+    public CompletableFuture<ResponseEntity<TotpSetupResponse>> setupTotp(Authentication authentication,
+                                                                          @Parameter(description = "inline (por defecto) o deferred")
+                                                                          @RequestParam(defaultValue = "inline") String qr,
+                                                                          HttpServletRequest http) {
+        String uid = authentication.getName();
+        log.info("TOTP setup requested by user: {}", uid);
+
+        return userService.setupTotp(uid).thenCompose(setup -> {
+            String otpauthUri = setup.get("otpauthUri");
+            String setupId = qrRenderer.open(uid, otpauthUri);
+
+            CompletableFuture<String> qrCodeDataUri = CompletableFuture.completedFuture(null);
+            if (!"deferred".equalsIgnoreCase(qr)) {
+                // copy(): el plazo es de esta petición, no de la imagen en caché
+                qrCodeDataUri = qrRenderer.render(setupId, uid, TotpQrRenderer.QrFormat.PNG).copy()
+                        .orTimeout(qrProperties.getInlineTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                        .thenApply(png -> TotpQrRenderer.dataUri(png, TotpQrRenderer.QrFormat.PNG));
+            }
 
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            log.error("Error setting up TOTP", e);
+            return qrCodeDataUri.thenApplyAsync(dataUri -> {
+                TotpSetupResponse response = new TotpSetupResponse(
+                        setup.get("secret"),
+                        otpauthUri,
+                        setupId,
+                        "/users/totp/setup/" + setupId + "/qr",
+                        dataUri
+                );
+
+                auditOrFail(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
+                        Map.of("action", "totp_setup_initiated"));
+
+                return ResponseEntity.ok(response);
+            }, executor);
+        }).exceptionally(error -> {
+            Throwable cause = unwrap(error);
+            if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException) {
+                log.warn("TOTP QR rendering saturated: {}", cause.toString());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+            }
+            log.error("Error setting up TOTP", cause);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        });
+    }
+
+    /**
+     * Imagen del QR de una configuración de TOTP iniciada con {@code POST /users/totp/setup}.
+     * Se dibuja en el pool de QR y el hilo de Tomcat queda libre mientras tanto
+     */
+    @Operation(
+            summary = "QR de la configuracion TOTP",
+            description = "Devuelve el QR de una configuracion TOTP iniciada por el usuario autenticado, en SVG (por defecto) o PNG. " +
+                    "Disponible durante totp.qr.ttl desde el setup."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Imagen del QR", content = {
+                    @Content(mediaType = "image/svg+xml"), @Content(mediaType = "image/png")}),
+            @ApiResponse(responseCode = "400", description = "Formato no soportado"),
+            @ApiResponse(responseCode = "401", description = "Token invalido"),
+            @ApiResponse(responseCode = "404", description = "Configuracion inexistente, expirada o de otro usuario"),
+            @ApiResponse(responseCode = "503", description = "Pool de dibujo de QR saturado")
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    @GetMapping("/totp/setup/{setupId}/qr")
+    public CompletableFuture<ResponseEntity<byte[]>> getTotpQr(@PathVariable String setupId,
+                                                                @Parameter(description = "svg (por defecto) o png")
+                                                                @RequestParam(defaultValue = "svg") String format,
+                                                                Authentication authentication) {
+        TotpQrRenderer.QrFormat qrFormat;
+        try {
+            qrFormat = TotpQrRenderer.QrFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        CompletableFuture<byte[]> image;
+        try {
+            image = qrRenderer.render(setupId, authentication.getName(), qrFormat);
+        } catch (RejectedExecutionException e) {
+            log.warn("TOTP QR rendering saturated for setup: {}", setupId);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1").build());
+        }
+        if (image == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
         }
+        // El QR contiene el secreto: no debe quedar en cachés intermedias
+        return image.thenApply(bytes -> ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(qrFormat.mimeType()))
+                .cacheControl(CacheControl.noStore())
+                .body(bytes));
     }
 
     /**
@@ -402,36 +558,35 @@ public class UserController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/totp/verify")
-    public ResponseEntity<Map<String, Object>> verifyAndEnableTotp(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> verifyAndEnableTotp(
             @Valid @RequestBody TotpVerifyRequest req,
             Authentication authentication,
             HttpServletRequest http) {
-        try {
-            String uid = authentication.getName();
-            log.info("TOTP verification requested by user: {}", uid);
-
-            boolean success = userService.verifyAndEnableTotp(uid, req.getCode());
+        String uid = authentication.getName();
+        log.info("TOTP verification requested by user: {}", uid);
 
+        return userService.verifyAndEnableTotp(uid, req.getCode()).thenApplyAsync(success -> {
             if (success) {
-                audit.log(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
+                auditOrFail(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
                         Map.of("action", "totp_enabled"));
-                return ResponseEntity.ok(Map.of(
+                return ResponseEntity.ok(Map.<String, Object>of(
                         "success", true,
                         "message", "TOTP enabled successfully"
                 ));
             } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.<String, Object>of(
                         "success", false,
                         "message", "Invalid TOTP code"
                 ));
             }
-        } catch (Exception e) {
-            log.error("Error verifying TOTP", e);
+        }, executor).exceptionally(error -> {
+            Throwable cause = unwrap(error);
+            log.error("Error verifying TOTP", cause);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "success", false,
-                    "message", e.getMessage()
+                    "message", String.valueOf(cause.getMessage())
             ));
-        }
+        });
     }
 
     /**
@@ -449,36 +604,35 @@ public class UserController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @PostMapping("/totp/disable")
-    public ResponseEntity<Map<String, Object>> disableTotp(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> disableTotp(
             @Valid @RequestBody TotpVerifyRequest req,
             Authentication authentication,
             HttpServletRequest http) {
-        try {
-            String uid = authentication.getName();
-            log.info("TOTP disable requested by user: {}", uid);
-
-            boolean success = userService.disableTotp(uid, req.getCode());
+        String uid = authentication.getName();
+        log.info("TOTP disable requested by user: {}", uid);
 
+        return userService.disableTotp(uid, req.getCode()).thenApplyAsync(success -> {
             if (success) {
-                audit.log(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
+                auditOrFail(uid, uid, AuditAction.CREDENTIALS_UPDATED, http,
                         Map.of("action", "totp_disabled"));
-                return ResponseEntity.ok(Map.of(
+                return ResponseEntity.ok(Map.<String, Object>of(
                         "success", true,
                         "message", "TOTP disabled successfully"
                 ));
             } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.<String, Object>of(
                         "success", false,
                         "message", "Invalid TOTP code"
                 ));
             }
-        } catch (Exception e) {
-            log.error("Error disabling TOTP", e);
+        }, executor).exceptionally(error -> {
+            Throwable cause = unwrap(error);
+            log.error("Error disabling TOTP", cause);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
                     "success", false,
-                    "message", e.getMessage()
+                    "message", String.valueOf(cause.getMessage())
             ));
-        }
+        });
     }
 
     /**
@@ -487,42 +641,45 @@ public class UserController {
      */
     @Operation(
             summary = "Completar login con TOTP",
-            description = "Valida el codigo TOTP durante la segunda etapa del login.",
+            description = "Valida el codigo TOTP durante la segunda etapa del login. La sesion temporal expira a los pocos minutos " +
+                    "y sirve para un solo intento: si el codigo es incorrecto hay que repetir el login.",
             parameters = {
-                    @Parameter(name = "uid", description = "Identificador de sesion temporal", required = true)
+                    @Parameter(name = "uid", description = "tempSessionId devuelto por el login", required = true)
             }
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Login completado", content = @Content(schema = @Schema(implementation = LoginResponse.class))),
             @ApiResponse(responseCode = "401", description = "Codigo TOTP invalido"),
+            @ApiResponse(responseCode = "429", description = "Demasiados intentos desde la IP, reintentar tras Retry-After"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @PostMapping("/login/totp")
     public ResponseEntity<LoginResponse> loginWithTotp(@Valid @RequestBody TotpVerifyRequest req,
                                                        @RequestParam String uid,
                                                        HttpServletRequest http) {
+        // "uid" es el tempSessionId: no se registra en logs porque identifica la sesión pendiente
+        loginRateLimiter.checkIp(http);
         try {
-            log.info("TOTP login verification for user: {}", uid);
-
             LoginResponse response = userService.loginWithTotp(uid, req.getCode());
+            String userId = response.getUser().getUid();
 
-            audit.log(uid, uid, AuditAction.LOGIN, http,
+            audit.log(userId, userId, AuditAction.LOGIN, http,
                     Map.of("method", "totp"));
 
-            log.info("Login with TOTP successful for user: {}", uid);
+            log.info("Login with TOTP successful for user: {}", userId);
             return ResponseEntity.ok(response);
 
         } catch (UserProfileService.LoginFailedException e) {
-            log.warn("TOTP login failed for user: {} - Reason: {}", uid, e.getReason());
+            String userId = e.getUid();
+            log.warn("TOTP login failed for user: {} - Reason: {}", userId, e.getReason());
 
-            Map<String, Object> meta = Map.of(
-                    "uid", uid,
-                    "reason", e.getReason(),
-                    "message", e.getMessage()
-            );
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("uid", userId);
+            meta.put("reason", e.getReason());
+            meta.put("message", e.getMessage());
 
             try {
-                audit.log(uid, uid, AuditAction.LOGIN_FAILED, http, meta);
+                audit.log(userId, userId, AuditAction.LOGIN_FAILED, http, meta);
             } catch (Exception auditException) {
                 log.error("Failed to log audit for failed TOTP login", auditException);
             }
@@ -530,7 +687,7 @@ public class UserController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
 
         } catch (Exception e) {
-            log.error("Unexpected error during TOTP login for user: {}", uid, e);
+            log.error("Unexpected error during TOTP login", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
@@ -549,15 +706,14 @@ public class UserController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/totp/status")
-    public ResponseEntity<Map<String, Boolean>> getTotpStatus(Authentication authentication) {
-        try {
-            String uid = authentication.getName();
-            boolean enabled = userService.getTotpEnabled(uid);
-            return ResponseEntity.ok(Map.of("totpEnabled", enabled));
-        } catch (Exception e) {
-            log.error("Error getting TOTP status", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public CompletableFuture<ResponseEntity<Map<String, Boolean>>> getTotpStatus(Authentication authentication) {
+        String uid = authentication.getName();
+        return userService.getTotpEnabled(uid)
+                .thenApply(enabled -> ResponseEntity.ok(Map.of("totpEnabled", enabled)))
+                .exceptionally(error -> {
+                    log.error("Error getting TOTP status", unwrap(error));
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+                });
     }
 
     // ==================== ENDPOINTS BIOMETRÍA ====================
@@ -581,10 +737,10 @@ public class UserController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @PutMapping("/biometric")
-    public ResponseEntity<Void> updateBiometric(@RequestBody BiometricPreferenceDto dto, Authentication authentication) throws Exception {
+    public CompletableFuture<ResponseEntity<Void>> updateBiometric(@RequestBody BiometricPreferenceDto dto, Authentication authentication) {
         String uid = authentication.getName();
-        userService.updateBiometricPreference(uid, dto.enabled);
-        return ResponseEntity.ok().build();
+        return userService.updateBiometricPreference(uid, dto.enabled)
+                .thenApply(updated -> ResponseEntity.ok().<Void>build());
     }
 
     // ENDPOINT: Consultar preferencia biométrica (usuario autenticado o admin)
@@ -604,44 +760,102 @@ public class UserController {
     })
     @SecurityRequirement(name = "bearerAuth")
     @GetMapping("/{uid}/biometric")
-    public ResponseEntity<BiometricPreferenceDto> getBiometric(@PathVariable String uid, Authentication authentication) throws Exception {
+    public CompletableFuture<ResponseEntity<BiometricPreferenceDto>> getBiometric(@PathVariable String uid, Authentication authentication) {
         // Permitir solo al propio usuario o admin
         boolean isAdmin = authentication.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"));
         if (!isAdmin && !authentication.getName().equals(uid)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
         }
-        boolean enabled = userService.getBiometricPreference(uid);
-        return ResponseEntity.ok(new BiometricPreferenceDto(enabled));
+        return userService.getBiometricPreference(uid)
+                .thenApply(enabled -> ResponseEntity.ok(new BiometricPreferenceDto(enabled)));
     }
 
     // ENDPOINT: Listar estado biométrico de todos los usuarios (solo admin)
     @Operation(
             summary = "Listar estado biometrico de usuarios",
-            description = "Devuelve el estado de autenticacion biometrica de todos los usuarios. Requiere rol ADMIN."
+            description = "Devuelve el estado de autenticacion biometrica de todos los usuarios, con los mismos " +
+                    "modos que GET /users: array JSON escrito en streaming o paginas con pageSize y pageToken. " +
+                    "Requiere rol ADMIN."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Estados obtenidos", content = @Content(array = @ArraySchema(schema = @Schema(implementation = Map.class)))),
+            @ApiResponse(responseCode = "400", description = "pageToken invalido"),
             @ApiResponse(responseCode = "401", description = "Token invalido"),
             @ApiResponse(responseCode = "403", description = "Permisos insuficientes"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @SecurityRequirement(name = "bearerAuth")
     @PreAuthorize("hasRole('ADMIN')")
-    @GetMapping("/biometric-status")
-    public ResponseEntity<List<Map<String, Object>>> getAllBiometricStatus() throws Exception {
-        return ResponseEntity.ok(userService.getAllUsersBiometricStatus());
+    @GetMapping(path = "/biometric-status", params = "!pageSize")
+    public ResponseEntity<StreamingResponseBody> getAllBiometricStatus(
+            @Parameter(description = "Requiere pageSize") @RequestParam(required = false) String pageToken) {
+        requireNoPageToken(pageToken);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(userService::streamBiometricStatus);
+    }
+
+    @Operation(summary = "Listar estado biometrico de usuarios por paginas", description = "Requiere rol ADMIN.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Pagina de estados", content = @Content(schema = @Schema(implementation = UserPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "pageToken invalido"),
+            @ApiResponse(responseCode = "401", description = "Token invalido"),
+            @ApiResponse(responseCode = "403", description = "Permisos insuficientes"),
+            @ApiResponse(responseCode = "500", description = "Error interno")
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/biometric-status", params = "pageSize")
+    public CompletableFuture<ResponseEntity<UserPageResponse<Map<String, Object>>>> getBiometricStatusPage(
+            @Parameter(description = "Usuarios por pagina (maximo users.listing.max-page-size)") @RequestParam int pageSize,
+            @Parameter(description = "nextPageToken de la pagina anterior") @RequestParam(required = false) String pageToken) {
+        return userService.listBiometricStatus(pageSize, pageToken).thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * El modo streaming no tiene páginas: un {@code pageToken} sin {@code pageSize} es un error del
+     * cliente, no una petición de todo el listado.
+     */
+    private static void requireNoPageToken(String pageToken) {
+        if (pageToken != null) {
+            throw new IllegalArgumentException("pageToken requires pageSize");
+        }
     }
 
     private String principalUid(Authentication auth) {
         return (auth != null && auth.getPrincipal() != null) ? auth.getPrincipal().toString() : null;
     }
 
+    /**
+     * Audita desde un callback del futuro, ya en {@link #executor}; si la auditoría falla, la petición falla como cuando
+     * se llamaba directamente desde el controlador.
+     */
+    private void auditOrFail(String uid, String actorUid, AuditAction action,
+                             HttpServletRequest http, Map<String, Object> meta) {
+        try {
+            audit.log(uid, actorUid, action, http, meta);
+        } catch (AuditClientException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Excepción original de un futuro fallido, sin los {@link CompletionException} que la envuelven.
+     */
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
     @Operation(
-            summary = "Registrar logout",
-            description = "Loguea manualmente el evento de cierre de sesion en el servicio de auditoria."
+            summary = "Logout",
+            description = "Revoca el JWT usado en la peticion hasta su expiracion y registra el cierre de sesion en el servicio de auditoria."
     )
     @ApiResponses({
-            @ApiResponse(responseCode = "200", description = "Evento registrado", content = @Content(schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "200", description = "Token revocado y evento registrado", content = @Content(schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "401", description = "Sin usuario autenticado"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @PostMapping("/audit/logout")
@@ -656,6 +870,11 @@ public class UserController {
                         .body(Map.of("message", "No authenticated user to logout"));
             }
 
+            // Revocar el token antes de auditar: un fallo de auditoría no debe dejarlo válido
+            if (auth.getDetails() instanceof VerifiedToken token && !tokenDenylist.revoke(token)) {
+                log.warn("Token for user {} could not be revoked (no jti or denylist full); it stays valid until it expires", userId);
+            }
+
             log.info("User logout: {}", userId);
             audit.log(userId, userId, AuditAction.LOGOUT, http, null);
             return ResponseEntity.ok(Map.of("message", "Logout successful"));
@@ -677,12 +896,14 @@ public class UserController {
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Evento registrado", content = @Content(schema = @Schema(implementation = Map.class))),
+            @ApiResponse(responseCode = "429", description = "Demasiados intentos desde la IP, reintentar tras Retry-After"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     @PostMapping("/audit/login-failed")
     public ResponseEntity<Map<String, String>> auditLoginFailed(@RequestParam String email,
                                                                 @RequestParam String reason,
                                                                 HttpServletRequest http) {
+        loginRateLimiter.checkIp(http);
         try {
             log.warn("Manual login failed audit for email: {} - Reason: {}", email, reason);
             Map<String, Object> meta = Map.of("email", email, "reason", reason);
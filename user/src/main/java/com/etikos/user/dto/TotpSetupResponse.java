@@ -1,11 +1,18 @@
 package com.etikos.user.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 /**
  * Respuesta al iniciar la configuración de TOTP
- * Contiene el QR code y el secreto manual para configurar Google Authenticator
+ * Contiene el secreto manual, la URI otpauth:// y el QR (en línea o por URL) para configurar
+ * Google Authenticator
  */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class TotpSetupResponse {
     private String secret;
+    private String otpauthUri;
+    private String setupId;
+    private String qrCodeUrl;
     private String qrCodeDataUri;
 
     public TotpSetupResponse() {}
@@ -15,6 +22,14 @@ public class TotpSetupResponse {
         this.qrCodeDataUri = qrCodeDataUri;
     }
 
+    public TotpSetupResponse(String secret, String otpauthUri, String setupId, String qrCodeUrl, String qrCodeDataUri) {
+        this.secret = secret;
+        this.otpauthUri = otpauthUri;
+        this.setupId = setupId;
+        this.qrCodeUrl = qrCodeUrl;
+        this.qrCodeDataUri = qrCodeDataUri;
+    }
+
     public String getSecret() {
         return secret;
     }
@@ -23,6 +38,30 @@ public class TotpSetupResponse {
         this.secret = secret;
     }
 
+    public String getOtpauthUri() {
+        return otpauthUri;
+    }
+
+    public void setOtpauthUri(String otpauthUri) {
+        this.otpauthUri = otpauthUri;
+    }
+
+    public String getSetupId() {
+        return setupId;
+    }
+
+    public void setSetupId(String setupId) {
+        this.setupId = setupId;
+    }
+
+    public String getQrCodeUrl() {
+        return qrCodeUrl;
+    }
+
+    public void setQrCodeUrl(String qrCodeUrl) {
+        this.qrCodeUrl = qrCodeUrl;
+    }
+
     public String getQrCodeDataUri() {
         return qrCodeDataUri;
     }
@@ -31,4 +70,3 @@ public class TotpSetupResponse {
         this.qrCodeDataUri = qrCodeDataUri;
     }
 }
-
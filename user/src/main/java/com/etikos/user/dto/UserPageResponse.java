@@ -0,0 +1,37 @@
+package com.etikos.user.dto;
+
+import java.util.List;
+
+/**
+ * Página de un listado de usuarios. {@code nextPageToken} es opaco y se envía tal cual como
+ * {@code pageToken} para pedir la página siguiente; es {@code null} en la última.
+ */
+public class UserPageResponse<T> {
+
+    private List<T> items;
+    private String nextPageToken;
+
+    public UserPageResponse() {
+    }
+
+    public UserPageResponse(List<T> items, String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+}
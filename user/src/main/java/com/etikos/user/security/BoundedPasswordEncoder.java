@@ -0,0 +1,203 @@
+package com.etikos.user.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * {@link PasswordEncoder} que ejecuta el encoder real (BCrypt) en un pool propio y acotado, para que
+ * una ráfaga de logins no ocupe todos los hilos de Tomcat calculando hashes.
+ * <p>
+ * El pool tiene {@code security.password-hashing.threads} hilos y una cola de
+ * {@code queue-capacity}. Si la cola está llena, o el hash no termina en {@code max-wait}, se lanza
+ * {@link PasswordHashingRejectedException} (503) sin esperar más. Publica
+ * {@code password.hashing.queue}, {@code password.hashing.active}, {@code password.hashing.wait},
+ * {@code password.hashing.duration} (etiqueta {@code operation}) y {@code password.hashing.rejected}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor pool;
+    private final long maxWaitNanos;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, PasswordHashingProperties properties,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxWaitNanos = properties.getMaxWait().toNanos();
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, properties.getThreads());
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.getQueueCapacity())),
+                task -> {
+                    Thread thread = new Thread(task, "password-hashing-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("password.hashing.duration")
+                .tag("operation", "encode")
+                .description("Tiempo de cálculo de un hash de contraseña")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hashing.duration")
+                .tag("operation", "matches")
+                .description("Tiempo de cálculo de un hash de contraseña")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("password.hashing.wait")
+                .description("Tiempo en cola antes de calcular el hash")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("password.hashing.rejected")
+                .description("Hashes rechazados por cola llena o espera agotada")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue", pool, p -> p.getQueue().size())
+                .description("Hashes de contraseña en espera")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Hashes de contraseña en cálculo")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * {@link #encode} sin bloquear al llamador: el futuro termina en el hilo de hashing, o falla con
+     * {@link PasswordHashingRejectedException} si la cola está llena o no termina en {@code max-wait}.
+     */
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword), true);
+    }
+
+    /**
+     * {@link #matches} sin bloquear al llamador, con los mismos rechazos que {@link #encodeAsync}.
+     */
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword), true);
+    }
+
+    /**
+     * {@link #encode} sin esperar el resultado, para trabajo que no debe retrasar la respuesta
+     * (rehash tras el login). Si el pool está saturado el futuro falla con
+     * {@link PasswordHashingRejectedException}; no cuenta como rechazo de una petición.
+     */
+    public CompletableFuture<String> encodeInBackground(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword), false);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // Sólo inspecciona el prefijo del hash: no necesita el pool
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Timer timer, Supplier<T> hashing) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                long started = System.nanoTime();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    return hashing.get();
+                } finally {
+                    timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Password hashing is saturated, try again later");
+        }
+        try {
+            return future.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Si todavía estaba en cola ya no se calcula
+            future.cancel(false);
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Password hashing is saturated, try again later");
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException("Interrupted while waiting for password hashing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param request si es trabajo de una petición: se acota a {@code max-wait} y sus rechazos cuentan
+     */
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> hashing, boolean request) {
+        long submitted = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            // Si el futuro ya expiró cuando le llega el turno, supplyAsync no ejecuta el hash
+            future = CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    return hashing.get();
+                } finally {
+                    timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            if (request) {
+                rejected.increment();
+            }
+            return CompletableFuture.failedFuture(
+                    new PasswordHashingRejectedException("Password hashing is saturated, try again later"));
+        }
+        if (!request) {
+            return future;
+        }
+        return future.orTimeout(maxWaitNanos, TimeUnit.NANOSECONDS).handle((value, error) -> {
+            if (error == null) {
+                return value;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                rejected.increment();
+                throw new PasswordHashingRejectedException("Password hashing is saturated, try again later");
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(cause);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+}
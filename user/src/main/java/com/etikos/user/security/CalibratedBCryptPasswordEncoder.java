@@ -0,0 +1,105 @@
+package com.etikos.user.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt con el coste elegido para este nodo.
+ * <p>
+ * {@link #calibrate(PasswordHashingProperties)} mide el nodo al arrancar y elige el mayor coste cuyo
+ * hash tarda como mucho {@code target-latency}, entre {@code min-strength} y {@code max-strength}
+ * (o usa {@code strength} si está fijado). {@link #upgradeEncoding(String)} marca para rehash los
+ * hashes con un coste menor. Con réplicas en hardware distinto cada una calibra un coste propio, y si
+ * también se rebajaran los hashes de coste mayor dos réplicas se los rehashearían la una a la otra en
+ * cada login; por eso sólo se baja el coste de los hashes cuando {@code strength} está fijado, que es
+ * el mismo en todas.
+ */
+class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(CalibratedBCryptPasswordEncoder.class);
+    private static final String SAMPLE_PASSWORD = "calibration-Password-123";
+
+    private final int strength;
+    private final boolean rehashDown;
+
+    /**
+     * @param rehashDown también rehacer los hashes de coste mayor que {@code strength}
+     */
+    CalibratedBCryptPasswordEncoder(int strength, boolean rehashDown) {
+        super(strength);
+        this.strength = strength;
+        this.rehashDown = rehashDown;
+    }
+
+    static CalibratedBCryptPasswordEncoder calibrate(PasswordHashingProperties properties) {
+        if (properties.getStrength() != null) {
+            log.info("BCrypt strength fijado por configuración: {}", properties.getStrength());
+            return new CalibratedBCryptPasswordEncoder(properties.getStrength(), true);
+        }
+        long budget = properties.getTargetLatency().toNanos();
+        int min = properties.getMinStrength();
+        int max = Math.max(min, properties.getMaxStrength());
+
+        // Calentamiento para no medir la compilación JIT
+        measure(4);
+        int chosen = min;
+        long chosenNanos = 0;
+        for (int cost = min; cost <= max; cost++) {
+            long nanos = measure(cost);
+            if (nanos > budget && cost > min) {
+                break;
+            }
+            chosen = cost;
+            chosenNanos = nanos;
+            // Cada punto de coste duplica el tiempo: si el siguiente no cabe, no se mide
+            if (nanos * 2 > budget) {
+                break;
+            }
+        }
+        if (chosenNanos > budget) {
+            log.warn("BCrypt strength {} tarda {} ms, más que el objetivo de {} ms; se usa el mínimo",
+                    chosen, chosenNanos / 1_000_000, budget / 1_000_000);
+        } else {
+            log.info("BCrypt strength calibrado: {} ({} ms por hash, objetivo {} ms)",
+                    chosen, chosenNanos / 1_000_000, budget / 1_000_000);
+        }
+        return new CalibratedBCryptPasswordEncoder(chosen, false);
+    }
+
+    /**
+     * Mejor de dos hashes, en nanosegundos.
+     */
+    private static long measure(int cost) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(cost));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int cost = cost(encodedPassword);
+        return cost > 0 && (cost < strength || rehashDown && cost > strength);
+    }
+
+    /**
+     * Coste de un hash {@code $2a$NN$...}, o {@code -1} si no tiene ese formato.
+     */
+    static int cost(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$'
+                || encodedPassword.charAt(3) != '$' || encodedPassword.charAt(6) != '$') {
+            return -1;
+        }
+        char tens = encodedPassword.charAt(4);
+        char units = encodedPassword.charAt(5);
+        if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+}
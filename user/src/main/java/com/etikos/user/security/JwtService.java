@@ -1,49 +1,45 @@
 package com.etikos.user.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Function;
 
 @Service
 public class JwtService {
 
-    @Value("${jwt.secret}")
-    private String secret;
-
-    @Value("${jwt.expiration}")
-    private Long expiration;
-
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    private final Long expiration;
+
+    // La clave HMAC y el parser no dependen del token: se construyen una sola vez
+    private final Key signingKey;
+    private final JwtParser parser;
+    private final JwtTokenIssuer issuer;
+
+    public JwtService(@Value("${jwt.secret}") String secret,
+                      @Value("${jwt.expiration}") Long expiration) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.issuer = new JwtTokenIssuer(signingKey);
     }
 
+    /**
+     * Emite un HS256 con {@code role}, {@code userId}, {@code sub}, {@code iat}, {@code exp} y un
+     * {@code jti} aleatorio que permite revocarlo (ver {@link TokenDenylist}).
+     * Los bytes son los mismos que produciría {@code Jwts.builder()}; ver {@link JwtTokenIssuer}.
+     */
     public String generateToken(String username, String role, String userId) {
-        Map<String, Object> claims = new HashMap<>();
-        claims.put("role", role);
-        claims.put("userId", userId);
-        return createToken(claims, username);
-    }
-
-    private String createToken(Map<String, Object> claims, String subject) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + expiration);
-
-        return Jwts.builder()
-                .setClaims(claims)
-                .setSubject(subject)
-                .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
-                .compact();
+        long now = System.currentTimeMillis();
+        return issuer.issue(username, role, userId, now, now + expiration);
     }
 
     public String extractUsername(String token) {
@@ -67,12 +63,26 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
+    /**
+     * Verifica firma y expiración una sola vez y devuelve los claims que usa la aplicación.
+     *
+     * @throws io.jsonwebtoken.JwtException si el token no es válido o ha expirado
+     */
+    public VerifiedToken verify(String token) {
+        Claims claims = extractAllClaims(token);
+        if (claims.getExpiration() == null) {
+            throw new MalformedJwtException("JWT sin claim exp");
+        }
+        return new VerifiedToken(
+                claims.getSubject(),
+                claims.get("role", String.class),
+                claims.get("userId", String.class),
+                claims.getExpiration().toInstant(),
+                TokenId.parse(claims.getId()));
+    }
+
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
     private Boolean isTokenExpired(String token) {
@@ -1,5 +1,6 @@
 package com.etikos.user.security;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,10 +17,12 @@ import java.util.Collections;
 @Component
 public class JwtTokenFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
+    private final VerifiedTokenCache tokenCache;
+    private final TokenDenylist denylist;
 
-    public JwtTokenFilter(JwtService jwtService) {
-        this.jwtService = jwtService;
+    public JwtTokenFilter(VerifiedTokenCache tokenCache, TokenDenylist denylist) {
+        this.tokenCache = tokenCache;
+        this.denylist = denylist;
     }
 
     @Override
@@ -33,24 +36,29 @@ public class JwtTokenFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
 
             try {
-                if (jwtService.validateToken(token)) {
-                    String username = jwtService.extractUsername(token);
-                    String role = jwtService.extractRole(token);
-                    String userId = jwtService.extractUserId(token);
+                // Firma y expiración se verifican una vez por token, no una vez por claim
+                VerifiedToken verified = tokenCache.verify(token);
 
+                // Token revocado por logout: continuar sin autenticación
+                if (!denylist.isRevoked(verified)) {
                     // Crear authorities con el rol
-                    SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + role);
+                    SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + verified.role());
 
                     // Crear authentication con userId como principal
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(
-                                    userId, // principal es el userId (String)
+                                    verified.userId(), // principal es el userId (String)
                                     null,
                                     Collections.singletonList(authority)
                             );
+                    // El logout necesita el jti y la expiración del token
+                    authentication.setDetails(verified);
 
                     SecurityContextHolder.getContext().setAuthentication(authentication);
                 }
+            } catch (JwtException | IllegalArgumentException e) {
+                // Token inválido o expirado, continuar sin autenticación
+                logger.debug("Rejected JWT token: " + e.getMessage());
             } catch (Exception e) {
                 // Token inválido, continuar sin autenticación
                 logger.error("Error validating JWT token: " + e.getMessage());
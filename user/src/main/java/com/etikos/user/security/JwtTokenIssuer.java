@@ -0,0 +1,279 @@
+package com.etikos.user.security;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Emisor HS256 especializado en los claims fijos de la aplicación ({@code role}, {@code userId},
+ * {@code sub}, {@code iat}, {@code exp}, {@code jti}). Genera exactamente los mismos bytes que
+ * {@code Jwts.builder()} con {@code setClaims(role, userId)}, {@code setSubject},
+ * {@code setIssuedAt}, {@code setExpiration} y {@code setId}: mismo orden de claims, mismo
+ * escapado JSON que Jackson, fechas en segundos y los claims nulos omitidos.
+ * <p>
+ * La cabecera se codifica una sola vez; el JSON de los claims, su Base64URL y la firma se
+ * escriben en buffers reutilizados, junto con el {@link Mac}: uno por hilo de plataforma y, con
+ * hilos virtuales, tomados de un {@link ThreadLocalPool}.
+ */
+final class JwtTokenIssuer {
+
+    private static final byte[] HEADER = (Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.US_ASCII)) + ".")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] BASE64URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int SIGNATURE_BYTES = 32;
+
+    private final ThreadLocalPool<Buffers> buffers;
+
+    JwtTokenIssuer(Key signingKey) {
+        // Falla al arrancar, no en el primer login, si la clave no sirve para HmacSHA256
+        newMac(signingKey);
+        this.buffers = new ThreadLocalPool<>(() -> new Buffers(newMac(signingKey)));
+    }
+
+    String issue(String subject, String role, String userId, long issuedAtMillis, long expiresAtMillis) {
+        Buffers b = buffers.acquire();
+        try {
+            return issue(b, subject, role, userId, issuedAtMillis, expiresAtMillis);
+        } finally {
+            buffers.release(b);
+        }
+    }
+
+    private static String issue(Buffers b, String subject, String role, String userId,
+                                long issuedAtMillis, long expiresAtMillis) {
+        // Claims en el orden en que los serializa jjwt
+        b.json.reset();
+        b.json.put((byte) '{');
+        boolean first = true;
+        first = writeString(b.json, "role", role, first);
+        first = writeString(b.json, "userId", userId, first);
+        first = writeString(b.json, "sub", subject, first);
+        first = writeNumber(b.json, "iat", issuedAtMillis / 1000, first);
+        writeNumber(b.json, "exp", expiresAtMillis / 1000, first);
+        writeJti(b.json, b);
+        b.json.put((byte) '}');
+
+        // header.payload.firma
+        ByteSink token = b.token;
+        token.reset();
+        token.put(HEADER, HEADER.length);
+        encodeBase64Url(b.json.bytes, b.json.length, token);
+        int signingInputLength = token.length;
+        token.put((byte) '.');
+
+        b.mac.update(token.bytes, 0, signingInputLength);
+        try {
+            b.mac.doFinal(b.signature, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar el JWT", e);
+        }
+        encodeBase64Url(b.signature, SIGNATURE_BYTES, token);
+
+        return new String(token.bytes, 0, token.length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean writeString(ByteSink json, String name, String value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+        writeName(json, name, first);
+        json.put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeEscaped(json, c);
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escribe cada mitad de un par sustituto como secuencia de escape
+                writeUnicodeEscape(json, c);
+            } else if (c < 0x800) {
+                json.put((byte) (0xC0 | (c >> 6)));
+                json.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                json.put((byte) (0xE0 | (c >> 12)));
+                json.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                json.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        json.put((byte) '"');
+        return false;
+    }
+
+    private static boolean writeNumber(ByteSink json, String name, long value, boolean first) {
+        writeName(json, name, first);
+        json.putLong(value);
+        return false;
+    }
+
+    /**
+     * {@code jti}: {@value TokenId#BYTES} bytes aleatorios en Base64URL, sin pasar por un String.
+     */
+    private static void writeJti(ByteSink json, Buffers b) {
+        writeName(json, "jti", false);
+        json.put((byte) '"');
+        b.random.nextBytes(b.jti);
+        encodeBase64Url(b.jti, TokenId.BYTES, json);
+        json.put((byte) '"');
+    }
+
+    private static void writeName(ByteSink json, String name, boolean first) {
+        if (!first) {
+            json.put((byte) ',');
+        }
+        json.put((byte) '"');
+        json.putAscii(name);
+        json.put((byte) '"');
+        json.put((byte) ':');
+    }
+
+    /**
+     * Escapado ASCII de Jackson por defecto: comillas, barra invertida y caracteres de control.
+     */
+    private static void writeEscaped(ByteSink json, int c) {
+        if (c >= 0x20 && c != '"' && c != '\\') {
+            json.put((byte) c);
+            return;
+        }
+        switch (c) {
+            case '"', '\\' -> {
+                json.put((byte) '\\');
+                json.put((byte) c);
+            }
+            case '\b' -> json.put((byte) '\\', (byte) 'b');
+            case '\t' -> json.put((byte) '\\', (byte) 't');
+            case '\n' -> json.put((byte) '\\', (byte) 'n');
+            case '\f' -> json.put((byte) '\\', (byte) 'f');
+            case '\r' -> json.put((byte) '\\', (byte) 'r');
+            default -> writeUnicodeEscape(json, c);
+        }
+    }
+
+    private static void writeUnicodeEscape(ByteSink json, int c) {
+        json.put((byte) '\\', (byte) 'u');
+        json.put(HEX[(c >> 12) & 0xF], HEX[(c >> 8) & 0xF]);
+        json.put(HEX[(c >> 4) & 0xF], HEX[c & 0xF]);
+    }
+
+    /**
+     * Base64URL sin relleno, escrito directamente en {@code out}.
+     */
+    private static void encodeBase64Url(byte[] src, int length, ByteSink out) {
+        out.ensureCapacity(out.length + (length * 4 + 2) / 3);
+        byte[] dst = out.bytes;
+        int d = out.length;
+        int i = 0;
+        for (int end = length - length % 3; i < end; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            dst[d++] = BASE64URL[bits >>> 18];
+            dst[d++] = BASE64URL[(bits >>> 12) & 0x3F];
+            dst[d++] = BASE64URL[(bits >>> 6) & 0x3F];
+            dst[d++] = BASE64URL[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xFF) << 16;
+            dst[d++] = BASE64URL[bits >>> 18];
+            dst[d++] = BASE64URL[(bits >>> 12) & 0x3F];
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+            dst[d++] = BASE64URL[bits >>> 18];
+            dst[d++] = BASE64URL[(bits >>> 12) & 0x3F];
+            dst[d++] = BASE64URL[(bits >>> 6) & 0x3F];
+        }
+        out.length = d;
+    }
+
+    private static Mac newMac(Key key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Clave JWT no válida para HmacSHA256", e);
+        }
+    }
+
+    private static final class Buffers {
+        private final Mac mac;
+        private final ByteSink json = new ByteSink(256);
+        private final ByteSink token = new ByteSink(512);
+        private final byte[] signature = new byte[SIGNATURE_BYTES];
+        private final byte[] jti = new byte[TokenId.BYTES];
+        private final SecureRandom random = new SecureRandom();
+
+        Buffers(Mac mac) {
+            this.mac = mac;
+        }
+    }
+
+    /**
+     * Buffer de bytes reutilizable que crece si un claim no cabe.
+     */
+    private static final class ByteSink {
+        private byte[] bytes;
+        private int length;
+
+        ByteSink(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        void put(byte b) {
+            ensureCapacity(length + 1);
+            bytes[length++] = b;
+        }
+
+        void put(byte first, byte second) {
+            ensureCapacity(length + 2);
+            bytes[length++] = first;
+            bytes[length++] = second;
+        }
+
+        void put(byte[] src, int count) {
+            ensureCapacity(length + count);
+            System.arraycopy(src, 0, bytes, length, count);
+            length += count;
+        }
+
+        void putAscii(String value) {
+            ensureCapacity(length + value.length());
+            for (int i = 0; i < value.length(); i++) {
+                bytes[length++] = (byte) value.charAt(i);
+            }
+        }
+
+        void putLong(long value) {
+            if (value < 0) {
+                put((byte) '-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            ensureCapacity(length + digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
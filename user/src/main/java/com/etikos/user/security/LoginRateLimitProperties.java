@@ -0,0 +1,87 @@
+package com.etikos.user.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "security.login-rate-limit")
+public class LoginRateLimitProperties {
+
+    /**
+     * Activa la limitación de intentos de login en esta instancia.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Intentos seguidos permitidos desde una misma IP antes de empezar a limitar.
+     */
+    private int ipCapacity = 30;
+
+    /**
+     * Cada cuánto recupera una IP un intento; con {@code 2s}, 30 intentos por minuto sostenidos.
+     */
+    private Duration ipRefillPeriod = Duration.ofSeconds(2);
+
+    /**
+     * Intentos seguidos permitidos para un mismo email, venga de la IP que venga.
+     */
+    private int emailCapacity = 5;
+
+    /**
+     * Cada cuánto recupera un email un intento; con {@code 12s}, 5 intentos por minuto sostenidos.
+     */
+    private Duration emailRefillPeriod = Duration.ofSeconds(12);
+
+    /**
+     * Claves (IPs o emails) con estado en memoria como máximo, por tipo de clave.
+     */
+    private long maxKeys = 100_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getIpCapacity() {
+        return ipCapacity;
+    }
+
+    public void setIpCapacity(int ipCapacity) {
+        this.ipCapacity = ipCapacity;
+    }
+
+    public Duration getIpRefillPeriod() {
+        return ipRefillPeriod;
+    }
+
+    public void setIpRefillPeriod(Duration ipRefillPeriod) {
+        this.ipRefillPeriod = ipRefillPeriod;
+    }
+
+    public int getEmailCapacity() {
+        return emailCapacity;
+    }
+
+    public void setEmailCapacity(int emailCapacity) {
+        this.emailCapacity = emailCapacity;
+    }
+
+    public Duration getEmailRefillPeriod() {
+        return emailRefillPeriod;
+    }
+
+    public void setEmailRefillPeriod(Duration emailRefillPeriod) {
+        this.emailRefillPeriod = emailRefillPeriod;
+    }
+
+    public long getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(long maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+}
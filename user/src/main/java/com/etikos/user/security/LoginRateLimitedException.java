@@ -0,0 +1,21 @@
+package com.etikos.user.security;
+
+/**
+ * Demasiados intentos de login desde la misma IP o para el mismo email.
+ */
+public class LoginRateLimitedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LoginRateLimitedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Segundos hasta que vuelve a haber un intento disponible, para la cabecera {@code Retry-After}.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,99 @@
+package com.etikos.user.security;
+
+import com.etikos.user.store.UserKeyIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limita los intentos de login por IP y por email antes de tocar Firestore o BCrypt.
+ * <p>
+ * La IP es la de la conexión ({@link HttpServletRequest#getRemoteAddr()}), no la primera de
+ * {@code X-Forwarded-For} que registra la auditoría: esa cabecera la puede poner el cliente, y
+ * rotarla le daría un bucket nuevo en cada intento. Detrás de un proxy, Tomcat sustituye la IP de la
+ * conexión por la de {@code X-Forwarded-For} sólo si la petición llega de un proxy de confianza
+ * ({@code server.forward-headers-strategy=native} y {@code server.tomcat.remoteip.internal-proxies}).
+ * El email se normaliza como en el índice de claves ({@link UserKeyIndex#normalizeEmail}). Si se supera el
+ * límite se lanza {@link LoginRateLimitedException}, que responde {@code 429} con
+ * {@code Retry-After}. Publica {@code login.rate_limited} (etiqueta {@code key}) y
+ * {@code login.rate_limit.buckets}.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginRateLimiter.class);
+
+    private final boolean enabled;
+    private final TokenBuckets byIp;
+    private final TokenBuckets byEmail;
+    private final Counter ipLimited;
+    private final Counter emailLimited;
+
+    public LoginRateLimiter(LoginRateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.byIp = new TokenBuckets(properties.getIpCapacity(), properties.getIpRefillPeriod(),
+                properties.getMaxKeys());
+        this.byEmail = new TokenBuckets(properties.getEmailCapacity(), properties.getEmailRefillPeriod(),
+                properties.getMaxKeys());
+        this.ipLimited = Counter.builder("login.rate_limited")
+                .tag("key", "ip")
+                .description("Intentos de login rechazados por exceso de intentos")
+                .register(meterRegistry);
+        this.emailLimited = Counter.builder("login.rate_limited")
+                .tag("key", "email")
+                .description("Intentos de login rechazados por exceso de intentos")
+                .register(meterRegistry);
+        Gauge.builder("login.rate_limit.buckets", this, limiter -> limiter.byIp.size() + limiter.byEmail.size())
+                .description("IPs y emails con intentos recientes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cuenta un intento de login con contraseña: consume de la IP y, si pasa, del email.
+     *
+     * @throws LoginRateLimitedException si alguno de los dos no tiene intentos disponibles
+     */
+    public void checkLogin(HttpServletRequest req, String email) {
+        checkIp(req);
+        String normalized = UserKeyIndex.normalizeEmail(email);
+        if (!enabled || normalized == null) {
+            return;
+        }
+        long wait = byEmail.tryAcquire(normalized);
+        if (wait > 0) {
+            emailLimited.increment();
+            log.debug("Login rate limited for email: {}", normalized);
+            throw new LoginRateLimitedException("Too many login attempts for this account, try again later",
+                    retryAfterSeconds(wait));
+        }
+    }
+
+    /**
+     * Cuenta un intento contra la IP, para los pasos del login que no llevan email.
+     *
+     * @throws LoginRateLimitedException si la IP no tiene intentos disponibles
+     */
+    public void checkIp(HttpServletRequest req) {
+        String ip = req != null ? req.getRemoteAddr() : null;
+        if (!enabled || ip == null) {
+            return;
+        }
+        long wait = byIp.tryAcquire(ip);
+        if (wait > 0) {
+            ipLimited.increment();
+            log.debug("Login rate limited for IP: {}", ip);
+            throw new LoginRateLimitedException("Too many login attempts from this address, try again later",
+                    retryAfterSeconds(wait));
+        }
+    }
+
+    private static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,100 @@
+package com.etikos.user.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "security.password-hashing")
+public class PasswordHashingProperties {
+
+    /**
+     * Hilos dedicados a BCrypt. Acota la CPU que puede ocupar el hashing de contraseñas en el nodo.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Hashes en espera como máximo; con la cola llena se rechaza enseguida con 503.
+     */
+    private int queueCapacity = 64;
+
+    /**
+     * Espera máxima de una petición por su hash (cola más cálculo) antes de rendirse con 503.
+     */
+    private Duration maxWait = Duration.ofSeconds(2);
+
+    /**
+     * Coste fijo de BCrypt. Si no se define, se calibra al arrancar con {@code target-latency}.
+     */
+    private Integer strength;
+
+    /**
+     * Tiempo objetivo de un hash: al arrancar se elige el mayor coste que lo cumple en este nodo.
+     */
+    private Duration targetLatency = Duration.ofMillis(100);
+
+    /**
+     * Coste mínimo aunque el nodo no cumpla {@code target-latency} con él.
+     */
+    private int minStrength = 10;
+
+    /**
+     * Coste máximo de la calibración.
+     */
+    private int maxStrength = 14;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public Integer getStrength() {
+        return strength;
+    }
+
+    public void setStrength(Integer strength) {
+        this.strength = strength;
+    }
+
+    public Duration getTargetLatency() {
+        return targetLatency;
+    }
+
+    public void setTargetLatency(Duration targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
+    public int getMinStrength() {
+        return minStrength;
+    }
+
+    public void setMinStrength(int minStrength) {
+        this.minStrength = minStrength;
+    }
+
+    public int getMaxStrength() {
+        return maxStrength;
+    }
+
+    public void setMaxStrength(int maxStrength) {
+        this.maxStrength = maxStrength;
+    }
+}
@@ -0,0 +1,11 @@
+package com.etikos.user.security;
+
+/**
+ * El pool de BCrypt está saturado: la petición se rechaza en lugar de esperar turno.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+}
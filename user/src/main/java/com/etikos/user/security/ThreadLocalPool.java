@@ -0,0 +1,74 @@
+package com.etikos.user.security;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Instancias caras de crear y sin estado entre usos ({@code Mac}, {@code MessageDigest}, buffers)
+ * que se reutilizan también con hilos virtuales.
+ * <p>
+ * En un hilo de plataforma cada hilo guarda la suya en un {@link ThreadLocal}, como antes. Un hilo
+ * virtual atiende una sola petición y muere, así que un {@code ThreadLocal} crearía una instancia
+ * nueva en cada petición: en su lugar la toma de una cola compartida y la devuelve al terminar. La
+ * cola guarda como mucho {@code maxIdle} instancias; las que sobran se descartan.
+ * <pre>
+ * T instance = pool.acquire();
+ * try {
+ *     ...
+ * } finally {
+ *     pool.release(instance);
+ * }
+ * </pre>
+ */
+public final class ThreadLocalPool<T> {
+
+    private final Supplier<T> factory;
+    private final ThreadLocal<T> local;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+
+    public ThreadLocalPool(Supplier<T> factory) {
+        this(factory, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    ThreadLocalPool(Supplier<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.local = ThreadLocal.withInitial(factory);
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return una instancia que sólo usa este hilo hasta {@link #release(Object)}
+     */
+    public T acquire() {
+        if (!Thread.currentThread().isVirtual()) {
+            return local.get();
+        }
+        T instance = idle.poll();
+        if (instance == null) {
+            return factory.get();
+        }
+        idleCount.decrementAndGet();
+        return instance;
+    }
+
+    /**
+     * Devuelve una instancia obtenida con {@link #acquire()} desde este mismo hilo.
+     */
+    public void release(T instance) {
+        if (!Thread.currentThread().isVirtual()) {
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(instance);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    int idle() {
+        return idleCount.get();
+    }
+}
@@ -0,0 +1,71 @@
+package com.etikos.user.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Un token bucket por clave, sin locks.
+ * <p>
+ * Cada bucket es un único {@link AtomicLong} con el instante teórico en que el bucket vuelve a estar
+ * vacío (GCRA): consumir un token es leer ese instante, compararlo con el reloj y avanzarlo con un
+ * CAS. Equivale a un bucket de {@code capacity} tokens que recupera uno cada {@code refillPeriod},
+ * sin guardar tokens ni fecha de recarga por separado. Los buckets viven en una caché Caffeine (un
+ * {@code ConcurrentHashMap} segmentado por dentro) y expiran tras {@code capacity * refillPeriod}
+ * sin uso: para entonces estarían llenos, así que descartarlos no cambia ninguna decisión.
+ */
+public final class TokenBuckets {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier clock;
+    private final Cache<String, AtomicLong> buckets;
+    private final Function<String, AtomicLong> newBucket;
+
+    public TokenBuckets(int capacity, Duration refillPeriod, long maxKeys) {
+        this(capacity, refillPeriod, maxKeys, System::nanoTime);
+    }
+
+    public TokenBuckets(int capacity, Duration refillPeriod, long maxKeys, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.intervalNanos = Math.max(1, refillPeriod.toNanos());
+        this.toleranceNanos = intervalNanos * (capacity - 1);
+        this.clock = clock;
+        this.newBucket = key -> new AtomicLong(clock.getAsLong());
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofNanos(intervalNanos * capacity))
+                .build();
+    }
+
+    /**
+     * Consume un token de la clave.
+     *
+     * @return {@code 0} si había token; si no, nanosegundos hasta el siguiente
+     */
+    public long tryAcquire(String key) {
+        AtomicLong bucket = buckets.get(key, newBucket);
+        while (true) {
+            long now = clock.getAsLong();
+            long emptyAt = bucket.get();
+            long start = Math.max(emptyAt, now);
+            long wait = start - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(emptyAt, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public long size() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,345 @@
+package com.etikos.user.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Lista de tokens revocados (por {@code jti}) hasta su expiración.
+ * <p>
+ * Los ids se agrupan en cubos por instante de expiración ({@code bucket-width}) dentro de un anillo
+ * que cubre {@code jwt.expiration}: un token sólo puede estar en el cubo de su {@code exp}, así que
+ * la consulta es una lectura del anillo y un sondeo en una tabla hash abierta de {@code long},
+ * sin bloqueos ni asignaciones. Un cubo entero se descarta cuando vencen sus tokens. El total de
+ * ids vivos está acotado por {@code max-entries}: con la lista llena se descartan antes de tiempo
+ * los cubos que vencen primero, y si sólo queda el cubo del propio token no se revoca.
+ * <p>
+ * Con {@code snapshot-file} cada revocación se añade a un archivo local, que se relee y compacta
+ * al arrancar para que un reinicio no vuelva a aceptar tokens revocados. La lista es de esta
+ * instancia: con varias réplicas un token revocado en una sigue siendo válido en las demás.
+ * <p>
+ * Las escrituras se serializan con un {@link ReentrantLock} y no con {@code synchronized}: la
+ * revocación escribe en el archivo con el lock tomado y, en un hilo virtual, un monitor lo fijaría
+ * a su hilo portador durante la E/S.
+ */
+@Component
+public class TokenDenylist {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenDenylist.class);
+
+    private final long bucketSeconds;
+    private final long horizonSeconds;
+    private final int maxEntries;
+    private final Path snapshotFile;
+    private final LongSupplier clock;
+    private final AtomicReferenceArray<Bucket> ring;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private int entries;
+
+    @Autowired
+    public TokenDenylist(@Value("${jwt.expiration}") long expirationMillis,
+                         @Value("${jwt.denylist.bucket-width:5m}") Duration bucketWidth,
+                         @Value("${jwt.denylist.max-entries:100000}") int maxEntries,
+                         @Value("${jwt.denylist.snapshot-file:}") String snapshotFile) {
+        this(expirationMillis, bucketWidth, maxEntries, snapshotFile, () -> Instant.now().getEpochSecond());
+    }
+
+    /**
+     * @param clock segundos epoch actuales
+     */
+    TokenDenylist(long expirationMillis, Duration bucketWidth, int maxEntries, String snapshotFile, LongSupplier clock) {
+        this.clock = clock;
+        this.bucketSeconds = Math.max(1, bucketWidth.toSeconds());
+        this.horizonSeconds = Math.max(1, expirationMillis / 1000);
+        this.maxEntries = maxEntries;
+        this.snapshotFile = snapshotFile == null || snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+        // Cubos de los tokens todavía vivos más uno de margen a cada lado
+        this.ring = new AtomicReferenceArray<>((int) (horizonSeconds / bucketSeconds) + 3);
+        if (this.snapshotFile != null) {
+            loadSnapshot();
+        }
+    }
+
+    /**
+     * Consulta sin bloqueos ni asignaciones, pensada para cada petición autenticada.
+     */
+    public boolean isRevoked(VerifiedToken token) {
+        TokenId id = token.id();
+        if (id == null) {
+            return false;
+        }
+        long index = token.expiresAt().getEpochSecond() / bucketSeconds;
+        Bucket bucket = ring.get(slot(index));
+        return bucket != null && bucket.index == index && bucket.contains(id.high(), id.low());
+    }
+
+    /**
+     * Revoca el token hasta su expiración.
+     *
+     * @return {@code false} si el token no se puede revocar: no tiene {@code jti}, o la lista está
+     *         llena con tokens que vencen a la vez que él
+     */
+    public boolean revoke(VerifiedToken token) {
+        if (token.id() == null) {
+            return false;
+        }
+        long expiresAt = token.expiresAt().getEpochSecond();
+        writeLock.lock();
+        try {
+            AddResult result = add(token.id(), expiresAt, clock.getAsLong());
+            if (result == AddResult.FULL) {
+                return false;
+            }
+            if (result == AddResult.SKIPPED) {
+                return true;
+            }
+            if (snapshotFile != null) {
+                appendSnapshot(token.id(), expiresAt);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return true;
+    }
+
+    public int size() {
+        writeLock.lock();
+        try {
+            return entries;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private AddResult add(TokenId id, long expiresAt, long now) {
+        if (expiresAt <= now) {
+            return AddResult.SKIPPED;
+        }
+        if (expiresAt - now > horizonSeconds + bucketSeconds) {
+            throw new IllegalStateException("El token expira después de jwt.expiration; no se puede revocar");
+        }
+        purgeExpired(now);
+        long index = expiresAt / bucketSeconds;
+        int slot = slot(index);
+        Bucket bucket = ring.get(slot);
+        if (bucket == null || bucket.index != index) {
+            if (bucket != null) {
+                entries -= bucket.size;
+            }
+            bucket = new Bucket(index);
+            ring.set(slot, bucket);
+        }
+        if (bucket.contains(id.high(), id.low())) {
+            return AddResult.SKIPPED;
+        }
+        if (entries >= maxEntries && !evictSoonest(index)) {
+            log.warn("La lista de tokens revocados está llena ({}) con tokens que vencen a la vez; "
+                    + "el token {} sigue siendo válido hasta su expiración", maxEntries, id);
+            return AddResult.FULL;
+        }
+        bucket.add(id.high(), id.low());
+        entries++;
+        return AddResult.ADDED;
+    }
+
+    /**
+     * Descarta los cubos que vencen antes, sin tocar el cubo {@code keep}, hasta dejar sitio para
+     * una revocación más. Sus tokens vuelven a ser válidos durante lo que les queda de vida.
+     *
+     * @return {@code false} si no queda otro cubo que descartar
+     */
+    private boolean evictSoonest(long keep) {
+        int evicted = 0;
+        while (entries >= maxEntries) {
+            int soonest = -1;
+            for (int i = 0; i < ring.length(); i++) {
+                Bucket bucket = ring.get(i);
+                if (bucket != null && bucket.index != keep
+                        && (soonest < 0 || bucket.index < ring.get(soonest).index)) {
+                    soonest = i;
+                }
+            }
+            if (soonest < 0) {
+                break;
+            }
+            Bucket bucket = ring.get(soonest);
+            ring.set(soonest, null);
+            entries -= bucket.size;
+            evicted += bucket.size;
+        }
+        if (evicted > 0) {
+            log.warn("La lista de tokens revocados está llena ({}): se descartaron {} revocaciones de los "
+                    + "tokens que vencen antes", maxEntries, evicted);
+        }
+        return entries < maxEntries;
+    }
+
+    /**
+     * Libera los cubos cuyos tokens ya expiraron todos.
+     */
+    private void purgeExpired(long now) {
+        long current = now / bucketSeconds;
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket bucket = ring.get(i);
+            if (bucket != null && bucket.index < current) {
+                ring.set(i, null);
+                entries -= bucket.size;
+            }
+        }
+    }
+
+    private int slot(long index) {
+        return (int) Math.floorMod(index, (long) ring.length());
+    }
+
+    private void appendSnapshot(TokenId id, long expiresAt) {
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            Files.writeString(snapshotFile, expiresAt + " " + id + "\n", StandardCharsets.US_ASCII,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("No se pudo guardar la revocación del token {} en {}", id, snapshotFile, e);
+        }
+    }
+
+    /**
+     * Carga las revocaciones vigentes y reescribe el archivo sólo con ellas.
+     */
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            compactSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void compactSnapshot() {
+        long now = clock.getAsLong();
+        List<String> live = new ArrayList<>();
+        int skipped = 0;
+        try {
+            for (String line : Files.readAllLines(snapshotFile, StandardCharsets.US_ASCII)) {
+                String[] parts = line.trim().split(" ");
+                TokenId id = parts.length == 2 ? TokenId.parse(parts[1]) : null;
+                if (id == null) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    long expiresAt = Long.parseLong(parts[0]);
+                    AddResult result = add(id, expiresAt, now);
+                    if (result == AddResult.ADDED) {
+                        live.add(expiresAt + " " + id);
+                    } else if (result == AddResult.FULL) {
+                        skipped++;
+                    }
+                } catch (NumberFormatException | IllegalStateException e) {
+                    skipped++;
+                }
+            }
+            Path compacted = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.US_ASCII)) {
+                for (String entry : live) {
+                    writer.write(entry);
+                    writer.newLine();
+                }
+            }
+            Files.move(compacted, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Tokens revocados cargados desde {}: {} vigentes, {} descartados", snapshotFile, entries, skipped);
+        } catch (IOException e) {
+            log.error("No se pudo leer la lista de tokens revocados {}", snapshotFile, e);
+        }
+    }
+
+    private enum AddResult { ADDED, SKIPPED, FULL }
+
+    /**
+     * Tabla hash abierta de pares {@code (high, low)} de los tokens que expiran en el cubo. Sólo
+     * escribe un hilo a la vez (bajo el lock de {@link TokenDenylist}); las lecturas no
+     * bloquean: {@code low} se publica antes que {@code high} y el par {@code (0, 0)} marca un hueco.
+     */
+    private static final class Bucket {
+
+        private final long index;
+        private volatile AtomicLongArray table = new AtomicLongArray(2 * 16);
+        private int size;
+
+        Bucket(long index) {
+            this.index = index;
+        }
+
+        boolean contains(long high, long low) {
+            if (high == 0 && low == 0) {
+                low = 1;
+            }
+            AtomicLongArray t = table;
+            int mask = t.length() / 2 - 1;
+            for (int slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+                long h = t.get(2 * slot);
+                long l = t.get(2 * slot + 1);
+                if (h == 0 && l == 0) {
+                    return false;
+                }
+                if (h == high && l == low) {
+                    return true;
+                }
+            }
+        }
+
+        void add(long high, long low) {
+            if (high == 0 && low == 0) {
+                low = 1;
+            }
+            if (2 * (size + 1) > table.length() / 2) {
+                AtomicLongArray grown = new AtomicLongArray(table.length() * 2);
+                AtomicLongArray old = table;
+                for (int i = 0; i < old.length(); i += 2) {
+                    if (old.get(i) != 0 || old.get(i + 1) != 0) {
+                        insert(grown, old.get(i), old.get(i + 1));
+                    }
+                }
+                table = grown;
+            }
+            insert(table, high, low);
+            size++;
+        }
+
+        private static void insert(AtomicLongArray t, long high, long low) {
+            int mask = t.length() / 2 - 1;
+            int slot = hash(high, low) & mask;
+            while (t.get(2 * slot) != 0 || t.get(2 * slot + 1) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            t.set(2 * slot + 1, low);
+            t.set(2 * slot, high);
+        }
+
+        private static int hash(long high, long low) {
+            long h = high * 0x9E3779B97F4A7C15L ^ low;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
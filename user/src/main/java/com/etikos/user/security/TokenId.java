@@ -0,0 +1,36 @@
+package com.etikos.user.security;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Claim {@code jti} de los tokens emitidos por {@link JwtTokenIssuer}: 16 bytes aleatorios en
+ * Base64URL (22 caracteres), guardados como dos {@code long} para compararlos sin asignar memoria.
+ */
+public record TokenId(long high, long low) {
+
+    static final int BYTES = 16;
+    static final int ENCODED_LENGTH = 22;
+
+    /**
+     * @return el id, o {@code null} si el token no tiene {@code jti} o no tiene el formato propio
+     *         (tokens emitidos antes de que existiera el claim)
+     */
+    public static TokenId parse(String jti) {
+        if (jti == null || jti.length() != ENCODED_LENGTH) {
+            return null;
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(jti));
+            return bytes.remaining() == BYTES ? new TokenId(bytes.getLong(), bytes.getLong()) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer bytes = ByteBuffer.allocate(BYTES).putLong(high).putLong(low);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+}
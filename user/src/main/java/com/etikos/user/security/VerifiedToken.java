@@ -0,0 +1,14 @@
+package com.etikos.user.security;
+
+import java.time.Instant;
+
+/**
+ * Claims de un JWT cuya firma y expiración ya se comprobaron. {@code id} es {@code null} en los
+ * tokens sin {@code jti}, que no se pueden revocar.
+ */
+public record VerifiedToken(String username, String role, String userId, Instant expiresAt, TokenId id) {
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,367 @@
+package com.etikos.user.services;
+
+import com.etikos.user.store.UserKeyIndex;
+import com.etikos.user.store.UserStoreProperties;
+import com.google.api.gax.rpc.ApiStreamObserver;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.firebase.cloud.FirestoreClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Filtro de Bloom con los emails registrados, para que el login rechace un email desconocido sin
+ * leer Firestore.
+ * <p>
+ * Se construye al arrancar y cada {@code users.email-filter.rebuild-interval} recorriendo los ids de
+ * {@code emails/} en un único stream (sólo nombres de documento), dimensionado con
+ * {@code expected-users} y {@code false-positive-rate}. Mientras tanto, y después, escucha las
+ * claves de {@code emails/} creadas desde poco antes de empezar, así que las altas hechas por otras
+ * instancias o por la migración también entran. Las altas de esta instancia se añaden además antes
+ * de escribirlas, para no depender del listener.
+ * <p>
+ * Un "no" del filtro sólo vale mientras el listener está al día: hasta que el listener de la
+ * construcción que se está usando entrega su primer snapshot, o si falla, {@link #mightExist(String)}
+ * responde {@code true} y el login lee el índice de {@code emails/} como siempre. Así un alta recién
+ * hecha en otra instancia no da un falso negativo mientras el listener aún no la ha entregado.
+ * <p>
+ * Un filtro de Bloom no admite borrados: los emails eliminados siguen dando "quizá" (y se leen de
+ * Firestore como antes) hasta la siguiente reconstrucción, que se adelanta si se acumulan o si el
+ * filtro supera el tamaño para el que se dimensionó. Si el filtro aún no existe o el listener falla,
+ * {@link #mightExist(String)} responde {@code true} y el login funciona como sin filtro.
+ * <p>
+ * Sólo se construye con el almacén de Firestore: con el embebido el índice de emails ya es una
+ * lectura local y el filtro no ahorraría nada.
+ */
+@Component
+public class EmailBloomFilter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailBloomFilter.class);
+    private static final long STREAM_TIMEOUT_MINUTES = 10;
+    private static final long RETRY_DELAY_SECONDS = 60;
+
+    private final EmailFilterProperties properties;
+    private final UserStoreProperties storeProperties;
+    private final KeySource source;
+    private final ScheduledExecutorService scheduler;
+    private final Counter rejected;
+
+    private volatile BloomFilter<CharSequence> current;
+    private volatile BloomFilter<CharSequence> building;
+    private volatile long expectedInsertions;
+    private volatile ListenerRegistration listener;
+    private final AtomicInteger generation = new AtomicInteger();
+    /** Construcción de la que sale {@link #current}; se escribe antes que {@code current}. */
+    private volatile int filterGeneration;
+    /** Construcción más reciente cuyo listener ya entregó un snapshot. */
+    private final AtomicInteger syncedGeneration = new AtomicInteger();
+    /** Construcción más reciente cuyo listener falló. */
+    private final AtomicInteger failedGeneration = new AtomicInteger();
+    private final AtomicLong removedSinceBuild = new AtomicLong();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private long lastCount;
+
+    @Autowired
+    public EmailBloomFilter(EmailFilterProperties properties, UserStoreProperties storeProperties,
+                            MeterRegistry meterRegistry) {
+        this(properties, storeProperties, meterRegistry, new FirestoreKeys());
+    }
+
+    EmailBloomFilter(EmailFilterProperties properties, UserStoreProperties storeProperties,
+                     MeterRegistry meterRegistry, KeySource source) {
+        this.properties = properties;
+        this.storeProperties = storeProperties;
+        this.source = source;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "email-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rejected = Counter.builder("users.email_filter.rejected")
+                .description("Logins rechazados sin leer Firestore por email no registrado")
+                .register(meterRegistry);
+        Gauge.builder("users.email_filter.entries", this,
+                        filter -> filter.current != null ? filter.current.approximateElementCount() : 0)
+                .description("Emails aproximados en el filtro")
+                .register(meterRegistry);
+        Gauge.builder("users.email_filter.fpp", this,
+                        filter -> filter.current != null ? filter.current.expectedFpp() : 1)
+                .description("Probabilidad estimada de falso positivo del filtro")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Se construye cuando la aplicación ya arrancó, después de la migración del índice de claves y
+     * del admin por defecto, y sin retrasar el arranque.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled() || storeProperties.getType() != UserStoreProperties.Type.FIRESTORE) {
+            return;
+        }
+        requestRebuild();
+        long interval = properties.getRebuildInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::requestRebuild, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@code false} sólo si el email seguro que no está registrado
+     */
+    public boolean mightExist(String email) {
+        BloomFilter<CharSequence> filter = current;
+        if (!properties.isEnabled() || filter == null || email == null || email.isBlank()) {
+            return true;
+        }
+        int gen = filterGeneration;
+        if (syncedGeneration.get() < gen || failedGeneration.get() >= gen) {
+            // El listener de este filtro aún no está al día: puede faltar un alta de otra instancia
+            return true;
+        }
+        if (filter.mightContain(key(email))) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Añade un email antes de escribir su clave en Firestore; si la escritura falla sólo queda un
+     * falso positivo.
+     */
+    public void add(String email) {
+        if (email == null || email.isBlank()) {
+            return;
+        }
+        put(key(email));
+    }
+
+    /**
+     * Anota que un email dejó de estar registrado; se olvida en la siguiente reconstrucción.
+     */
+    public void removed(String email) {
+        BloomFilter<CharSequence> filter = current;
+        if (email == null || filter == null) {
+            return;
+        }
+        if (removedSinceBuild.incrementAndGet() > Math.max(1_000, filter.approximateElementCount() / 10)) {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Programa una reconstrucción en segundo plano, salvo que ya haya una pendiente.
+     */
+    public void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.execute(this::rebuild);
+        } catch (RejectedExecutionException e) {
+            // Aplicación deteniéndose
+            rebuildPending.set(false);
+        }
+    }
+
+    private void rebuild() {
+        rebuildPending.set(false);
+        long expected = Math.max(properties.getExpectedUsers(), lastCount * 2);
+        BloomFilter<CharSequence> next = BloomFilter.create(Funnels.unencodedCharsFunnel(), expected,
+                properties.getFalsePositiveRate());
+        building = next;
+        ListenerRegistration previous = listener;
+        int gen = generation.incrementAndGet();
+        try {
+            // Primero el listener: lo que se registre durante el recorrido entra por él
+            listener = source.listen(Instant.now().minus(properties.getClockSkew()), new KeyListener() {
+                @Override
+                public void onAdded(List<String> keys) {
+                    onKeysAdded(gen, keys);
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    onListenerFailed(gen, error);
+                }
+            });
+            long count = source.stream(next::put);
+            if (failedGeneration.get() >= gen) {
+                throw new IllegalStateException("el listener falló durante la construcción");
+            }
+
+            filterGeneration = gen;
+            current = next;
+            expectedInsertions = expected;
+            lastCount = count;
+            removedSinceBuild.set(0);
+            if (previous != null) {
+                previous.remove();
+            }
+            log.info("Email filter built: {} emails, sized for {} with fpp {}",
+                    count, expected, properties.getFalsePositiveRate());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            log.warn("Email filter rebuild failed, retrying in {}s: {}", RETRY_DELAY_SECONDS, e.toString());
+            if (listener != previous && listener != null) {
+                listener.remove();
+                listener = previous;
+            }
+            scheduleRetry();
+        } finally {
+            building = null;
+        }
+    }
+
+    private void onKeysAdded(int gen, List<String> keys) {
+        keys.forEach(this::put);
+        syncedGeneration.accumulateAndGet(gen, Math::max);
+    }
+
+    private void onListenerFailed(int gen, Exception error) {
+        failedGeneration.accumulateAndGet(gen, Math::max);
+        if (gen == filterGeneration) {
+            // Sin listener el filtro se queda atrás respecto a otras instancias: mejor no usarlo
+            current = null;
+            log.warn("Email filter listener failed, filter disabled until rebuilt: {}", error.toString());
+            scheduleRetry();
+        }
+    }
+
+    private void put(String key) {
+        BloomFilter<CharSequence> filter = current;
+        if (filter != null) {
+            filter.put(key);
+            if (filter.approximateElementCount() > expectedInsertions) {
+                // Por encima de su tamaño la tasa de falsos positivos sube: se redimensiona
+                requestRebuild();
+            }
+        }
+        BloomFilter<CharSequence> next = building;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    private void scheduleRetry() {
+        try {
+            scheduler.schedule(this::requestRebuild, RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Aplicación deteniéndose
+        }
+    }
+
+    static String key(String email) {
+        return UserKeyIndex.documentId(UserKeyIndex.normalizeEmail(email));
+    }
+
+    /**
+     * Origen de los ids de {@code emails/}: Firestore, o uno en memoria en los tests.
+     */
+    interface KeySource {
+
+        /**
+         * Escucha las claves creadas desde {@code since}. El primer aviso llega cuando el listener
+         * está al día, aunque no haya claves nuevas.
+         */
+        ListenerRegistration listen(Instant since, KeyListener listener);
+
+        /**
+         * Recorre todas las claves.
+         *
+         * @return cuántas había
+         */
+        long stream(Consumer<String> keys) throws Exception;
+    }
+
+    interface KeyListener {
+
+        void onAdded(List<String> keys);
+
+        void onError(Exception error);
+    }
+
+    private static final class FirestoreKeys implements KeySource {
+
+        @Override
+        public ListenerRegistration listen(Instant since, KeyListener listener) {
+            return FirestoreClient.getFirestore().collection(UserKeyIndex.EMAILS)
+                    .whereGreaterThanOrEqualTo("createdAt", Timestamp.of(Date.from(since)))
+                    .addSnapshotListener((snapshot, error) -> {
+                        if (error != null) {
+                            listener.onError(error);
+                            return;
+                        }
+                        List<String> added = snapshot.getDocumentChanges().stream()
+                                .filter(change -> change.getType() == DocumentChange.Type.ADDED)
+                                .map(change -> change.getDocument().getId())
+                                .toList();
+                        listener.onAdded(added);
+                    });
+        }
+
+        @Override
+        public long stream(Consumer<String> keys) throws Exception {
+            CompletableFuture<Long> done = new CompletableFuture<>();
+            Firestore db = FirestoreClient.getFirestore();
+            db.collection(UserKeyIndex.EMAILS).select(FieldPath.documentId()).stream(new ApiStreamObserver<>() {
+                private long count;
+
+                @Override
+                public void onNext(DocumentSnapshot key) {
+                    keys.accept(key.getId());
+                    count++;
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    done.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.complete(count);
+                }
+            });
+            return done.get(STREAM_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        ListenerRegistration registration = listener;
+        if (registration != null) {
+            registration.remove();
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,77 @@
+package com.etikos.user.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "users.email-filter")
+public class EmailFilterProperties {
+
+    /**
+     * Rechaza en el login, sin leer Firestore, los emails que seguro no están registrados.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Usuarios esperados. El filtro se dimensiona para el mayor entre este valor y el doble de los
+     * emails encontrados en la última reconstrucción.
+     */
+    private long expectedUsers = 100_000;
+
+    /**
+     * Probabilidad de falso positivo buscada: la fracción de emails desconocidos que aun así pasan
+     * a Firestore.
+     */
+    private double falsePositiveRate = 0.01;
+
+    /**
+     * Cada cuánto se reconstruye el filtro desde {@code emails/}, para olvidar los emails borrados.
+     */
+    private Duration rebuildInterval = Duration.ofHours(6);
+
+    /**
+     * Margen hacia atrás al escuchar las altas hechas desde otras instancias, por si sus relojes van
+     * por detrás del de esta.
+     */
+    private Duration clockSkew = Duration.ofMinutes(5);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getExpectedUsers() {
+        return expectedUsers;
+    }
+
+    public void setExpectedUsers(long expectedUsers) {
+        this.expectedUsers = expectedUsers;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    public void setRebuildInterval(Duration rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    public Duration getClockSkew() {
+        return clockSkew;
+    }
+
+    public void setClockSkew(Duration clockSkew) {
+        this.clockSkew = clockSkew;
+    }
+}
@@ -0,0 +1,38 @@
+package com.etikos.user.services;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Conversión de los {@link ApiFuture} de Firestore a {@link CompletableFuture} sin bloquear ningún
+ * hilo: el resultado se propaga desde el hilo del cliente de Firestore que completa la llamada.
+ * <p>
+ * Las continuaciones síncronas ({@code thenApply}, ...) corren en ese mismo hilo de gRPC, así que
+ * sólo deben hacer trabajo trivial; lo demás (auditoría, armar la respuesta) pasa a un ejecutor
+ * con {@code thenApplyAsync(..., executor)}, como hace {@code UserController}.
+ */
+public final class FirestoreFutures {
+
+    private FirestoreFutures() {
+    }
+
+    public static <T> CompletableFuture<T> toCompletable(ApiFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ApiFutures.addCallback(future, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+package com.etikos.user.services;
+
+import com.etikos.user.security.BoundedPasswordEncoder;
+import com.etikos.user.store.UserStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rehash transparente de contraseñas tras un login correcto, cuando el coste del hash guardado no
+ * es el calibrado para este nodo.
+ * <p>
+ * El hash nuevo se calcula en el pool de BCrypt sin retrasar la respuesta del login y se guarda
+ * con {@link UserStore#compareAndSet} sólo si el usuario conserva el hash que se validó: si la
+ * contraseña cambió mientras tanto, no se pisa. Si el pool está saturado el rehash se omite y se
+ * intentará en el siguiente login. Cuenta los rehashes guardados en {@code password.hashing.rehashed}.
+ */
+@Component
+public class PasswordRehasher {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordRehasher.class);
+
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final UserDocumentCache userCache;
+    private final UserStore store;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Counter rehashed;
+
+    public PasswordRehasher(BoundedPasswordEncoder passwordEncoder, UserDocumentCache userCache,
+                            UserStore store, MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
+        this.store = store;
+        this.rehashed = Counter.builder("password.hashing.rehashed")
+                .description("Hashes de contraseña reescritos con el coste calibrado")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Programa el rehash si hace falta. Se llama después de validar {@code rawPassword} contra
+     * {@code storedHash}; nunca bloquea ni lanza excepciones.
+     */
+    public void rehashIfNeeded(String uid, String rawPassword, String storedHash) {
+        if (!passwordEncoder.upgradeEncoding(storedHash) || !inFlight.add(uid)) {
+            return;
+        }
+        passwordEncoder.encodeInBackground(rawPassword)
+                .thenCompose(newHash -> writeBack(uid, storedHash, newHash))
+                .whenComplete((written, error) -> {
+                    inFlight.remove(uid);
+                    if (error != null) {
+                        log.warn("Password rehash skipped for user {}: {}", uid, error.toString());
+                    } else if (written) {
+                        userCache.invalidate(uid);
+                        rehashed.increment();
+                        log.info("Password rehashed with the calibrated BCrypt strength for user: {}", uid);
+                    }
+                });
+    }
+
+    /**
+     * @return {@code true} si se guardó el hash nuevo
+     */
+    private CompletableFuture<Boolean> writeBack(String uid, String storedHash, String newHash) {
+        return store.compareAndSet(uid, "password", storedHash, newHash);
+    }
+}
@@ -0,0 +1,49 @@
+package com.etikos.user.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "users.mfa")
+public class PendingMfaProperties {
+
+    /**
+     * Tiempo para completar el segundo paso ({@code /users/login/totp}) desde que se validó la
+     * contraseña o la biometría.
+     */
+    private Duration sessionTtl = Duration.ofMinutes(5);
+
+    /**
+     * Sesiones pendientes en memoria como máximo, entre todos los usuarios.
+     */
+    private long maxSessions = 100_000;
+
+    /**
+     * Sesiones pendientes por usuario; al abrir una más se descarta la más antigua.
+     */
+    private int maxSessionsPerUser = 3;
+
+    public Duration getSessionTtl() {
+        return sessionTtl;
+    }
+
+    public void setSessionTtl(Duration sessionTtl) {
+        this.sessionTtl = sessionTtl;
+    }
+
+    public long getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(long maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public int getMaxSessionsPerUser() {
+        return maxSessionsPerUser;
+    }
+
+    public void setMaxSessionsPerUser(int maxSessionsPerUser) {
+        this.maxSessionsPerUser = maxSessionsPerUser;
+    }
+}
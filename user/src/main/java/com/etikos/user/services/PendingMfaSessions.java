@@ -0,0 +1,112 @@
+package com.etikos.user.services;
+
+import com.etikos.user.dto.UserProfileDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sesiones de login pendientes del segundo factor (TOTP), en memoria.
+ * <p>
+ * Tras validar la contraseña o la biometría se guarda aquí lo que necesita {@code /users/login/totp}
+ * (uid, username, role, secreto TOTP y perfil) bajo un id aleatorio, así que el segundo paso se
+ * completa sin leer Firestore. Cada sesión expira a los {@code users.mfa.session-ttl}, sirve para un
+ * solo intento ({@link #consume(String)} la elimina, sea el código correcto o no) y cada usuario
+ * tiene como máximo {@code users.mfa.max-sessions-per-user}: al abrir una más se descarta la más
+ * antigua. Las sesiones son de esta instancia; con varias réplicas el segundo paso debe llegar a la
+ * misma.
+ */
+@Component
+public class PendingMfaSessions {
+
+    /**
+     * Credenciales ya validadas en el primer paso.
+     */
+    public record PendingMfa(String uid, String username, String role, String totpSecret, UserProfileDto user) {
+    }
+
+    private final Cache<String, PendingMfa> sessions;
+    private final ConcurrentHashMap<String, ArrayDeque<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final int maxSessionsPerUser;
+    private final SecureRandom random = new SecureRandom();
+
+    public PendingMfaSessions(PendingMfaProperties properties, MeterRegistry meterRegistry) {
+        this.maxSessionsPerUser = Math.max(1, properties.getMaxSessionsPerUser());
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSessions())
+                .expireAfterWrite(properties.getSessionTtl())
+                // Expira las sesiones aunque no haya logins, para liberar también su índice por usuario
+                .scheduler(Scheduler.systemScheduler())
+                .<String, PendingMfa>removalListener((id, session, cause) -> {
+                    if (session != null) {
+                        forget(session.uid(), id);
+                    }
+                })
+                .build();
+        Gauge.builder("users.mfa.pending", sessions, Cache::estimatedSize)
+                .description("Logins esperando el código TOTP")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return id de la sesión, que el cliente recibe como {@code tempSessionId}
+     */
+    public String open(PendingMfa session) {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        // La sesión y su índice cambian juntos bajo el mismo compute: otro open del mismo usuario no
+        // puede descartar un id que aún no está en la caché. El removalListener corre en el executor
+        // de Caffeine, fuera de este compute, así que su forget no se anida en él
+        sessionsByUser.compute(session.uid(), (uid, ids) -> {
+            if (ids == null) {
+                ids = new ArrayDeque<>(maxSessionsPerUser + 1);
+            }
+            sessions.put(id, session);
+            ids.addLast(id);
+            while (ids.size() > maxSessionsPerUser) {
+                sessions.invalidate(ids.pollFirst());
+            }
+            return ids;
+        });
+        return id;
+    }
+
+    /**
+     * Quita la sesión y la devuelve: un id sólo sirve una vez.
+     *
+     * @return la sesión, o {@code null} si no existe, expiró o ya se usó
+     */
+    public PendingMfa consume(String id) {
+        return id == null ? null : sessions.asMap().remove(id);
+    }
+
+    /**
+     * Sesiones abiertas del usuario según el índice por usuario.
+     */
+    int openSessions(String uid) {
+        int[] count = {0};
+        // Bajo el mismo bloqueo que open y forget: el ArrayDeque no es thread-safe
+        sessionsByUser.computeIfPresent(uid, (key, ids) -> {
+            count[0] = ids.size();
+            return ids;
+        });
+        return count[0];
+    }
+
+    private void forget(String uid, String id) {
+        sessionsByUser.computeIfPresent(uid, (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.etikos.user.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "totp.qr")
+public class TotpQrProperties {
+
+    /**
+     * Hilos que dibujan códigos QR. Por defecto la mitad de los procesadores, para que una ráfaga
+     * de altas de MFA no ocupe toda la CPU que necesitan los logins.
+     */
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * QR pendientes de dibujar como máximo; con la cola llena se responde 503 en lugar de esperar.
+     */
+    private int queueCapacity = 32;
+
+    /**
+     * Tiempo durante el que se puede pedir el QR de una configuración iniciada (y se guardan sus
+     * imágenes ya dibujadas).
+     */
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /**
+     * Configuraciones pendientes en memoria como máximo.
+     */
+    private long maxSessions = 10_000;
+
+    /**
+     * Píxeles por módulo del PNG.
+     */
+    private int pngModuleSize = 4;
+
+    /**
+     * Espera máxima del QR en línea ({@code qr=inline}) de {@code POST /users/totp/setup}.
+     */
+    private Duration inlineTimeout = Duration.ofSeconds(5);
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(long maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public int getPngModuleSize() {
+        return pngModuleSize;
+    }
+
+    public void setPngModuleSize(int pngModuleSize) {
+        this.pngModuleSize = pngModuleSize;
+    }
+
+    public Duration getInlineTimeout() {
+        return inlineTimeout;
+    }
+
+    public void setInlineTimeout(Duration inlineTimeout) {
+        this.inlineTimeout = inlineTimeout;
+    }
+}
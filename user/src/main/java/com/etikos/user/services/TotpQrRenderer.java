@@ -0,0 +1,215 @@
+package com.etikos.user.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dibuja los QR de configuración de TOTP fuera de los hilos de Tomcat.
+ * <p>
+ * {@link #open(String, String)} registra la URI {@code otpauth://} de una configuración recién
+ * iniciada y devuelve un id aleatorio; la imagen se dibuja después, cuando el cliente la pide, en un
+ * pool de {@code totp.qr.threads} hilos con una cola de {@code totp.qr.queue-capacity}. Si la cola
+ * está llena se rechaza enseguida ({@link RejectedExecutionException}) en lugar de acumular trabajo.
+ * Cada imagen se dibuja una vez por formato y se guarda, junto con la configuración, durante
+ * {@code totp.qr.ttl}.
+ * <p>
+ * Los formatos son compactos: SVG con un trazo por fila de módulos y PNG de 1 bit por píxel, en
+ * lugar del PNG de 350x350 de {@code ZxingPngQrGenerator}.
+ */
+@Component
+public class TotpQrRenderer implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TotpQrRenderer.class);
+    private static final int QUIET_ZONE = 4;
+
+    public enum QrFormat {
+        SVG("image/svg+xml"),
+        PNG("image/png");
+
+        private final String mimeType;
+
+        QrFormat(String mimeType) {
+            this.mimeType = mimeType;
+        }
+
+        public String mimeType() {
+            return mimeType;
+        }
+    }
+
+    private record Session(String uid, String otpauthUri) {
+    }
+
+    private record ImageKey(String setupId, QrFormat format) {
+    }
+
+    private final int pngModuleSize;
+    private final ThreadPoolExecutor pool;
+    private final Cache<String, Session> sessions;
+    private final AsyncCache<ImageKey, byte[]> images;
+    private final SecureRandom random = new SecureRandom();
+
+    public TotpQrRenderer(TotpQrProperties properties) {
+        this.pngModuleSize = Math.max(1, properties.getPngModuleSize());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                task -> {
+                    Thread thread = new Thread(task, "totp-qr-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.images = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSessions())
+                .expireAfterWrite(properties.getTtl())
+                .buildAsync();
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSessions())
+                .expireAfterWrite(properties.getTtl())
+                .<String, Session>removalListener((setupId, session, cause) -> {
+                    for (QrFormat format : QrFormat.values()) {
+                        images.synchronous().invalidate(new ImageKey(setupId, format));
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Registra una configuración de TOTP pendiente de mostrar su QR.
+     *
+     * @return id opaco de la configuración, para pedir la imagen con {@link #render}
+     */
+    public String open(String uid, String otpauthUri) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String setupId = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(setupId, new Session(uid, otpauthUri));
+        return setupId;
+    }
+
+    /**
+     * Devuelve la imagen del QR, dibujándola en el pool si todavía no está en caché.
+     *
+     * @return {@code null} si la configuración no existe, expiró o es de otro usuario
+     * @throws RejectedExecutionException si el pool de dibujo está saturado
+     */
+    public CompletableFuture<byte[]> render(String setupId, String uid, QrFormat format) {
+        Session session = sessions.getIfPresent(setupId);
+        if (session == null || !session.uid().equals(uid)) {
+            return null;
+        }
+        return images.get(new ImageKey(setupId, format),
+                (key, executor) -> CompletableFuture.supplyAsync(() -> draw(session.otpauthUri(), format), pool));
+    }
+
+    public static String dataUri(byte[] image, QrFormat format) {
+        return "data:" + format.mimeType() + ";base64," + Base64.getEncoder().encodeToString(image);
+    }
+
+    byte[] draw(String content, QrFormat format) {
+        BitMatrix matrix;
+        try {
+            // Con tamaño 0 ZXing devuelve un píxel por módulo
+            matrix = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0,
+                    Map.of(EncodeHintType.MARGIN, QUIET_ZONE, EncodeHintType.CHARACTER_SET, "UTF-8"));
+        } catch (WriterException e) {
+            throw new IllegalStateException("No se pudo generar el código QR", e);
+        }
+        return switch (format) {
+            case SVG -> svg(matrix);
+            case PNG -> png(matrix, pngModuleSize);
+        };
+    }
+
+    /**
+     * Un trazo de grosor 1 por fila: cada tramo oscuro es un {@code h} y los huecos entre tramos
+     * un desplazamiento relativo, unos 6 bytes por tramo.
+     */
+    private static byte[] svg(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        StringBuilder svg = new StringBuilder(width * height / 2)
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ")
+                .append(width).append(' ').append(height)
+                .append("\" shape-rendering=\"crispEdges\"><rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path stroke=\"#000\" d=\"");
+        for (int y = 0; y < height; y++) {
+            int end = -1;
+            for (int x = 0; x < width; x++) {
+                if (!matrix.get(x, y)) {
+                    continue;
+                }
+                int start = x;
+                while (x + 1 < width && matrix.get(x + 1, y)) {
+                    x++;
+                }
+                if (end < 0) {
+                    svg.append('M').append(start).append(' ').append(y).append(".5");
+                } else {
+                    svg.append('m').append(start - end).append(" 0");
+                }
+                svg.append('h').append(x - start + 1);
+                end = x + 1;
+            }
+        }
+        svg.append("\"/></svg>");
+        return svg.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] png(BitMatrix matrix, int moduleSize) {
+        int width = matrix.getWidth() * moduleSize;
+        int height = matrix.getHeight() * moduleSize;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = image.getRaster();
+        int[] row = new int[width];
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                // En TYPE_BYTE_BINARY 0 es negro y 1 blanco
+                row[x] = matrix.get(x / moduleSize, y) ? 0 : 1;
+            }
+            for (int dy = 0; dy < moduleSize; dy++) {
+                raster.setPixels(0, y * moduleSize + dy, width, 1, row);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+        log.debug("Pool de QR de TOTP detenido");
+    }
+}
@@ -1,18 +1,15 @@
 package com.etikos.user.services;
 
-import dev.samstevens.totp.code.*;
-import dev.samstevens.totp.exceptions.QrGenerationException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.samstevens.totp.code.HashingAlgorithm;
 import dev.samstevens.totp.qr.QrData;
-import dev.samstevens.totp.qr.QrGenerator;
-import dev.samstevens.totp.qr.ZxingPngQrGenerator;
 import dev.samstevens.totp.secret.DefaultSecretGenerator;
-import dev.samstevens.totp.time.SystemTimeProvider;
-import dev.samstevens.totp.time.TimeProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import static dev.samstevens.totp.util.Utils.getDataUriForImage;
+import java.time.Duration;
 
 /**
  * Servicio para manejar TOTP (Time-based One-Time Password)
@@ -24,17 +21,22 @@ public class TotpService {
     private static final Logger log = LoggerFactory.getLogger(TotpService.class);
     private static final String ISSUER = "Etikos"; // Nombre de tu aplicación
 
+    // 1 período antes y después (90 segundos total de ventana)
+    private static final int WINDOW = 1;
+
     private final DefaultSecretGenerator secretGenerator;
-    private final QrGenerator qrGenerator;
-    private final CodeVerifier verifier;
+    private final TotpVerifier verifier;
+
+    // Último período aceptado por usuario; se olvida cuando ya no cae en ninguna ventana
+    private final Cache<String, Long> lastUsedSteps;
 
     public TotpService() {
         this.secretGenerator = new DefaultSecretGenerator();
-        this.qrGenerator = new ZxingPngQrGenerator();
-
-        TimeProvider timeProvider = new SystemTimeProvider();
-        CodeGenerator codeGenerator = new DefaultCodeGenerator();
-        this.verifier = new DefaultCodeVerifier(codeGenerator, timeProvider);
+        this.verifier = new TotpVerifier(10_000, Duration.ofMinutes(10));
+        this.lastUsedSteps = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds((2L * WINDOW + 2) * TotpVerifier.PERIOD_SECONDS))
+                .build();
     }
 
     /**
@@ -47,13 +49,14 @@ public class TotpService {
     }
 
     /**
-     * Genera un QR code en formato Data URI que el usuario puede escanear con Google Authenticator
+     * Genera la URI {@code otpauth://} que codifica el QR para Google Authenticator. La imagen la
+     * dibuja {@link TotpQrRenderer} fuera del hilo de la petición.
      *
      * @param secret El secreto TOTP del usuario
      * @param userEmail Email del usuario (se mostrará en la app authenticator)
-     * @return Data URI del QR code (imagen PNG en base64)
+     * @return URI {@code otpauth://totp/...}
      */
-    public String generateQrCodeDataUri(String secret, String userEmail) throws QrGenerationException {
+    public String generateOtpauthUri(String secret, String userEmail) {
         QrData data = new QrData.Builder()
                 .label(userEmail)
                 .secret(secret)
@@ -63,11 +66,8 @@ public class TotpService {
                 .period(30) // 30 segundos de validez
                 .build();
 
-        byte[] imageData = qrGenerator.generate(data);
-        String dataUri = getDataUriForImage(imageData, qrGenerator.getImageMimeType());
-
-        log.debug("Generated QR code for user: {}", userEmail);
-        return dataUri;
+        log.debug("Generated otpauth URI for user: {}", userEmail);
+        return data.getUri();
     }
 
     /**
@@ -78,7 +78,7 @@ public class TotpService {
      * @return true si el código es válido, false en caso contrario
      */
     public boolean verifyCode(String secret, String code) {
-        boolean isValid = verifier.isValidCode(secret, code);
+        boolean isValid = verifier.matchingStep(secret, code, epochSeconds(), 0) >= 0;
         log.debug("TOTP code verification result: {}", isValid);
         return isValid;
     }
@@ -88,18 +88,38 @@ public class TotpService {
      * Útil para compensar desfases de reloj entre servidor y cliente
      */
     public boolean verifyCodeWithWindow(String secret, String code) {
-        // Permite 1 período antes y después (90 segundos total de ventana)
-        TimeProvider timeProvider = new SystemTimeProvider();
-        CodeGenerator codeGenerator = new DefaultCodeGenerator();
-        CodeVerifier verifierWithWindow = new DefaultCodeVerifier(codeGenerator, timeProvider);
-
-        // Configurar ventana de discrepancia (1 = 30 segundos antes y después)
-        ((DefaultCodeVerifier) verifierWithWindow).setTimePeriod(30);
-        ((DefaultCodeVerifier) verifierWithWindow).setAllowedTimePeriodDiscrepancy(1);
-
-        boolean isValid = verifierWithWindow.isValidCode(secret, code);
+        boolean isValid = verifier.matchingStep(secret, code, epochSeconds(), WINDOW) >= 0;
         log.debug("TOTP code verification with window result: {}", isValid);
         return isValid;
     }
+
+    /**
+     * Igual que {@link #verifyCodeWithWindow}, pero cada código sólo sirve una vez por usuario
+     * (RFC 6238, sección 5.2): se acepta si su período es posterior al último aceptado para
+     * {@code uid}. Así un código interceptado no puede reutilizarse dentro de su ventana.
+     */
+    public boolean verifyCodeOnce(String uid, String secret, String code) {
+        long step = verifier.matchingStep(secret, code, epochSeconds(), WINDOW);
+        if (step < 0) {
+            log.debug("TOTP code verification with window result: false");
+            return false;
+        }
+        boolean[] accepted = {false};
+        lastUsedSteps.asMap().compute(uid, (key, last) -> {
+            if (last != null && step <= last) {
+                return last;
+            }
+            accepted[0] = true;
+            return step;
+        });
+        if (!accepted[0]) {
+            log.warn("TOTP code replay rejected for user: {}", uid);
+        }
+        return accepted[0];
+    }
+
+    private static long epochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
 }
 
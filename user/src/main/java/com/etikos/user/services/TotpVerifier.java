@@ -0,0 +1,137 @@
+package com.etikos.user.services;
+
+import com.etikos.user.security.ThreadLocalPool;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.codec.binary.Base32;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.time.Duration;
+
+/**
+ * Verificador TOTP (RFC 6238: HMAC-SHA1, 6 dígitos, periodos de 30 s) equivalente a
+ * {@code DefaultCodeVerifier} de la librería, pensado para llamarse en cada login:
+ * <ul>
+ *     <li>el Base32 de cada secreto se decodifica una vez y la clave queda en caché, indexada por el
+ *     propio secreto: la clave decodificada ya son los mismos bytes, así que indexar por un hash no
+ *     evitaría tenerlos en memoria;</li>
+ *     <li>el {@link Mac}, el contador y el resultado HMAC son buffers reutilizados: uno por hilo de
+ *     plataforma y, con hilos virtuales, tomados de un {@link ThreadLocalPool};</li>
+ *     <li>el código se convierte a entero una vez y cada periodo de la ventana se compara sin
+ *     crear objetos.</li>
+ * </ul>
+ */
+final class TotpVerifier {
+
+    static final int PERIOD_SECONDS = 30;
+    private static final int DIGITS = 6;
+    private static final int MODULUS = 1_000_000;
+
+    private final Cache<String, SecretKeySpec> keys;
+    private final ThreadLocalPool<HmacState> hmac = new ThreadLocalPool<>(HmacState::new);
+
+    TotpVerifier(long maxSecrets, Duration secretTtl) {
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(maxSecrets)
+                .expireAfterAccess(secretTtl)
+                .build();
+    }
+
+    /**
+     * Busca {@code code} en los periodos {@code [t - window, t + window]} alrededor de
+     * {@code epochSeconds}.
+     *
+     * @return el periodo (contador TOTP) que coincide, o {@code -1} si ninguno
+     */
+    long matchingStep(String secret, String code, long epochSeconds, int window) {
+        int expected = parseCode(code);
+        if (expected < 0 || secret == null || secret.isEmpty()) {
+            return -1;
+        }
+        HmacState state = hmac.acquire();
+        try {
+            SecretKeySpec key = keys.get(secret, TotpVerifier::decode);
+            if (key == null) {
+                return -1;
+            }
+            long current = Math.floorDiv(epochSeconds, PERIOD_SECONDS);
+            long match = -1;
+            // Se calculan todos los periodos de la ventana para que el tiempo no dependa de cuál coincide
+            for (long step = current - window; step <= current + window; step++) {
+                if (state.code(key, step) == expected && match < 0) {
+                    match = step;
+                }
+            }
+            return match;
+        } finally {
+            hmac.release(state);
+        }
+    }
+
+    /**
+     * @return el código como entero, o {@code -1} si no son exactamente {@value #DIGITS} dígitos
+     */
+    private static int parseCode(String code) {
+        if (code == null || code.length() != DIGITS) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < DIGITS; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static SecretKeySpec decode(String secret) {
+        // Misma decodificación que DefaultCodeGenerator
+        byte[] bytes = new Base32().decode(secret);
+        return bytes.length == 0 ? null : new SecretKeySpec(bytes, "HmacSHA1");
+    }
+
+    /**
+     * Estado HMAC reutilizable: {@link Mac} y buffers del contador y del resultado.
+     */
+    private static final class HmacState {
+
+        private final Mac mac;
+        private final byte[] counter = new byte[8];
+        private final byte[] hash = new byte[20];
+
+        HmacState() {
+            try {
+                this.mac = Mac.getInstance("HmacSHA1");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA1 no disponible", e);
+            }
+        }
+
+        int code(SecretKeySpec key, long step) {
+            try {
+                mac.init(key);
+                for (int i = 7; i >= 0; i--) {
+                    counter[i] = (byte) step;
+                    step >>>= 8;
+                }
+                mac.update(counter);
+                mac.doFinal(hash, 0);
+            } catch (InvalidKeyException | ShortBufferException e) {
+                throw new IllegalStateException("No se pudo calcular el código TOTP", e);
+            }
+            // Truncado dinámico (RFC 4226, sección 5.3)
+            int offset = hash[hash.length - 1] & 0xF;
+            int binary = (hash[offset] & 0x7F) << 24
+                    | (hash[offset + 1] & 0xFF) << 16
+                    | (hash[offset + 2] & 0xFF) << 8
+                    | (hash[offset + 3] & 0xFF);
+            return binary % MODULUS;
+        }
+    }
+}
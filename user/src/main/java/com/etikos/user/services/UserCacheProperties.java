@@ -0,0 +1,36 @@
+package com.etikos.user.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "users.cache")
+public class UserCacheProperties {
+
+    /**
+     * Número máximo de documentos de usuario en memoria.
+     */
+    private long maxSize = 10_000;
+
+    /**
+     * Tiempo de vida de cada documento desde que se leyó de Firestore. Acota lo que tarda en verse
+     * en esta instancia un cambio hecho desde otra instancia o desde la consola de Firebase.
+     */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+}
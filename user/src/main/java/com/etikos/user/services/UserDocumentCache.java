@@ -0,0 +1,69 @@
+package com.etikos.user.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.etikos.user.store.UserProjection;
+import com.etikos.user.store.UserRecord;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caché en memoria de los usuarios leídos del {@link com.etikos.user.store.UserStore} (campos de
+ * {@link UserProjection#ACCOUNT}), acotada por tamaño y por TTL.
+ * <p>
+ * Guarda la lectura en curso, no sólo su resultado: las peticiones simultáneas por el mismo uid
+ * esperan a la misma lectura del almacén sin bloquear hilos. Sólo se quedan los usuarios
+ * existentes; una lectura fallida o de un usuario inexistente no se guarda. Los métodos que
+ * modifican un usuario deben llamar a {@link #invalidate(String)} después de escribir en el almacén,
+ * lo que también descarta una lectura todavía en curso. Los cambios hechos desde otra instancia se
+ * ven, como tarde, al expirar el TTL.
+ * <p>
+ * Publica las métricas {@code cache.gets}, {@code cache.evictions}, {@code cache.size} y
+ * {@code cache.hit.ratio} con la etiqueta {@code cache=users}.
+ */
+@Component
+public class UserDocumentCache {
+
+    static final String CACHE_NAME = "users";
+
+    private final AsyncCache<String, UserRecord> cache;
+
+    public UserDocumentCache(UserCacheProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+                .tag("cache", CACHE_NAME)
+                .description("Fracción de lecturas de usuario servidas desde memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve el usuario, leyéndolo del almacén sólo si no está en memoria.
+     *
+     * @return futuro con el usuario, o con {@code null} si no existe
+     */
+    public CompletableFuture<UserRecord> get(String uid, Loader loader) {
+        // Caffeine descarta las entradas cuyo futuro termina en null o con error
+        return cache.get(uid, (key, executor) -> loader.load(key));
+    }
+
+    public void invalidate(String uid) {
+        cache.synchronous().invalidate(uid);
+    }
+
+    /**
+     * Lectura asíncrona del almacén; {@code null} si el usuario no existe.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        CompletableFuture<UserRecord> load(String uid);
+    }
+}
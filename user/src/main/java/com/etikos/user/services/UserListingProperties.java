@@ -0,0 +1,47 @@
+package com.etikos.user.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "users.listing")
+public class UserListingProperties {
+
+    /**
+     * Usuarios por página cuando {@code pageSize} no es válido.
+     */
+    private int defaultPageSize = 100;
+
+    /**
+     * Máximo de usuarios por página; los valores mayores se recortan.
+     */
+    private int maxPageSize = 1000;
+
+    /**
+     * Documentos que se leen de Firestore en cada consulta del modo streaming. En memoria hay como
+     * mucho dos lotes: el que se escribe y el siguiente, que se pide mientras tanto.
+     */
+    private int streamBatchSize = 500;
+
+    public int getDefaultPageSize() {
+        return defaultPageSize;
+    }
+
+    public void setDefaultPageSize(int defaultPageSize) {
+        this.defaultPageSize = defaultPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    public int getStreamBatchSize() {
+        return streamBatchSize;
+    }
+
+    public void setStreamBatchSize(int streamBatchSize) {
+        this.streamBatchSize = streamBatchSize;
+    }
+}
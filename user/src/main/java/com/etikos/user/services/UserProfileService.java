@@ -3,263 +3,413 @@ package com.etikos.user.services;
 import com.etikos.user.dto.LoginRequest;
 import com.etikos.user.dto.LoginResponse;
 import com.etikos.user.dto.RegisterRequest;
+import com.etikos.user.dto.UserPageResponse;
 import com.etikos.user.dto.UserProfileDto;
+import com.etikos.user.security.BoundedPasswordEncoder;
 import com.etikos.user.security.JwtService;
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
-import com.google.firebase.cloud.FirestoreClient;
+import com.etikos.user.store.UserKeyConflictException;
+import com.etikos.user.store.UserKeyIndex;
+import com.etikos.user.store.UserProjection;
+import com.etikos.user.store.UserRecord;
+import com.etikos.user.store.UserStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 @Service
 public class UserProfileService {
 
     private static final Logger log = LoggerFactory.getLogger(UserProfileService.class);
 
-    private final PasswordEncoder passwordEncoder;
+    private final BoundedPasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final TotpService totpService;
-
-    public UserProfileService(PasswordEncoder passwordEncoder, JwtService jwtService, TotpService totpService) {
+    private final UserDocumentCache userCache;
+    private final UserStore store;
+    private final PendingMfaSessions pendingMfa;
+    private final PasswordRehasher passwordRehasher;
+    private final EmailBloomFilter emailFilter;
+    private final UserListingProperties listing;
+    // Sin flush tras cada elemento: el modo streaming vacía el buffer una vez por lote
+    private final ObjectWriter streamWriter;
+
+    public UserProfileService(BoundedPasswordEncoder passwordEncoder,
+                              JwtService jwtService,
+                              TotpService totpService,
+                              UserDocumentCache userCache,
+                              UserStore store,
+                              PendingMfaSessions pendingMfa,
+                              PasswordRehasher passwordRehasher,
+                              EmailBloomFilter emailFilter,
+                              UserListingProperties listing,
+                              ObjectMapper objectMapper) {
         this.passwordEncoder = passwordEncoder;
         this.jwtService = jwtService;
         this.totpService = totpService;
+        this.userCache = userCache;
+        this.store = store;
+        this.pendingMfa = pendingMfa;
+        this.passwordRehasher = passwordRehasher;
+        this.emailFilter = emailFilter;
+        this.listing = listing;
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
-    public UserProfileDto register(RegisterRequest req) throws ExecutionException, InterruptedException {
+    public CompletableFuture<UserProfileDto> register(RegisterRequest req) {
         log.info("Attempting to register new user with email: {}", req.getEmail());
 
-        Firestore db = FirestoreClient.getFirestore();
-
-        // Verificar si el email ya existe
-        List<QueryDocumentSnapshot> existingEmail = db.collection("users")
-                .whereEqualTo("email", req.getEmail())
-                .get().get().getDocuments();
-
-        if (!existingEmail.isEmpty()) {
-            log.warn("Registration failed: Email already exists: {}", req.getEmail());
-            throw new RuntimeException("Email already exists");
-        }
-
-        // Verificar si el username ya existe
-        List<QueryDocumentSnapshot> existingUsername = db.collection("users")
-                .whereEqualTo("username", req.getUsername())
-                .get().get().getDocuments();
-
-        if (!existingUsername.isEmpty()) {
-            log.warn("Registration failed: Username already exists: {}", req.getUsername());
-            throw new RuntimeException("Username already exists");
-        }
-
-        // Crear nuevo documento con ID autogenerado
-        String uid = db.collection("users").document().getId();
-
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("uid", uid);
-        userData.put("username", req.getUsername());
-        userData.put("email", req.getEmail());
-        userData.put("password", passwordEncoder.encode(req.getPassword()));
-        userData.put("name", req.getName());
-        userData.put("lastname", req.getLastname());
-        userData.put("role", "CUSTOMER");
-        userData.put("disabled", false);
-        userData.put("createdAt", com.google.cloud.Timestamp.now());
-        userData.put("updatedAt", com.google.cloud.Timestamp.now());
-        userData.put("biometricEnabled", false); // Nuevo campo para biometría
-        userData.put("totpEnabled", false); // Campo para TOTP (Google Authenticator)
-        userData.put("totpSecret", null); // Secreto TOTP (se genera cuando se habilita)
-
-        db.collection("users").document(uid).set(userData).get();
-
-        log.info("User registered successfully: {} ({})", req.getEmail(), uid);
-        return mapToDto(userData);
+        // Antes de escribir: si el registro falla sólo queda un falso positivo en el filtro
+        emailFilter.add(req.getEmail());
+
+        return passwordEncoder.encodeAsync(req.getPassword()).thenCompose(passwordHash -> {
+            Map<String, Object> userData = new HashMap<>();
+            userData.put("username", req.getUsername());
+            userData.put("email", req.getEmail());
+            userData.put("password", passwordHash);
+            userData.put("name", req.getName());
+            userData.put("lastname", req.getLastname());
+            userData.put("role", "CUSTOMER");
+            userData.put("disabled", false);
+            userData.put("biometricEnabled", false); // Nuevo campo para biometría
+            userData.put("totpEnabled", false); // Campo para TOTP (Google Authenticator)
+            userData.put("totpSecret", null); // Secreto TOTP (se genera cuando se habilita)
+
+            // El almacén reclama email y username a la vez que crea el usuario: dos registros
+            // simultáneos con el mismo email no pueden terminar ambos
+            return store.create(userData).whenComplete((user, error) -> {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof UserKeyConflictException conflict) {
+                    log.warn("Registration failed: {}: {} / {}", conflict.getMessage(), req.getEmail(), req.getUsername());
+                }
+            }).thenApply(user -> {
+                log.info("User registered successfully: {} ({})", req.getEmail(), user.getId());
+                return recordToDto(user);
+            });
+        });
     }
 
-    public LoginResponse login(LoginRequest req) throws ExecutionException, InterruptedException {
+    public CompletableFuture<LoginResponse> login(LoginRequest req) {
         log.info("Login attempt for email: {}", req.getEmail());
 
-        Firestore db = FirestoreClient.getFirestore();
-
-        // Buscar usuario por email
-        List<QueryDocumentSnapshot> docs = db.collection("users")
-                .whereEqualTo("email", req.getEmail())
-                .get().get().getDocuments();
-
-        if (docs.isEmpty()) {
+        // Un email que el filtro no conoce seguro que no está registrado: se rechaza sin leer el almacén
+        if (!emailFilter.mightExist(req.getEmail())) {
             log.warn("Login failed: User not found with email: {}", req.getEmail());
-            throw new LoginFailedException("Invalid email or password", "USER_NOT_FOUND");
+            return CompletableFuture.failedFuture(new LoginFailedException("Invalid email or password", "USER_NOT_FOUND"));
         }
 
-        QueryDocumentSnapshot userDoc = docs.get(0);
-
-        // Verificar si está bloqueado
-        Boolean disabled = userDoc.getBoolean("disabled");
-        if (disabled != null && disabled) {
-            log.warn("Login failed: Account disabled for email: {}", req.getEmail());
-            throw new LoginFailedException("User account is disabled", "ACCOUNT_DISABLED");
-        }
-
-        // Verificar contraseña
-        String storedPassword = userDoc.getString("password");
-        if (storedPassword == null || !passwordEncoder.matches(req.getPassword(), storedPassword)) {
-            log.warn("Login failed: Invalid password for email: {}", req.getEmail());
-            throw new LoginFailedException("Invalid email or password", "INVALID_PASSWORD");
-        }
+        // Buscar usuario por email: índice de emails y usuario, sin caché (contraseña y bloqueo al día)
+        return store.findUidByEmail(req.getEmail())
+                .thenCompose(uid -> uid != null ? findUserForAuth(uid) : CompletableFuture.completedFuture(null))
+                .thenCompose(userDoc -> {
+                    if (userDoc == null || !UserKeyIndex.normalizeEmail(req.getEmail())
+                            .equals(UserKeyIndex.normalizeEmail(userDoc.getString("email")))) {
+                        log.warn("Login failed: User not found with email: {}", req.getEmail());
+                        throw new LoginFailedException("Invalid email or password", "USER_NOT_FOUND");
+                    }
+
+                    // Verificar si está bloqueado
+                    Boolean disabled = userDoc.getBoolean("disabled");
+                    if (disabled != null && disabled) {
+                        log.warn("Login failed: Account disabled for email: {}", req.getEmail());
+                        throw new LoginFailedException("User account is disabled", "ACCOUNT_DISABLED");
+                    }
+
+                    // Verificar contraseña
+                    String storedPassword = userDoc.getString("password");
+                    if (storedPassword == null) {
+                        log.warn("Login failed: Invalid password for email: {}", req.getEmail());
+                        throw new LoginFailedException("Invalid email or password", "INVALID_PASSWORD");
+                    }
+                    return passwordEncoder.matchesAsync(req.getPassword(), storedPassword).thenApply(matches -> {
+                        if (!matches) {
+                            log.warn("Login failed: Invalid password for email: {}", req.getEmail());
+                            throw new LoginFailedException("Invalid email or password", "INVALID_PASSWORD");
+                        }
+                        String uid = userDoc.getId();
+
+                        // Contraseña correcta: si su hash no tiene el coste calibrado, se rehace en segundo plano
+                        passwordRehasher.rehashIfNeeded(uid, req.getPassword(), storedPassword);
+
+                        LoginResponse response = completeLogin(uid, userDoc);
+                        if (!response.isTotpRequired()) {
+                            log.info("Login successful for user: {} ({})", req.getEmail(), uid);
+                        } else {
+                            log.info("TOTP required for user: {}", req.getEmail());
+                        }
+                        return response;
+                    });
+                });
+    }
 
+    /**
+     * Último paso del login con contraseña o biometría: JWT, o sesión pendiente si tiene TOTP.
+     */
+    private LoginResponse completeLogin(String uid, UserRecord userDoc) {
         // Verificar si el usuario tiene TOTP habilitado
         Boolean totpEnabled = userDoc.getBoolean("totpEnabled");
         if (totpEnabled != null && totpEnabled) {
             // Si tiene TOTP habilitado, no generar token aún, requerir código TOTP
-            log.info("TOTP required for user: {}", req.getEmail());
-
-            String uid = userDoc.getString("uid");
+            UserProfileDto user = recordToDto(userDoc);
             LoginResponse response = new LoginResponse();
             response.setTotpRequired(true);
-            response.setTempSessionId(uid); // Usar el UID como identificador temporal
-            response.setUser(documentToDto(userDoc));
+            response.setTempSessionId(openPendingMfa(uid, userDoc, user));
+            response.setUser(user);
             // No se envía token aún
 
             return response;
         }
 
         // Si no tiene TOTP, generar token JWT normalmente
-        String uid = userDoc.getString("uid");
         String username = userDoc.getString("username");
         String role = userDoc.getString("role");
 
         String token = jwtService.generateToken(username, role, uid);
 
-        log.info("Login successful for user: {} ({})", req.getEmail(), uid);
-
         LoginResponse response = new LoginResponse();
         response.setToken(token);
-        response.setUser(documentToDto(userDoc));
+        response.setUser(recordToDto(userDoc));
         response.setTotpRequired(false);
 
         return response;
     }
 
-    public List<UserProfileDto> listAll() throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        List<QueryDocumentSnapshot> docs = db.collection("users").get().get().getDocuments();
-
-        List<UserProfileDto> users = new ArrayList<>();
-        for (QueryDocumentSnapshot doc : docs) {
-            users.add(documentToDto(doc));
-        }
-        return users;
+    /**
+     * Página de usuarios ordenados por uid.
+     *
+     * @param pageToken {@code nextPageToken} de la página anterior, o {@code null} para la primera
+     * @throws IllegalArgumentException si {@code pageToken} no es válido
+     */
+    public CompletableFuture<UserPageResponse<UserProfileDto>> listUsers(int pageSize, String pageToken) {
+        return page(UserProjection.PROFILE, pageSize, pageToken, this::recordToDto);
     }
 
-    public UserProfileDto getById(String uid) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    /**
+     * Escribe todos los usuarios como un array JSON, lote a lote, sin cargar la colección en memoria.
+     */
+    public void streamUsers(OutputStream out) throws IOException {
+        stream(UserProjection.PROFILE, out, this::recordToDto);
+    }
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
+    public CompletableFuture<UserProfileDto> getById(String uid) {
+        return findUser(uid).thenApply(doc -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
 
-        return documentToDto(doc);
+            return recordToDto(doc);
+        });
     }
 
-    public void updateCredentials(String uid, String newEmail, String newPassword) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    public CompletableFuture<Void> updateCredentials(String uid, String newEmail, String newPassword) {
+        boolean changeEmail = newEmail != null && !newEmail.isBlank();
+        CompletableFuture<String> passwordHash = newPassword != null && !newPassword.isBlank()
+                ? passwordEncoder.encodeAsync(newPassword)
+                : CompletableFuture.completedFuture(null);
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
-
-        Map<String, Object> updates = new HashMap<>();
+        // Se lee el email anterior para anotarlo como borrado en el filtro si cambia
+        return findUser(uid).thenCombine(passwordHash, (doc, encoded) -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
+            Map<String, Object> updates = new HashMap<>();
+            if (changeEmail) {
+                updates.put("email", newEmail);
+                emailFilter.add(newEmail);
+            }
+            if (encoded != null) {
+                updates.put("password", encoded);
+            }
+            String previousEmail = doc.getString("email");
+            // Cambiar de email es liberar la clave anterior y reclamar la nueva a la vez
+            return store.update(uid, updates).thenAccept(updated -> {
+                if (!updated) {
+                    throw new RuntimeException("User not found");
+                }
+                if (changeEmail && previousEmail != null && !UserKeyIndex.normalizeEmail(previousEmail)
+                        .equals(UserKeyIndex.normalizeEmail(newEmail))) {
+                    emailFilter.removed(previousEmail);
+                }
+                userCache.invalidate(uid);
+            });
+        }).thenCompose(Function.identity());
+    }
 
-        if (newEmail != null && !newEmail.isBlank()) {
-            // Verificar si el nuevo email ya existe (excepto para este usuario)
-            List<QueryDocumentSnapshot> existingEmail = db.collection("users")
-                    .whereEqualTo("email", newEmail)
-                    .get().get().getDocuments();
+    public CompletableFuture<Void> setDisabled(String uid, boolean disabled) {
+        return update(uid, Map.of("disabled", disabled));
+    }
 
-            for (QueryDocumentSnapshot existing : existingEmail) {
-                if (!existing.getString("uid").equals(uid)) {
-                    throw new RuntimeException("Email already exists");
-                }
+    public CompletableFuture<Void> deleteById(String uid) {
+        // El almacén libera email y username para que puedan volver a registrarse
+        return store.delete(uid).thenAccept(deleted -> {
+            if (deleted == null) {
+                throw new RuntimeException("User not found");
             }
-            updates.put("email", newEmail);
-        }
+            emailFilter.removed(deleted.getString("email"));
+            userCache.invalidate(uid);
+        });
+    }
 
-        if (newPassword != null && !newPassword.isBlank()) {
-            updates.put("password", passwordEncoder.encode(newPassword));
-        }
+    /**
+     * Actualiza la preferencia de biometría del usuario
+     */
+    public CompletableFuture<Void> updateBiometricPreference(String uid, boolean enabled) {
+        return update(uid, Map.of("biometricEnabled", enabled));
+    }
 
-        updates.put("updatedAt", com.google.cloud.Timestamp.now());
-        db.collection("users").document(uid).update(updates).get();
+    /**
+     * Consulta si el usuario tiene biometría habilitada
+     */
+    public CompletableFuture<Boolean> getBiometricPreference(String uid) {
+        return findUser(uid).thenApply(doc -> {
+            if (doc == null) {
+                return false;
+            }
+            Boolean enabled = doc.getBoolean("biometricEnabled");
+            return enabled != null && enabled;
+        });
     }
 
-    public void setDisabled(String uid, boolean disabled) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
+    /**
+     * Página del estado biométrico de los usuarios, con la misma paginación que {@link #listUsers}.
+     */
+    public CompletableFuture<UserPageResponse<Map<String, Object>>> listBiometricStatus(int pageSize, String pageToken) {
+        return page(UserProjection.BIOMETRIC_STATUS, pageSize, pageToken, UserProfileService::biometricStatus);
+    }
 
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("disabled", disabled);
-        updates.put("updatedAt", com.google.cloud.Timestamp.now());
+    /**
+     * Como {@link #streamUsers}, con el estado biométrico de cada usuario.
+     */
+    public void streamBiometricStatus(OutputStream out) throws IOException {
+        stream(UserProjection.BIOMETRIC_STATUS, out, UserProfileService::biometricStatus);
+    }
 
-        db.collection("users").document(uid).update(updates).get();
+    private static Map<String, Object> biometricStatus(UserRecord doc) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("uid", doc.getString("uid"));
+        user.put("email", doc.getString("email"));
+        user.put("username", doc.getString("username"));
+        user.put("biometricEnabled", doc.getBoolean("biometricEnabled") != null && doc.getBoolean("biometricEnabled"));
+        return user;
     }
 
-    public void deleteById(String uid) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    private <T> CompletableFuture<UserPageResponse<T>> page(UserProjection projection, int pageSize, String pageToken,
+                                                            Function<UserRecord, T> mapper) {
+        int size = pageSize >= 1 ? Math.min(pageSize, listing.getMaxPageSize()) : listing.getDefaultPageSize();
+        String after = decodePageToken(pageToken);
+        // Un usuario de más indica si hay página siguiente sin pedir una página vacía al final
+        return store.scan(projection, after, size + 1).thenApply(docs -> {
+            int count = Math.min(size, docs.size());
+            List<T> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(mapper.apply(docs.get(i)));
+            }
+            String next = docs.size() > size ? encodePageToken(docs.get(size - 1).getId()) : null;
+            return new UserPageResponse<>(items, next);
+        });
+    }
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
+    /**
+     * Recorre los usuarios en lotes de {@code stream-batch-size}: el lote siguiente se pide antes
+     * de escribir el actual, y cada lote se vacía al cliente en cuanto se escribe. Si el almacén
+     * falla a mitad, la respuesta ya empezó y sólo queda cortarla: el array se deja sin cerrar
+     * para que el cliente no lo tome por completo.
+     */
+    private <T> void stream(UserProjection projection, OutputStream out, Function<UserRecord, T> mapper)
+            throws IOException {
+        int batchSize = Math.max(1, listing.getStreamBatchSize());
+        try (JsonGenerator json = streamWriter.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            json.writeStartArray();
+            CompletableFuture<List<UserRecord>> next = store.scan(projection, null, batchSize);
+            while (next != null) {
+                List<UserRecord> docs = next.join();
+                next = docs.size() < batchSize ? null
+                        : store.scan(projection, docs.get(docs.size() - 1).getId(), batchSize);
+                for (UserRecord doc : docs) {
+                    streamWriter.writeValue(json, mapper.apply(doc));
+                }
+                json.flush();
+            }
+            json.writeEndArray();
+        } catch (RuntimeException e) {
+            log.error("User listing stream aborted", e);
+            throw new IOException("Error leyendo usuarios del almacén", e);
         }
+    }
 
-        db.collection("users").document(uid).delete().get();
+    private static String encodePageToken(String lastUid) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastUid.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * Actualiza la preferencia de biometría del usuario
+     * @return uid tras el que empieza la página, o {@code null} para la primera
      */
-    public void updateBiometricPreference(String uid, boolean enabled) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        db.collection("users").document(uid).update("biometricEnabled", enabled).get();
+    private static String decodePageToken(String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return null;
+        }
+        try {
+            String uid = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+            if (!uid.isEmpty() && uid.indexOf('/') < 0) {
+                return uid;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // se rechaza abajo
+        }
+        throw new IllegalArgumentException("Invalid page token");
     }
 
     /**
-     * Consulta si el usuario tiene biometría habilitada
+     * Lee el usuario, con los campos de {@link UserProjection#ACCOUNT}, a través de
+     * {@link UserDocumentCache}.
+     *
+     * @return futuro con el usuario, o con {@code null} si no existe
      */
-    public boolean getBiometricPreference(String uid) throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
-        Boolean enabled = doc.getBoolean("biometricEnabled");
-        return enabled != null && enabled;
+    private CompletableFuture<UserRecord> findUser(String uid) {
+        return userCache.get(uid, key -> store.findById(key, UserProjection.ACCOUNT));
     }
 
     /**
-     * Devuelve el estado de biometría de todos los usuarios (solo para admin)
+     * Lee el usuario directamente del almacén, sin {@link UserDocumentCache}. Lo usan las
+     * comprobaciones de autenticación (contraseña, bloqueo, biometría y secreto TOTP) para que un
+     * cambio hecho en otra instancia se aplique en la siguiente petición y no tras el TTL de la caché.
+     *
+     * @return futuro con el usuario, o con {@code null} si no existe
      */
-    public List<Map<String, Object>> getAllUsersBiometricStatus() throws ExecutionException, InterruptedException {
-        Firestore db = FirestoreClient.getFirestore();
-        List<QueryDocumentSnapshot> docs = db.collection("users").get().get().getDocuments();
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (QueryDocumentSnapshot doc : docs) {
-            Map<String, Object> user = new HashMap<>();
-            user.put("uid", doc.getString("uid"));
-            user.put("email", doc.getString("email"));
-            user.put("username", doc.getString("username"));
-            user.put("biometricEnabled", doc.getBoolean("biometricEnabled") != null && doc.getBoolean("biometricEnabled"));
-            result.add(user);
-        }
-        return result;
+    private CompletableFuture<UserRecord> findUserForAuth(String uid) {
+        return store.findById(uid, UserProjection.ACCOUNT);
     }
 
-    private UserProfileDto documentToDto(DocumentSnapshot doc) {
+    /**
+     * Cambia campos sueltos del usuario y lo saca de la caché.
+     */
+    private CompletableFuture<Void> update(String uid, Map<String, Object> changes) {
+        return store.update(uid, changes).thenAccept(updated -> {
+            if (!updated) {
+                throw new RuntimeException("User not found");
+            }
+            userCache.invalidate(uid);
+        });
+    }
+
+    private UserProfileDto recordToDto(UserRecord doc) {
         UserProfileDto dto = new UserProfileDto();
         dto.setUid(doc.getString("uid"));
         dto.setEmail(doc.getString("email"));
@@ -276,188 +426,171 @@ public class UserProfileService {
         return dto;
     }
 
-    private UserProfileDto mapToDto(Map<String, Object> data) {
-        UserProfileDto dto = new UserProfileDto();
-        dto.setUid((String) data.get("uid"));
-        dto.setEmail((String) data.get("email"));
-        dto.setUsername((String) data.get("username"));
-        dto.setName((String) data.get("name"));
-        dto.setLastname((String) data.get("lastname"));
-        dto.setRole((String) data.get("role"));
-        Boolean disabled = (Boolean) data.get("disabled");
-        dto.setDisabled(disabled != null && disabled);
-        Boolean biometricEnabled = (Boolean) data.get("biometricEnabled");
-        dto.setBiometricEnabled(biometricEnabled != null && biometricEnabled);
-        Boolean totpEnabled = (Boolean) data.get("totpEnabled");
-        dto.setTotpEnabled(totpEnabled != null && totpEnabled);
-        return dto;
-    }
-
     // ==================== MÉTODOS TOTP ====================
 
     /**
      * Inicia la configuración de TOTP para un usuario.
-     * Genera un secreto y devuelve el QR code para escanear con Google Authenticator
+     * Genera un secreto y devuelve la URI otpauth:// del QR para Google Authenticator
      */
-    public Map<String, String> setupTotp(String uid) throws Exception {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
-
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
-
-        String email = doc.getString("email");
+    public CompletableFuture<Map<String, String>> setupTotp(String uid) {
+        return findUser(uid).thenCompose(doc -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
 
-        // Generar un nuevo secreto TOTP
-        String secret = totpService.generateSecret();
+            String email = doc.getString("email");
 
-        // Generar QR code
-        String qrCodeDataUri = totpService.generateQrCodeDataUri(secret, email);
+            // Generar un nuevo secreto TOTP
+            String secret = totpService.generateSecret();
 
-        // Guardar el secreto temporalmente (aún no habilitado)
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("totpSecret", secret);
-        updates.put("updatedAt", com.google.cloud.Timestamp.now());
-        db.collection("users").document(uid).update(updates).get();
+            // URI otpauth:// del QR; la imagen se dibuja aparte (TotpQrRenderer)
+            String otpauthUri = totpService.generateOtpauthUri(secret, email);
 
-        log.info("TOTP setup initiated for user: {}", uid);
+            // Guardar el secreto temporalmente (aún no habilitado)
+            return update(uid, Map.of("totpSecret", secret))
+                    .thenApply(written -> {
+                        log.info("TOTP setup initiated for user: {}", uid);
 
-        Map<String, String> result = new HashMap<>();
-        result.put("secret", secret);
-        result.put("qrCodeDataUri", qrCodeDataUri);
+                        Map<String, String> result = new HashMap<>();
+                        result.put("secret", secret);
+                        result.put("otpauthUri", otpauthUri);
 
-        return result;
+                        return result;
+                    });
+        });
     }
 
     /**
      * Verifica el código TOTP y habilita TOTP para el usuario si es correcto
      */
-    public boolean verifyAndEnableTotp(String uid, String code) throws Exception {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    public CompletableFuture<Boolean> verifyAndEnableTotp(String uid, String code) {
+        return findUserForAuth(uid).thenCompose(doc -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
+            String secret = doc.getString("totpSecret");
+            if (secret == null || secret.isEmpty()) {
+                throw new RuntimeException("TOTP not set up. Please call setup first.");
+            }
 
-        String secret = doc.getString("totpSecret");
-        if (secret == null || secret.isEmpty()) {
-            throw new RuntimeException("TOTP not set up. Please call setup first.");
-        }
+            // Verificar el código TOTP
+            boolean isValid = totpService.verifyCodeOnce(uid, secret, code);
 
-        // Verificar el código TOTP
-        boolean isValid = totpService.verifyCodeWithWindow(secret, code);
+            if (!isValid) {
+                log.warn("Invalid TOTP code for user: {}", uid);
+                return CompletableFuture.completedFuture(false);
+            }
 
-        if (isValid) {
             // Habilitar TOTP
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("totpEnabled", true);
-            updates.put("updatedAt", com.google.cloud.Timestamp.now());
-            db.collection("users").document(uid).update(updates).get();
-
-            log.info("TOTP enabled successfully for user: {}", uid);
-            return true;
-        } else {
-            log.warn("Invalid TOTP code for user: {}", uid);
-            return false;
-        }
+            return update(uid, Map.of("totpEnabled", true))
+                    .thenApply(written -> {
+                        log.info("TOTP enabled successfully for user: {}", uid);
+                        return true;
+                    });
+        });
     }
 
     /**
      * Deshabilita TOTP para un usuario (requiere verificación del código actual)
      */
-    public boolean disableTotp(String uid, String code) throws Exception {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    public CompletableFuture<Boolean> disableTotp(String uid, String code) {
+        return findUserForAuth(uid).thenCompose(doc -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
+            Boolean totpEnabled = doc.getBoolean("totpEnabled");
+            if (totpEnabled == null || !totpEnabled) {
+                throw new RuntimeException("TOTP is not enabled for this user");
+            }
 
-        Boolean totpEnabled = doc.getBoolean("totpEnabled");
-        if (totpEnabled == null || !totpEnabled) {
-            throw new RuntimeException("TOTP is not enabled for this user");
-        }
+            String secret = doc.getString("totpSecret");
 
-        String secret = doc.getString("totpSecret");
+            // Verificar el código antes de deshabilitar
+            boolean isValid = totpService.verifyCodeOnce(uid, secret, code);
 
-        // Verificar el código antes de deshabilitar
-        boolean isValid = totpService.verifyCodeWithWindow(secret, code);
+            if (!isValid) {
+                log.warn("Invalid TOTP code when trying to disable for user: {}", uid);
+                return CompletableFuture.completedFuture(false);
+            }
 
-        if (isValid) {
             Map<String, Object> updates = new HashMap<>();
             updates.put("totpEnabled", false);
             updates.put("totpSecret", null); // Eliminar el secreto por seguridad
-            updates.put("updatedAt", com.google.cloud.Timestamp.now());
-            db.collection("users").document(uid).update(updates).get();
-
-            log.info("TOTP disabled successfully for user: {}", uid);
-            return true;
-        } else {
-            log.warn("Invalid TOTP code when trying to disable for user: {}", uid);
-            return false;
-        }
+            return update(uid, updates)
+                    .thenApply(written -> {
+                        log.info("TOTP disabled successfully for user: {}", uid);
+                        return true;
+                    });
+        });
     }
 
     /**
      * Login con verificación TOTP
-     * Este método se llama después del login normal cuando el usuario tiene TOTP habilitado
+     * Este método se llama después del login normal cuando el usuario tiene TOTP habilitado.
+     * Usa los datos guardados en la sesión pendiente, sin leer el almacén; la sesión se consume
+     * aunque el código sea incorrecto
      */
-    public LoginResponse loginWithTotp(String uid, String totpCode) throws Exception {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot userDoc = db.collection("users").document(uid).get().get();
+    public LoginResponse loginWithTotp(String tempSessionId, String totpCode) {
+        PendingMfaSessions.PendingMfa session = pendingMfa.consume(tempSessionId);
 
-        if (!userDoc.exists()) {
-            throw new LoginFailedException("User not found", "USER_NOT_FOUND");
+        if (session == null) {
+            log.warn("TOTP login failed: pending session not found, expired or already used");
+            throw new LoginFailedException("Login session expired, please sign in again", "MFA_SESSION_INVALID");
         }
 
-        Boolean totpEnabled = userDoc.getBoolean("totpEnabled");
-        if (totpEnabled == null || !totpEnabled) {
-            throw new RuntimeException("TOTP is not enabled for this user");
-        }
-
-        String secret = userDoc.getString("totpSecret");
+        String uid = session.uid();
+        String secret = session.totpSecret();
         if (secret == null || secret.isEmpty()) {
             throw new RuntimeException("TOTP secret not found");
         }
 
         // Verificar el código TOTP
-        boolean isValid = totpService.verifyCodeWithWindow(secret, totpCode);
+        boolean isValid = totpService.verifyCodeOnce(uid, secret, totpCode);
 
         if (!isValid) {
             log.warn("Invalid TOTP code for user: {}", uid);
-            throw new LoginFailedException("Invalid TOTP code", "INVALID_TOTP");
+            throw new LoginFailedException("Invalid TOTP code", "INVALID_TOTP", uid);
         }
 
         // Código TOTP válido, generar token JWT
-        String username = userDoc.getString("username");
-        String role = userDoc.getString("role");
-        String token = jwtService.generateToken(username, role, uid);
+        String token = jwtService.generateToken(session.username(), session.role(), uid);
 
         log.info("Login with TOTP successful for user: {}", uid);
 
         LoginResponse response = new LoginResponse();
         response.setToken(token);
-        response.setUser(documentToDto(userDoc));
+        response.setUser(session.user());
         response.setTotpRequired(false);
 
         return response;
     }
 
     /**
-     * Obtiene el estado de TOTP para un usuario
+     * Guarda lo que necesita el segundo paso del login para no volver a leer el usuario
      */
-    public boolean getTotpEnabled(String uid) throws Exception {
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot doc = db.collection("users").document(uid).get().get();
+    private String openPendingMfa(String uid, UserRecord userDoc, UserProfileDto user) {
+        return pendingMfa.open(new PendingMfaSessions.PendingMfa(
+                uid,
+                userDoc.getString("username"),
+                userDoc.getString("role"),
+                userDoc.getString("totpSecret"),
+                user));
+    }
 
-        if (!doc.exists()) {
-            throw new RuntimeException("User not found");
-        }
+    /**
+     * Obtiene el estado de TOTP para un usuario
+     */
+    public CompletableFuture<Boolean> getTotpEnabled(String uid) {
+        return findUser(uid).thenApply(doc -> {
+            if (doc == null) {
+                throw new RuntimeException("User not found");
+            }
 
-        Boolean enabled = doc.getBoolean("totpEnabled");
-        return enabled != null && enabled;
+            Boolean enabled = doc.getBoolean("totpEnabled");
+            return enabled != null && enabled;
+        });
     }
 
     /**
@@ -465,72 +598,63 @@ public class UserProfileService {
      * El frontend ya validó la identidad biométrica, aquí solo generamos el token
      * o solicitamos TOTP si está habilitado
      */
-    public LoginResponse loginWithBiometric(String uid) throws Exception {
+    public CompletableFuture<LoginResponse> loginWithBiometric(String uid) {
         log.info("Biometric login attempt for user: {}", uid);
 
-        Firestore db = FirestoreClient.getFirestore();
-        DocumentSnapshot userDoc = db.collection("users").document(uid).get().get();
-
-        if (!userDoc.exists()) {
-            log.warn("Biometric login failed: User not found: {}", uid);
-            throw new LoginFailedException("User not found", "USER_NOT_FOUND");
-        }
-
-        // Verificar si está bloqueado
-        Boolean disabled = userDoc.getBoolean("disabled");
-        if (disabled != null && disabled) {
-            log.warn("Biometric login failed: Account disabled for user: {}", uid);
-            throw new LoginFailedException("User account is disabled", "ACCOUNT_DISABLED");
-        }
-
-        // Verificar si el usuario tiene biometría habilitada
-        Boolean biometricEnabled = userDoc.getBoolean("biometricEnabled");
-        if (biometricEnabled == null || !biometricEnabled) {
-            log.warn("Biometric login failed: Biometric not enabled for user: {}", uid);
-            throw new LoginFailedException("Biometric authentication not enabled", "BIOMETRIC_NOT_ENABLED");
-        }
+        return findUserForAuth(uid).thenApply(userDoc -> {
+            if (userDoc == null) {
+                log.warn("Biometric login failed: User not found: {}", uid);
+                throw new LoginFailedException("User not found", "USER_NOT_FOUND");
+            }
 
-        // Verificar si el usuario tiene TOTP habilitado
-        Boolean totpEnabled = userDoc.getBoolean("totpEnabled");
-        if (totpEnabled != null && totpEnabled) {
-            // Si tiene TOTP habilitado, no generar token aún, requerir código TOTP
-            log.info("TOTP required for biometric login - user: {}", uid);
+            // Verificar si está bloqueado
+            Boolean disabled = userDoc.getBoolean("disabled");
+            if (disabled != null && disabled) {
+                log.warn("Biometric login failed: Account disabled for user: {}", uid);
+                throw new LoginFailedException("User account is disabled", "ACCOUNT_DISABLED");
+            }
 
-            LoginResponse response = new LoginResponse();
-            response.setTotpRequired(true);
-            response.setTempSessionId(uid);
-            response.setUser(documentToDto(userDoc));
-            // No se envía token aún
+            // Verificar si el usuario tiene biometría habilitada
+            Boolean biometricEnabled = userDoc.getBoolean("biometricEnabled");
+            if (biometricEnabled == null || !biometricEnabled) {
+                log.warn("Biometric login failed: Biometric not enabled for user: {}", uid);
+                throw new LoginFailedException("Biometric authentication not enabled", "BIOMETRIC_NOT_ENABLED");
+            }
 
+            LoginResponse response = completeLogin(uid, userDoc);
+            if (response.isTotpRequired()) {
+                log.info("TOTP required for biometric login - user: {}", uid);
+            } else {
+                log.info("Biometric login successful for user: {}", uid);
+            }
             return response;
-        }
-
-        // Si no tiene TOTP, generar token JWT normalmente
-        String username = userDoc.getString("username");
-        String role = userDoc.getString("role");
-        String token = jwtService.generateToken(username, role, uid);
-
-        log.info("Biometric login successful for user: {}", uid);
-
-        LoginResponse response = new LoginResponse();
-        response.setToken(token);
-        response.setUser(documentToDto(userDoc));
-        response.setTotpRequired(false);
-
-        return response;
+        });
     }
 
     // Excepción personalizada para login fallido
     public static class LoginFailedException extends RuntimeException {
         private final String reason;
+        private final String uid;
 
         public LoginFailedException(String message, String reason) {
+            this(message, reason, null);
+        }
+
+        public LoginFailedException(String message, String reason, String uid) {
             super(message);
             this.reason = reason;
+            this.uid = uid;
         }
 
         public String getReason() {
             return reason;
         }
+
+        /**
+         * Usuario afectado, si se conoce (para auditoría)
+         */
+        public String getUid() {
+            return uid;
+        }
     }
 }
@@ -0,0 +1,320 @@
+package com.etikos.user.store;
+
+import com.etikos.user.services.FirestoreFutures;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.cloud.FirestoreClient;
+import io.grpc.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link UserStore} sobre Firestore: cada usuario es un documento {@code users/{uid}} y la unicidad
+ * de email y username la garantiza {@link UserKeyIndex}, reclamando y liberando sus claves en la
+ * misma transacción que escribe el usuario. Las lecturas piden sólo los campos de la
+ * {@link UserProjection}.
+ */
+@Component
+@ConditionalOnProperty(name = UserStoreProperties.TYPE_PROPERTY, havingValue = "firestore", matchIfMissing = true)
+public class FirestoreUserStore implements UserStore {
+
+    static final String USERS = "users";
+
+    // Los callbacks de Firestore son cortos: se ejecutan en el hilo que completa la llamada
+    private static final Executor DIRECT = MoreExecutors.directExecutor();
+
+    private static final Map<UserProjection, FieldMask> MASKS = new EnumMap<>(UserProjection.class);
+
+    static {
+        for (UserProjection projection : UserProjection.values()) {
+            MASKS.put(projection, FieldMask.of(projection.fields().toArray(new String[0])));
+        }
+    }
+
+    private final UserKeyIndex keyIndex;
+
+    public FirestoreUserStore(UserKeyIndex keyIndex) {
+        this.keyIndex = keyIndex;
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> findById(String uid, UserProjection projection) {
+        return FirestoreFutures.toCompletable(users().document(uid).get(MASKS.get(projection)))
+                .thenApply(FirestoreUserStore::toRecord);
+    }
+
+    @Override
+    public CompletableFuture<String> findUidByEmail(String email) {
+        return keyIndex.findUidByEmail(email);
+    }
+
+    @Override
+    public CompletableFuture<String> findUidByUsername(String username) {
+        if (username == null || username.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return FirestoreFutures.toCompletable(keyIndex.usernameRef(username).get()).thenApply(UserKeyIndex::ownerOf);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsWithRole(String role) {
+        return FirestoreFutures.toCompletable(users()
+                        .whereEqualTo("role", role)
+                        .select(FieldPath.documentId())
+                        .limit(1)
+                        .get())
+                .thenApply(snapshot -> !snapshot.isEmpty());
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> create(Map<String, Object> fields) {
+        Firestore db = FirestoreClient.getFirestore();
+        // Id autogenerado
+        DocumentReference userRef = db.collection(USERS).document();
+        String uid = userRef.getId();
+
+        Map<String, Object> data = new HashMap<>(fields);
+        Timestamp now = Timestamp.now();
+        data.put("uid", uid);
+        data.put("createdAt", now);
+        data.put("updatedAt", now);
+
+        // Reclamar email y username en la misma transacción que crea el usuario: dos registros
+        // simultáneos con el mismo email no pueden terminar ambos
+        DocumentReference emailKey = keyIndex.emailRef((String) data.get("email"));
+        DocumentReference usernameKey = keyIndex.usernameRef((String) data.get("username"));
+        return transaction(db, tx -> ApiFutures.transform(tx.getAll(emailKey, usernameKey), keys -> {
+            if (UserKeyIndex.ownerOf(keys.get(0)) != null) {
+                return UserKeyConflictException.email();
+            }
+            if (UserKeyIndex.ownerOf(keys.get(1)) != null) {
+                return UserKeyConflictException.username();
+            }
+            keyIndex.claim(tx, emailKey, uid);
+            keyIndex.claim(tx, usernameKey, uid);
+            tx.create(userRef, data);
+            return null;
+        }, DIRECT)).thenApply(conflict -> {
+            // El conflicto se devuelve en vez de lanzarse dentro de la transacción para no reintentarla
+            if (conflict != null) {
+                throw conflict;
+            }
+            return new UserRecord(uid, data);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> update(String uid, Map<String, Object> changes) {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userRef = db.collection(USERS).document(uid);
+        Map<String, Object> updates = new HashMap<>(changes);
+        updates.put("updatedAt", Timestamp.now());
+
+        if (!changes.containsKey("email") && !changes.containsKey("username")) {
+            // Sin claves que mover basta una escritura, que falla con NOT_FOUND si no existe
+            return FirestoreFutures.toCompletable(userRef.update(updates)).handle((written, error) -> {
+                if (error == null) {
+                    return true;
+                }
+                if (isNotFound(error)) {
+                    return false;
+                }
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            });
+        }
+
+        return transaction(db, tx -> ApiFutures.transformAsync(get(tx, userRef, UserProjection.KEYS), doc -> {
+            if (!doc.exists()) {
+                return ApiFutures.immediateFuture((Object) Boolean.FALSE);
+            }
+            // Cambiar de email o username es liberar la clave anterior y reclamar la nueva a la vez
+            List<KeyMove> moves = new ArrayList<>(2);
+            if (changes.containsKey("email")) {
+                moves.add(move(keyIndex.emailRef((String) changes.get("email")),
+                        doc.getString("email") != null ? keyIndex.emailRef(doc.getString("email")) : null,
+                        UserKeyConflictException.email()));
+            }
+            if (changes.containsKey("username")) {
+                moves.add(move(keyIndex.usernameRef((String) changes.get("username")),
+                        doc.getString("username") != null ? keyIndex.usernameRef(doc.getString("username")) : null,
+                        UserKeyConflictException.username()));
+            }
+            List<DocumentReference> keys = new ArrayList<>(4);
+            for (KeyMove m : moves) {
+                keys.add(m.newKey());
+                if (m.oldKey() != null) {
+                    keys.add(m.oldKey());
+                }
+            }
+            return ApiFutures.transform(tx.getAll(keys.toArray(new DocumentReference[0])), snapshots -> {
+                int i = 0;
+                List<String> owners = new ArrayList<>(snapshots.size());
+                for (DocumentSnapshot key : snapshots) {
+                    owners.add(UserKeyIndex.ownerOf(key));
+                }
+                for (KeyMove m : moves) {
+                    String newOwner = owners.get(i++);
+                    if (newOwner != null && !newOwner.equals(uid)) {
+                        return (Object) m.conflict();
+                    }
+                    if (m.oldKey() != null) {
+                        keyIndex.release(tx, m.oldKey(), owners.get(i++), uid);
+                    }
+                    if (newOwner == null) {
+                        keyIndex.claim(tx, m.newKey(), uid);
+                    }
+                }
+                tx.update(userRef, updates);
+                return (Object) Boolean.TRUE;
+            }, DIRECT);
+        }, DIRECT)).thenApply(result -> {
+            if (result instanceof UserKeyConflictException conflict) {
+                throw conflict;
+            }
+            return (Boolean) result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSet(String uid, String field, Object expected, Object value) {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userRef = db.collection(USERS).document(uid);
+        return transaction(db, tx -> ApiFutures.transform(
+                tx.getAll(new DocumentReference[]{userRef}, FieldMask.of(field)), docs -> {
+                    DocumentSnapshot doc = docs.get(0);
+                    if (!doc.exists() || !Objects.equals(expected, doc.get(field))) {
+                        return false;
+                    }
+                    tx.update(userRef, field, value);
+                    return true;
+                }, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> delete(String uid) {
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference userRef = db.collection(USERS).document(uid);
+
+        return transaction(db, tx -> ApiFutures.transformAsync(get(tx, userRef, UserProjection.KEYS), doc -> {
+            if (!doc.exists()) {
+                return ApiFutures.<UserRecord>immediateFuture(null);
+            }
+            UserRecord deleted = toRecord(doc);
+            // Liberar email y username para que puedan volver a registrarse
+            String email = doc.getString("email");
+            String username = doc.getString("username");
+            List<DocumentReference> keys = new ArrayList<>(2);
+            if (email != null) {
+                keys.add(keyIndex.emailRef(email));
+            }
+            if (username != null) {
+                keys.add(keyIndex.usernameRef(username));
+            }
+            if (keys.isEmpty()) {
+                tx.delete(userRef);
+                return ApiFutures.immediateFuture(deleted);
+            }
+            return ApiFutures.transform(tx.getAll(keys.toArray(new DocumentReference[0])), owners -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    keyIndex.release(tx, keys.get(i), UserKeyIndex.ownerOf(owners.get(i)), uid);
+                }
+                tx.delete(userRef);
+                return deleted;
+            }, DIRECT);
+        }, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<List<UserRecord>> scan(UserProjection projection, String afterUid, int limit) {
+        Query query = users().select(projection.fields().toArray(new String[0]))
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        ApiFuture<QuerySnapshot> page =
+                afterUid == null ? query.get() : query.startAfter(afterUid).get();
+        return FirestoreFutures.toCompletable(page).thenApply(snapshot -> {
+            List<QueryDocumentSnapshot> docs = snapshot.getDocuments();
+            List<UserRecord> records = new ArrayList<>(docs.size());
+            for (QueryDocumentSnapshot doc : docs) {
+                records.add(toRecord(doc));
+            }
+            return records;
+        });
+    }
+
+    private record KeyMove(DocumentReference newKey, DocumentReference oldKey, UserKeyConflictException conflict) {
+    }
+
+    /**
+     * Clave nueva y, si es otra, la anterior que hay que liberar.
+     */
+    private static KeyMove move(DocumentReference newKey, DocumentReference oldKey, UserKeyConflictException conflict) {
+        return new KeyMove(newKey, oldKey != null && !oldKey.equals(newKey) ? oldKey : null, conflict);
+    }
+
+    /**
+     * Lectura con máscara dentro de la transacción: {@link Transaction#get(DocumentReference)} no
+     * la admite, {@code getAll} sí.
+     */
+    private static ApiFuture<DocumentSnapshot> get(Transaction tx, DocumentReference ref, UserProjection projection) {
+        return ApiFutures.transform(tx.getAll(new DocumentReference[]{ref}, MASKS.get(projection)),
+                docs -> docs.get(0), DIRECT);
+    }
+
+    /**
+     * Transacción de Firestore cuyas lecturas y escrituras se encadenan sin bloquear; la función se
+     * vuelve a ejecutar si hay conflicto, así que sólo debe leer y escribir a través de {@code tx}.
+     */
+    private static <T> CompletableFuture<T> transaction(Firestore db, Transaction.AsyncFunction<T> function) {
+        return FirestoreFutures.toCompletable(db.runAsyncTransaction(function));
+    }
+
+    private static UserRecord toRecord(DocumentSnapshot doc) {
+        if (!doc.exists()) {
+            return null;
+        }
+        Map<String, Object> data = doc.getData();
+        return new UserRecord(doc.getId(), data != null ? data : Map.of());
+    }
+
+    private static boolean isNotFound(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof FirestoreException e && e.getStatus() != null
+                    && e.getStatus().getCode() == Status.Code.NOT_FOUND) {
+                return true;
+            }
+            if (t instanceof ApiException e && e.getStatusCode().getCode() == StatusCode.Code.NOT_FOUND) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static CollectionReference users() {
+        return FirestoreClient.getFirestore().collection(USERS);
+    }
+}
@@ -0,0 +1,341 @@
+package com.etikos.user.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link UserStore} embebido sobre MVStore (el motor de almacenamiento de H2), en un fichero local
+ * o en memoria. Para despliegues de un solo nodo, benchmarks sin la latencia de Firestore y pruebas
+ * sin Google Cloud; no se comparte entre instancias.
+ * <p>
+ * Cada usuario se guarda como JSON en el mapa {@code users}, ordenado por uid. Los índices
+ * secundarios son mapas propios: {@code emails} (email normalizado → uid), {@code usernames}
+ * (username → uid) y {@code roles} ({@code rol\0uid}). Las lecturas no toman ningún lock. Las
+ * escrituras se serializan con un lock, comprueban las claves únicas, actualizan usuario e índices
+ * y confirman con {@link MVStore#commit()}: el autocommit está desactivado, así que cada operación
+ * llega al disco entera o no llega.
+ */
+@Component
+@ConditionalOnProperty(name = UserStoreProperties.TYPE_PROPERTY, havingValue = "embedded")
+public class MvStoreUserStore implements UserStore, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MvStoreUserStore.class);
+    private static final String ID_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int ID_LENGTH = 20;
+    private static final char ROLE_SEPARATOR = '\0';
+
+    private final MVStore store;
+    private final MVMap<String, byte[]> users;
+    private final MVMap<String, String> emails;
+    private final MVMap<String, String> usernames;
+    private final MVMap<String, String> roles;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SecureRandom random = new SecureRandom();
+
+    public MvStoreUserStore(UserStoreProperties properties, ObjectMapper objectMapper) {
+        String path = properties.getPath();
+        MVStore.Builder builder = new MVStore.Builder().autoCommitDisabled();
+        if (path != null && !path.isBlank()) {
+            createParentDirectories(Path.of(path));
+            builder.fileName(path);
+        }
+        this.store = builder.open();
+        this.users = store.openMap("users");
+        this.emails = store.openMap("emails");
+        this.usernames = store.openMap("usernames");
+        this.roles = store.openMap("roles");
+        this.reader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {
+        });
+        this.writer = objectMapper.writer();
+        log.info("Almacén de usuarios embebido en {} ({} usuarios)",
+                path == null || path.isBlank() ? "memoria" : path, users.size());
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> findById(String uid, UserProjection projection) {
+        return complete(() -> {
+            Map<String, Object> user = read(uid);
+            return user != null ? project(uid, user, projection) : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> findUidByEmail(String email) {
+        return complete(() -> email == null || email.isBlank() ? null : emails.get(UserKeyIndex.normalizeEmail(email)));
+    }
+
+    @Override
+    public CompletableFuture<String> findUidByUsername(String username) {
+        return complete(() -> username == null || username.isEmpty() ? null : usernames.get(username));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsWithRole(String role) {
+        return complete(() -> {
+            String prefix = role + ROLE_SEPARATOR;
+            String first = roles.ceilingKey(prefix);
+            return first != null && first.startsWith(prefix);
+        });
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> create(Map<String, Object> fields) {
+        return complete(() -> {
+            String email = UserKeyIndex.normalizeEmail((String) fields.get("email"));
+            String username = (String) fields.get("username");
+            if (email == null || email.isEmpty() || username == null || username.isEmpty()) {
+                throw new IllegalArgumentException("La clave no puede estar vacía");
+            }
+            return write(() -> {
+                if (emails.containsKey(email)) {
+                    throw UserKeyConflictException.email();
+                }
+                if (usernames.containsKey(username)) {
+                    throw UserKeyConflictException.username();
+                }
+                String uid = newId();
+                Map<String, Object> data = new HashMap<>(fields);
+                long now = System.currentTimeMillis();
+                data.put("uid", uid);
+                data.put("createdAt", now);
+                data.put("updatedAt", now);
+
+                users.put(uid, toJson(data));
+                emails.put(email, uid);
+                usernames.put(username, uid);
+                indexRole(uid, null, (String) data.get("role"));
+                return new UserRecord(uid, data);
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> update(String uid, Map<String, Object> changes) {
+        return complete(() -> write(() -> {
+            Map<String, Object> user = read(uid);
+            if (user == null) {
+                return false;
+            }
+            // Primero se comprueban las claves nuevas: un conflicto no deja nada a medias
+            String oldEmail = UserKeyIndex.normalizeEmail((String) user.get("email"));
+            String newEmail = changes.containsKey("email")
+                    ? UserKeyIndex.normalizeEmail((String) changes.get("email")) : oldEmail;
+            String oldUsername = (String) user.get("username");
+            String newUsername = changes.containsKey("username") ? (String) changes.get("username") : oldUsername;
+            if (!Objects.equals(oldEmail, newEmail) && isTakenByOther(emails, newEmail, uid)) {
+                throw UserKeyConflictException.email();
+            }
+            if (!Objects.equals(oldUsername, newUsername) && isTakenByOther(usernames, newUsername, uid)) {
+                throw UserKeyConflictException.username();
+            }
+
+            String oldRole = (String) user.get("role");
+            user.putAll(changes);
+            user.put("updatedAt", System.currentTimeMillis());
+            users.put(uid, toJson(user));
+            moveKey(emails, oldEmail, newEmail, uid);
+            moveKey(usernames, oldUsername, newUsername, uid);
+            indexRole(uid, oldRole, (String) user.get("role"));
+            return true;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSet(String uid, String field, Object expected, Object value) {
+        return complete(() -> write(() -> {
+            Map<String, Object> user = read(uid);
+            if (user == null || !Objects.equals(expected, user.get(field))) {
+                return false;
+            }
+            user.put(field, value);
+            users.put(uid, toJson(user));
+            return true;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<UserRecord> delete(String uid) {
+        return complete(() -> write(() -> {
+            Map<String, Object> user = read(uid);
+            if (user == null) {
+                return null;
+            }
+            users.remove(uid);
+            moveKey(emails, UserKeyIndex.normalizeEmail((String) user.get("email")), null, uid);
+            moveKey(usernames, (String) user.get("username"), null, uid);
+            indexRole(uid, (String) user.get("role"), null);
+            return project(uid, user, UserProjection.KEYS);
+        }));
+    }
+
+    @Override
+    public CompletableFuture<List<UserRecord>> scan(UserProjection projection, String afterUid, int limit) {
+        return complete(() -> {
+            List<UserRecord> page = new ArrayList<>(Math.min(limit, 1_000));
+            String from = afterUid == null ? users.firstKey() : users.higherKey(afterUid);
+            if (from == null) {
+                return page;
+            }
+            Cursor<String, byte[]> cursor = users.cursor(from);
+            while (page.size() < limit && cursor.hasNext()) {
+                String uid = cursor.next();
+                page.add(project(uid, read(cursor.getValue()), projection));
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        store.close();
+    }
+
+    /**
+     * Escritura con el lock tomado que se confirma entera o, si falla, se descarta con
+     * {@link MVStore#rollback()}.
+     */
+    private <T> T write(Supplier<T> operation) {
+        writeLock.lock();
+        try {
+            T result = operation.get();
+            store.commit();
+            return result;
+        } catch (RuntimeException e) {
+            store.rollback();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Map<String, Object> read(String uid) {
+        byte[] json = users.get(uid);
+        return json != null ? read(json) : null;
+    }
+
+    private Map<String, Object> read(byte[] json) {
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] toJson(Map<String, Object> user) {
+        try {
+            return writer.writeValueAsBytes(user);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static UserRecord project(String uid, Map<String, Object> user, UserProjection projection) {
+        Map<String, Object> fields = new HashMap<>();
+        for (String field : projection.fields()) {
+            if (user.containsKey(field)) {
+                fields.put(field, user.get(field));
+            }
+        }
+        return new UserRecord(uid, fields);
+    }
+
+    private static boolean isTakenByOther(MVMap<String, String> index, String key, String uid) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("La clave no puede estar vacía");
+        }
+        String owner = index.get(key);
+        return owner != null && !owner.equals(uid);
+    }
+
+    /**
+     * Libera la clave anterior si es de {@code uid} y reclama la nueva.
+     */
+    private static void moveKey(MVMap<String, String> index, String oldKey, String newKey, String uid) {
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        if (oldKey != null) {
+            index.remove(oldKey, uid);
+        }
+        if (newKey != null) {
+            index.put(newKey, uid);
+        }
+    }
+
+    private void indexRole(String uid, String oldRole, String newRole) {
+        if (Objects.equals(oldRole, newRole)) {
+            return;
+        }
+        if (oldRole != null) {
+            roles.remove(oldRole + ROLE_SEPARATOR + uid);
+        }
+        if (newRole != null) {
+            roles.put(newRole + ROLE_SEPARATOR + uid, "");
+        }
+    }
+
+    /**
+     * Id aleatorio como los que genera Firestore; se llama dentro de {@link #write(Supplier)}.
+     */
+    private String newId() {
+        String id;
+        do {
+            char[] chars = new char[ID_LENGTH];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = ID_ALPHABET.charAt(random.nextInt(ID_ALPHABET.length()));
+            }
+            id = new String(chars);
+        } while (users.containsKey(id));
+        return id;
+    }
+
+    /**
+     * Las operaciones son locales y se hacen en el hilo que llama; sus errores, igual que los de
+     * Firestore, completan el futuro en vez de lanzarse.
+     */
+    private static <T> CompletableFuture<T> complete(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static void createParentDirectories(Path file) {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(parent);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el directorio del almacén de usuarios", e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.etikos.user.store;
+
+/**
+ * El email o el username ya pertenecen a otro usuario. El mensaje es el que recibe el cliente
+ * ({@code GlobalExceptionHandler} responde 400).
+ */
+public class UserKeyConflictException extends RuntimeException {
+
+    public static UserKeyConflictException email() {
+        return new UserKeyConflictException("Email already exists");
+    }
+
+    public static UserKeyConflictException username() {
+        return new UserKeyConflictException("Username already exists");
+    }
+
+    private UserKeyConflictException(String message) {
+        super(message);
+    }
+}
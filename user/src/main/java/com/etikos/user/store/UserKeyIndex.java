@@ -0,0 +1,118 @@
+package com.etikos.user.store;
+
+import com.etikos.user.services.FirestoreFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Índice de claves únicas de usuario en Firestore: cada email normalizado y cada username tiene
+ * un documento {@code emails/{email}} o {@code usernames/{username}} con el {@code uid} de su
+ * dueño. Así el login llega al usuario con una lectura por id en vez de una query, y la unicidad
+ * se garantiza creando la clave en la misma transacción que el usuario.
+ * <p>
+ * Las claves se reclaman y liberan siempre dentro de una transacción que también lee o escribe
+ * {@code users/{uid}}; ver {@link FirestoreUserStore} y
+ * {@link com.etikos.user.config.UserKeyIndexMigrator}, que crea las claves de los usuarios anteriores.
+ */
+@Component
+@ConditionalOnProperty(name = UserStoreProperties.TYPE_PROPERTY, havingValue = "firestore", matchIfMissing = true)
+public class UserKeyIndex {
+
+    public static final String EMAILS = "emails";
+    static final String USERNAMES = "usernames";
+
+    /**
+     * Email en la forma usada como clave: sin espacios alrededor y en minúsculas.
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public DocumentReference emailRef(String email) {
+        return db().collection(EMAILS).document(documentId(normalizeEmail(email)));
+    }
+
+    public DocumentReference usernameRef(String username) {
+        return db().collection(USERNAMES).document(documentId(username));
+    }
+
+    /**
+     * Busca el uid dueño del email con una lectura por id, sin bloquear.
+     *
+     * @return futuro con el uid, o con {@code null} si ningún usuario tiene ese email
+     */
+    public CompletableFuture<String> findUidByEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return FirestoreFutures.toCompletable(emailRef(email).get()).thenApply(UserKeyIndex::ownerOf);
+    }
+
+    /**
+     * Lee dentro de la transacción el uid dueño de la clave.
+     *
+     * @return el uid, o {@code null} si la clave está libre
+     */
+    public String owner(Transaction tx, DocumentReference key) throws ExecutionException, InterruptedException {
+        return ownerOf(tx.get(key).get());
+    }
+
+    /**
+     * Crea la clave para {@code uid}. La transacción falla si otra la creó después de leerla.
+     */
+    public void claim(Transaction tx, DocumentReference key, String uid) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", uid);
+        data.put("createdAt", Timestamp.now());
+        tx.create(key, data);
+    }
+
+    /**
+     * Borra la clave sólo si pertenece a {@code uid}; {@code owner} es lo leído antes en la transacción.
+     */
+    public void release(Transaction tx, DocumentReference key, String owner, String uid) {
+        if (uid.equals(owner)) {
+            tx.delete(key);
+        }
+    }
+
+    /**
+     * Uid dueño de una clave ya leída (por ejemplo con {@code Transaction#getAll}).
+     *
+     * @return el uid, o {@code null} si la clave está libre
+     */
+    static String ownerOf(DocumentSnapshot key) {
+        return key.exists() ? key.getString("uid") : null;
+    }
+
+    /**
+     * Convierte un valor en un id de documento válido y sin colisiones: escapa {@code %} y
+     * {@code /}, y el primer carácter de los ids reservados ({@code .}, {@code ..}, {@code __x__}).
+     */
+    public static String documentId(String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("La clave no puede estar vacía");
+        }
+        String id = value.replace("%", "%25").replace("/", "%2F");
+        if (id.equals(".") || id.equals("..") || (id.length() >= 4 && id.startsWith("__") && id.endsWith("__"))) {
+            id = String.format("%%%02X", (int) id.charAt(0)) + id.substring(1);
+        }
+        return id;
+    }
+
+    private static Firestore db() {
+        return FirestoreClient.getFirestore();
+    }
+}
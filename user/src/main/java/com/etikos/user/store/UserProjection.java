@@ -0,0 +1,63 @@
+package com.etikos.user.store;
+
+import java.util.List;
+
+/**
+ * Campos de un usuario que lee cada consulta. {@link FirestoreUserStore} los convierte en una
+ * máscara de Firestore, que sólo envía esos campos, así que cada lectura declara los que usa: menos
+ * bytes por documento, menos que deserializar y ni el hash de la contraseña ni el secreto TOTP
+ * salen de Firestore si la consulta no los necesita. {@link MvStoreUserStore} aplica la misma
+ * proyección para que los dos almacenes devuelvan lo mismo.
+ * <p>
+ * Un campo que se empiece a leer en un usuario proyectado debe añadirse aquí; si no, el usuario
+ * llega sin él y {@code getString}/{@code getBoolean} devuelven {@code null}.
+ */
+public enum UserProjection {
+
+    /**
+     * Perfil público: lo que devuelve {@code UserProfileDto}.
+     */
+    PROFILE("uid", "email", "username", "name", "lastname", "role", "disabled", "biometricEnabled", "totpEnabled"),
+
+    /**
+     * Usuario que guarda {@code UserDocumentCache}: el perfil más lo que necesitan el login
+     * (contraseña) y TOTP (secreto). Deja fuera {@code createdAt}, {@code updatedAt} y cualquier
+     * campo que no use el servicio.
+     */
+    ACCOUNT(PROFILE, "password", "totpSecret"),
+
+    /**
+     * Informe de biometría de {@code GET /users/biometric-status}.
+     */
+    BIOMETRIC_STATUS("uid", "email", "username", "biometricEnabled"),
+
+    /**
+     * Claves únicas que hay que liberar o reclamar.
+     */
+    KEYS("email", "username"),
+
+    /**
+     * Hash actual, para comprobar que no cambió antes de rehacerlo.
+     */
+    PASSWORD("password");
+
+    private final List<String> fields;
+
+    UserProjection(String... fields) {
+        this.fields = List.of(fields);
+    }
+
+    UserProjection(UserProjection base, String... extra) {
+        this(concat(base.fields, extra));
+    }
+
+    public List<String> fields() {
+        return fields;
+    }
+
+    private static String[] concat(List<String> base, String[] extra) {
+        String[] all = base.toArray(new String[base.size() + extra.length]);
+        System.arraycopy(extra, 0, all, base.size(), extra.length);
+        return all;
+    }
+}
@@ -0,0 +1,44 @@
+package com.etikos.user.store;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Usuario leído de un {@link UserStore}: su uid y los campos de la proyección pedida. Los campos
+ * que no estaban en la proyección, o que el usuario no tiene, devuelven {@code null}.
+ * <p>
+ * {@code createdAt} y {@code updatedAt} los pone cada almacén con su propio tipo
+ * ({@code com.google.cloud.Timestamp} en Firestore, milisegundos en el almacén embebido).
+ */
+public final class UserRecord {
+
+    private final String id;
+    private final Map<String, Object> data;
+
+    public UserRecord(String id, Map<String, Object> data) {
+        this.id = id;
+        // Los campos pueden valer null (totpSecret), así que no vale Map.copyOf
+        this.data = Collections.unmodifiableMap(new HashMap<>(data));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Object get(String field) {
+        return data.get(field);
+    }
+
+    public String getString(String field) {
+        return (String) data.get(field);
+    }
+
+    public Boolean getBoolean(String field) {
+        return (Boolean) data.get(field);
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+}
@@ -0,0 +1,77 @@
+package com.etikos.user.store;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Almacén de usuarios. {@link FirestoreUserStore} guarda los usuarios en Firestore (la opción por
+ * defecto) y {@link MvStoreUserStore} en un fichero local, para desplegar en un solo nodo, medir
+ * sin red o probar sin Google Cloud. Se elige con {@code users.store.type}.
+ * <p>
+ * Cada usuario tiene un uid y campos con nombre (los de {@link UserProjection}). Email y username
+ * son únicos: los emails se comparan normalizados ({@link UserKeyIndex#normalizeEmail(String)}) y
+ * los usernames tal cual. Toda operación que reclama o libera una de esas claves lo hace de forma
+ * atómica con la escritura del usuario.
+ * <p>
+ * Todos los métodos devuelven un futuro y no bloquean el hilo que llama más de lo que cuesta una
+ * operación local. Los fallos del almacén completan el futuro con error.
+ */
+public interface UserStore {
+
+    /**
+     * @return futuro con el usuario y los campos de {@code projection}, o con {@code null} si no existe
+     */
+    CompletableFuture<UserRecord> findById(String uid, UserProjection projection);
+
+    /**
+     * @return futuro con el uid dueño del email, o con {@code null} si ningún usuario lo tiene
+     */
+    CompletableFuture<String> findUidByEmail(String email);
+
+    /**
+     * @return futuro con el uid dueño del username, o con {@code null} si ningún usuario lo tiene
+     */
+    CompletableFuture<String> findUidByUsername(String username);
+
+    CompletableFuture<Boolean> existsWithRole(String role);
+
+    /**
+     * Crea un usuario con un uid nuevo y reclama su email y su username. Añade {@code uid},
+     * {@code createdAt} y {@code updatedAt} a los campos.
+     *
+     * @return futuro con el usuario creado; falla con {@link UserKeyConflictException} si el email
+     * o el username ya tienen dueño, y entonces no se crea nada
+     */
+    CompletableFuture<UserRecord> create(Map<String, Object> fields);
+
+    /**
+     * Cambia los campos indicados y {@code updatedAt}. Si cambia el email o el username, libera la
+     * clave anterior y reclama la nueva en la misma operación.
+     *
+     * @return futuro con {@code false} si el usuario no existe; falla con
+     * {@link UserKeyConflictException} si la clave nueva ya es de otro usuario
+     */
+    CompletableFuture<Boolean> update(String uid, Map<String, Object> changes);
+
+    /**
+     * Cambia {@code field} a {@code value} sólo si todavía vale {@code expected}.
+     *
+     * @return futuro con {@code true} si se escribió
+     */
+    CompletableFuture<Boolean> compareAndSet(String uid, String field, Object expected, Object value);
+
+    /**
+     * Borra el usuario y libera su email y su username.
+     *
+     * @return futuro con el email y el username que tenía ({@link UserProjection#KEYS}), o con
+     * {@code null} si no existía
+     */
+    CompletableFuture<UserRecord> delete(String uid);
+
+    /**
+     * Hasta {@code limit} usuarios ordenados por uid, empezando después de {@code afterUid}
+     * ({@code null} para empezar por el primero).
+     */
+    CompletableFuture<List<UserRecord>> scan(UserProjection projection, String afterUid, int limit);
+}
@@ -0,0 +1,44 @@
+package com.etikos.user.store;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "users.store")
+public class UserStoreProperties {
+
+    /**
+     * Propiedad que elige el almacén; las piezas propias de Firestore (inicialización de Firebase,
+     * migración del índice de claves, filtro de emails) sólo se activan con {@code firestore}.
+     */
+    public static final String TYPE_PROPERTY = "users.store.type";
+
+    public enum Type {
+        FIRESTORE,
+        EMBEDDED
+    }
+
+    /**
+     * Dónde se guardan los usuarios: {@code firestore} o {@code embedded} (fichero MVStore local).
+     */
+    private Type type = Type.FIRESTORE;
+
+    /**
+     * Fichero del almacén embebido. Vacío: en memoria, se pierde al parar (pruebas y benchmarks).
+     */
+    private String path = "data/users.mv.db";
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+}
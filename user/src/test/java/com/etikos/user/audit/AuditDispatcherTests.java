@@ -0,0 +1,274 @@
+package com.etikos.user.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AuditDispatcher} contra un servicio de auditoría simulado con el servidor HTTP del JDK.
+ */
+class AuditDispatcherTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @TempDir
+    Path spillDirectory;
+
+    private HttpServer server;
+    private volatile CountDownLatch releaseSends = new CountDownLatch(0);
+    private volatile int status = 200;
+    private final List<String> invalid = new CopyOnWriteArrayList<>();
+    private volatile int maxBatchSize = Integer.MAX_VALUE;
+    private AuditDispatcher dispatcher;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/audits/batch", this::handleBatch);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        releaseSends.countDown();
+        if (dispatcher != null && dispatcher.isRunning()) {
+            dispatcher.stop();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void blockPolicyFailsAfterTimeoutWhenQueueIsFull() throws Exception {
+        dispatcher = fillQueue(AuditOverflowPolicy.BLOCK);
+
+        long start = System.nanoTime();
+        assertThrows(AuditClientException.class, () -> dispatcher.enqueue(event("user-3")));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), "espera block-timeout");
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        releaseSends.countDown();
+        await(() -> received.size() == 2);
+        assertEquals(List.of("user-1", "user-2"), received);
+    }
+
+    @Test
+    void dropOldestPolicyKeepsTheNewestEvent() throws Exception {
+        dispatcher = fillQueue(AuditOverflowPolicy.DROP_OLDEST);
+
+        dispatcher.enqueue(event("user-3"));
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        releaseSends.countDown();
+        await(() -> received.size() == 2);
+        assertEquals(List.of("user-1", "user-3"), received);
+    }
+
+    @Test
+    void spillPolicyWritesOverflowToDiskAndReplaysIt() throws Exception {
+        dispatcher = fillQueue(AuditOverflowPolicy.SPILL);
+
+        dispatcher.enqueue(event("user-3"));
+        assertEquals(1, dispatcher.getSpilledCount());
+        assertEquals(0, dispatcher.getDroppedCount());
+
+        // Cuando la cola se vacía el worker reenvía lo guardado
+        releaseSends.countDown();
+        await(() -> received.size() == 3);
+        assertTrue(received.containsAll(List.of("user-1", "user-2", "user-3")));
+        await(() -> !new AuditSpillFile(spillDirectory, objectMapper).hasPending());
+    }
+
+    @Test
+    void failedBatchesAreSpilledAndSentOnceTheServiceRecovers() throws Exception {
+        status = 503;
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 10);
+        dispatcher.start();
+        dispatcher.enqueue(event("user-1"));
+        await(() -> dispatcher.getSpilledCount() == 1);
+        dispatcher.stop();
+
+        status = 200;
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 10);
+        dispatcher.start();
+        await(() -> received.contains("user-1"));
+    }
+
+    @Test
+    void stopDrainsTheQueueBeforeReturning() throws Exception {
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 100);
+        dispatcher.start();
+        for (int i = 0; i < 50; i++) {
+            dispatcher.enqueue(event("user-" + i));
+        }
+
+        dispatcher.stop();
+
+        assertFalse(dispatcher.isRunning());
+        assertEquals(50, received.size());
+        assertEquals(50, dispatcher.getSentCount());
+        assertFalse(new AuditSpillFile(spillDirectory, objectMapper).hasPending());
+    }
+
+    @Test
+    void eventsAfterStopGoToTheSpillFile() throws Exception {
+        dispatcher = dispatcher(AuditOverflowPolicy.BLOCK, 10);
+
+        dispatcher.enqueue(event("user-1"));
+
+        assertEquals(1, dispatcher.getSpilledCount());
+        assertTrue(new AuditSpillFile(spillDirectory, objectMapper).hasPending());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void onlyEventsRejectedByValidationAreDropped() throws Exception {
+        invalid.add("user-1");
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 10);
+        dispatcher.start();
+        dispatcher.enqueue(event("user-0"));
+        dispatcher.enqueue(event("user-1"));
+        dispatcher.enqueue(event("user-2"));
+
+        dispatcher.stop();
+
+        assertEquals(List.of("user-0", "user-2"), received);
+        assertEquals(2, dispatcher.getSentCount());
+        assertEquals(1, dispatcher.getDroppedCount());
+        assertFalse(new AuditSpillFile(spillDirectory, objectMapper).hasPending());
+    }
+
+    @Test
+    void batchRejectedWithoutItemResultsIsSplitAndResent() throws Exception {
+        // Lotes de más de dos eventos: 400 sin detalle. Una mitad con sólo eventos inválidos: 400 con detalle
+        invalid.addAll(List.of("user-0", "user-1"));
+        maxBatchSize = 2;
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 10);
+        dispatcher.start();
+        for (int i = 0; i < 5; i++) {
+            dispatcher.enqueue(event("user-" + i));
+        }
+
+        dispatcher.stop();
+
+        assertEquals(List.of("user-2", "user-3", "user-4"), received.stream().sorted().toList());
+        assertEquals(3, dispatcher.getSentCount());
+        assertEquals(2, dispatcher.getDroppedCount());
+        assertFalse(new AuditSpillFile(spillDirectory, objectMapper).hasPending());
+    }
+
+    @Test
+    void otherClientErrorsAreRetried() throws Exception {
+        status = 401;
+        dispatcher = dispatcher(AuditOverflowPolicy.SPILL, 10);
+        dispatcher.start();
+        dispatcher.enqueue(event("user-1"));
+
+        await(() -> dispatcher.getSpilledCount() == 1);
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    /**
+     * Un worker, lotes de uno y cola de uno: {@code user-1} queda en vuelo con el envío retenido y
+     * {@code user-2} ocupa la cola, así que el siguiente evento desborda.
+     */
+    private AuditDispatcher fillQueue(AuditOverflowPolicy policy) throws Exception {
+        releaseSends = new CountDownLatch(1);
+        AuditDispatcher dispatcher = dispatcher(policy, 1);
+        dispatcher.start();
+        dispatcher.enqueue(event("user-1"));
+        await(() -> dispatcher.getQueueDepth() == 0);
+        dispatcher.enqueue(event("user-2"));
+        return dispatcher;
+    }
+
+    private AuditDispatcher dispatcher(AuditOverflowPolicy policy, int capacity) {
+        AuditServiceProperties properties = new AuditServiceProperties();
+        properties.setBaseUrl(URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        properties.setQueueCapacity(capacity);
+        properties.setBatchSize(capacity);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        properties.setOverflowPolicy(policy);
+        properties.setBlockTimeout(Duration.ofMillis(50));
+        properties.setShutdownTimeout(Duration.ofSeconds(5));
+        properties.setSpillDirectory(spillDirectory);
+        return new AuditDispatcher(new RestTemplateBuilder(), properties, objectMapper, new MockEnvironment());
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        try {
+            releaseSends.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Map<String, Object>> batch = objectMapper.readValue(exchange.getRequestBody(), List.class);
+        int code = status;
+        byte[] body;
+        if (code != 200) {
+            body = "{}".getBytes(StandardCharsets.UTF_8);
+        } else if (batch.size() > maxBatchSize) {
+            // Como el servicio real con un lote por encima de audit.batch.max-size
+            code = 400;
+            body = "{\"status\":400}".getBytes(StandardCharsets.UTF_8);
+        } else {
+            List<AuditBatchResult.ItemError> errors = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                String uid = (String) batch.get(i).get("uid");
+                if (invalid.contains(uid)) {
+                    errors.add(new AuditBatchResult.ItemError(i, List.of("uid: inválido")));
+                } else {
+                    received.add(uid);
+                }
+            }
+            int accepted = batch.size() - errors.size();
+            code = accepted > 0 ? 201 : 400;
+            body = objectMapper.writeValueAsBytes(new AuditBatchResult(batch.size(), accepted, errors.size(), errors));
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static AuditLogPayload event(String uid) {
+        return new AuditLogPayload(uid, uid, AuditAction.LOGIN, Instant.parse("2025-01-01T00:00:00Z"),
+                "10.0.0.1", "test", Map.of());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("La condición no se cumplió en 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
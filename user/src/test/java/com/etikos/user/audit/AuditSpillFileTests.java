@@ -0,0 +1,145 @@
+package com.etikos.user.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditSpillFileTests {
+
+    @TempDir
+    Path directory;
+
+    private AuditSpillFile spillFile;
+
+    @BeforeEach
+    void setUp() {
+        spillFile = new AuditSpillFile(directory, new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    @Test
+    void replayKeepsUnsentEventsAfterPartialFailure() {
+        spillFile.append(events(0, 5));
+
+        List<String> delivered = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        // El primer lote entra, el segundo falla
+        int sent = spillFile.replay(2, batch -> {
+            if (calls.incrementAndGet() > 1) {
+                return batch;
+            }
+            batch.forEach(event -> delivered.add(event.uid()));
+            return List.of();
+        });
+
+        assertEquals(2, sent);
+        assertEquals(List.of("user-0", "user-1"), delivered);
+        assertTrue(spillFile.hasPending());
+
+        sent = spillFile.replay(2, batch -> {
+            batch.forEach(event -> delivered.add(event.uid()));
+            return List.of();
+        });
+        assertEquals(3, sent);
+        assertEquals(List.of("user-0", "user-1", "user-2", "user-3", "user-4"), delivered);
+        assertFalse(spillFile.hasPending());
+    }
+
+    @Test
+    void appendDoesNotWaitForReplaySends() throws Exception {
+        spillFile.append(events(0, 1));
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> delivered = new ArrayList<>();
+
+        CompletableFuture<Integer> replay = CompletableFuture.supplyAsync(() -> spillFile.replay(10, batch -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.forEach(event -> delivered.add(event.uid()));
+            return List.of();
+        }));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // Con el envío colgado, escribir en el archivo no espera
+        CompletableFuture<Void> append = CompletableFuture.runAsync(() -> spillFile.append(events(1, 2)));
+        append.get(1, TimeUnit.SECONDS);
+        assertEquals(0, spillFile.replay(10, batch -> List.of()), "sólo un reenvío a la vez");
+
+        release.countDown();
+        assertEquals(1, replay.get(5, TimeUnit.SECONDS));
+        assertEquals(1, spillFile.replay(10, batch -> {
+            batch.forEach(event -> delivered.add(event.uid()));
+            return List.of();
+        }));
+        assertEquals(List.of("user-0", "user-1"), delivered);
+    }
+
+    @Test
+    void replayKeepsOnlyTheEventsTheSenderReturns() {
+        spillFile.append(events(0, 4));
+
+        // Del primer lote sólo hay que reintentar user-1; el resto del archivo tampoco se envía
+        int sent = spillFile.replay(2, batch -> List.of(batch.get(1)));
+        assertEquals(1, sent);
+
+        List<String> pending = new ArrayList<>();
+        spillFile.replay(10, batch -> {
+            batch.forEach(event -> pending.add(event.uid()));
+            return List.of();
+        });
+        assertEquals(List.of("user-1", "user-2", "user-3"), pending);
+    }
+
+    @Test
+    void unreadableLinesAreSetAsideWithoutStoppingTheReplay() throws Exception {
+        spillFile.append(events(0, 2));
+        Path spill = directory.resolve("audit-spill.ndjson");
+        Files.writeString(spill, "{\"uid\":\"user-\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        spillFile.append(events(2, 4));
+        // Última línea a medio escribir, como tras una caída
+        Files.writeString(spill, "{\"uid\":\"user-4\",\"act", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        List<String> delivered = new ArrayList<>();
+        int sent = spillFile.replay(2, batch -> {
+            batch.forEach(event -> delivered.add(event.uid()));
+            return List.of();
+        });
+
+        assertEquals(4, sent);
+        assertEquals(List.of("user-0", "user-1", "user-2", "user-3"), delivered);
+        assertFalse(spillFile.hasPending(), "el archivo de reenvío se vacía");
+        assertEquals(List.of("{\"uid\":\"user-", "{\"uid\":\"user-4\",\"act"),
+                Files.readAllLines(directory.resolve("audit-spill.rejected"), StandardCharsets.UTF_8));
+    }
+
+    static List<AuditLogPayload> events(int from, int to) {
+        List<AuditLogPayload> events = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            events.add(new AuditLogPayload("user-" + i, "user-" + i, AuditAction.LOGIN,
+                    Instant.parse("2025-01-01T00:00:00Z"), "10.0.0.1", "test", Map.of("n", i)));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,147 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.services.FirestoreFutures;
+import com.google.api.core.SettableApiFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Peticiones concurrentes que atiende Tomcat con un pool fijo de {@value #TOMCAT_THREADS} hilos
+ * cuando cada petición espera {@value #FIRESTORE_LATENCY_MS} ms a Firestore: bloqueando el hilo en
+ * {@code ApiFuture.get()}, como hacían los endpoints de usuario, o devolviendo el futuro convertido
+ * con {@link FirestoreFutures#toCompletable}. La latencia de Firestore se simula con un
+ * {@link SettableApiFuture} que completa un planificador, así que no necesita credenciales.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=AsyncEndpointLoadTest
+ * </pre>
+ */
+class AsyncEndpointLoadTest {
+
+    private static final int TOMCAT_THREADS = 8;
+    private static final long FIRESTORE_LATENCY_MS = 50;
+    private static final int CONCURRENT_REQUESTS = 200;
+    private static final int ROUNDS = 5;
+
+    private static final ScheduledExecutorService FIRESTORE = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "fake-firestore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws Exception {
+        try (var context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(LoadTestApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("spring.config.name=loadtest",
+                        "server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "server.tomcat.threads.min-spare=" + TOMCAT_THREADS,
+                        "server.tomcat.accept-count=" + CONCURRENT_REQUESTS,
+                        "server.tomcat.max-connections=" + CONCURRENT_REQUESTS * 2)
+                .run()) {
+            int port = context.getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newFixedThreadPool(4))
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            for (String endpoint : List.of("blocking", "async")) {
+                URI uri = URI.create("http://localhost:" + port + "/" + endpoint);
+                // Calentamiento
+                round(client, uri);
+                long[] best = null;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long[] latencies = round(client, uri);
+                    if (best == null || latencies[latencies.length - 1] < best[best.length - 1]) {
+                        best = latencies;
+                    }
+                }
+                report(endpoint, best);
+            }
+        }
+    }
+
+    /**
+     * Lanza {@value #CONCURRENT_REQUESTS} peticiones a la vez.
+     *
+     * @return latencias ordenadas en ms; la última es la duración total de la ronda
+     */
+    private static long[] round(HttpClient client, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> responses = new ArrayList<>(CONCURRENT_REQUESTS);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            long sent = System.nanoTime();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+                assertEquals(200, response.statusCode());
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+            }));
+        }
+        long[] latencies = responses.stream().map(CompletableFuture::join).mapToLong(Long::longValue).sorted().toArray();
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long[] result = Arrays.copyOf(latencies, latencies.length + 1);
+        result[latencies.length] = total;
+        return result;
+    }
+
+    private static void report(String endpoint, long[] result) {
+        int n = result.length - 1;
+        long total = Math.max(1, result[n]);
+        System.out.printf("%-8s threads=%d concurrent=%d total=%dms throughput=%.0f req/s p50=%dms p99=%dms max=%dms%n",
+                endpoint, TOMCAT_THREADS, CONCURRENT_REQUESTS, total, n * 1000.0 / total,
+                result[n / 2], result[(int) (n * 0.99)], result[n - 1]);
+    }
+
+    private static SettableApiFuture<String> firestoreRead() {
+        SettableApiFuture<String> future = SettableApiFuture.create();
+        FIRESTORE.schedule(() -> future.set("{}"), FIRESTORE_LATENCY_MS, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableAutoConfiguration(exclude = {SecurityAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class,
+            ManagementWebSecurityAutoConfiguration.class})
+    @Import(LoadTestController.class)
+    static class LoadTestApplication {
+    }
+
+    @RestController
+    static class LoadTestController {
+
+        @GetMapping("/blocking")
+        public String blocking() throws Exception {
+            return firestoreRead().get();
+        }
+
+        @GetMapping("/async")
+        public CompletableFuture<String> async() {
+            return FirestoreFutures.toCompletable(firestoreRead());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.store.UserProjection;
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.RunQueryResponse;
+import com.google.firestore.v1.Value;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.NullValue;
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes y coste de deserializar un recorrido de {@value #USERS} usuarios tal como lo envía
+ * Firestore ({@code RunQueryResponse} en protobuf), con el documento completo y con cada
+ * {@link UserProjection}. Los documentos imitan los que crea {@code register}: hash BCrypt, secreto
+ * TOTP y las dos marcas de tiempo. Decodificar es parsear la respuesta y convertir cada campo a
+ * objeto Java, como hace el SDK al construir un {@code DocumentSnapshot}.
+ * <p>
+ * La latencia de red no se mide aquí (no hay Firestore en las pruebas): se estima con los bytes que
+ * imprime {@link #run()}, que antes comprueba que cada recorrido sólo trae los campos de su
+ * proyección. Qué campos lleva cada proyección lo comprueba {@code UserProjectionTests}.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=FieldMaskPayloadBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FieldMaskPayloadBenchmark {
+
+    private static final int USERS = 1000;
+
+    @Param({"FULL", "ACCOUNT", "PROFILE", "BIOMETRIC_STATUS"})
+    public String projection;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = scan(fieldsOf(projection));
+    }
+
+    @Benchmark
+    public int decodeScan() throws IOException {
+        return decode(payload);
+    }
+
+    /**
+     * @return campos de la proyección, o {@code null} para el documento completo
+     */
+    private static Set<String> fieldsOf(String projection) {
+        return "FULL".equals(projection) ? null : Set.copyOf(UserProjection.valueOf(projection).fields());
+    }
+
+    /**
+     * Respuestas de un recorrido, delimitadas como en el stream de gRPC.
+     */
+    private static byte[] scan(Set<String> fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < USERS; i++) {
+            RunQueryResponse.newBuilder()
+                    .setDocument(user(i, fields))
+                    .setReadTime(timestamp(i))
+                    .build()
+                    .writeDelimitedTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    private static Document user(int i, Set<String> fields) {
+        String uid = String.format("Xk2%017d", i);
+        Map<String, Value> data = new HashMap<>();
+        data.put("uid", string(uid));
+        data.put("username", string("user" + i));
+        data.put("email", string("user" + i + "@example.com"));
+        data.put("password", string("$2a$12$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy"));
+        data.put("name", string("Nombre" + i));
+        data.put("lastname", string("Apellido" + i));
+        data.put("role", string("CUSTOMER"));
+        data.put("disabled", bool(false));
+        data.put("createdAt", Value.newBuilder().setTimestampValue(timestamp(i)).build());
+        data.put("updatedAt", Value.newBuilder().setTimestampValue(timestamp(i + 1)).build());
+        data.put("biometricEnabled", bool(i % 3 == 0));
+        data.put("totpEnabled", bool(i % 4 == 0));
+        data.put("totpSecret", i % 4 == 0 ? string("JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP")
+                : Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build());
+        if (fields != null) {
+            data.keySet().retainAll(fields);
+        }
+        return Document.newBuilder()
+                .setName("projects/etikos/databases/(default)/documents/users/" + uid)
+                .putAllFields(data)
+                .setCreateTime(timestamp(i))
+                .setUpdateTime(timestamp(i + 1))
+                .build();
+    }
+
+    private static int decode(byte[] payload) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(payload);
+        int fields = 0;
+        while (!in.isAtEnd()) {
+            int limit = in.pushLimit(in.readRawVarint32());
+            RunQueryResponse response = RunQueryResponse.parseFrom(in);
+            in.popLimit(limit);
+            Map<String, Object> data = new HashMap<>();
+            for (Map.Entry<String, Value> field : response.getDocument().getFieldsMap().entrySet()) {
+                data.put(field.getKey(), toJava(field.getValue()));
+            }
+            fields += data.size();
+        }
+        return fields;
+    }
+
+    private static Object toJava(Value value) {
+        return switch (value.getValueTypeCase()) {
+            case STRING_VALUE -> value.getStringValue();
+            case BOOLEAN_VALUE -> value.getBooleanValue();
+            case TIMESTAMP_VALUE -> com.google.cloud.Timestamp.fromProto(value.getTimestampValue());
+            default -> null;
+        };
+    }
+
+    private static Value string(String s) {
+        return Value.newBuilder().setStringValue(s).build();
+    }
+
+    private static Value bool(boolean b) {
+        return Value.newBuilder().setBooleanValue(b).build();
+    }
+
+    private static Timestamp timestamp(int i) {
+        return Timestamp.newBuilder().setSeconds(1_700_000_000L + i).setNanos(123_456_000).build();
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException, IOException {
+        for (String p : List.of("FULL", "ACCOUNT", "PROFILE", "BIOMETRIC_STATUS")) {
+            byte[] bytes = scan(fieldsOf(p));
+            int fields = "FULL".equals(p) ? 13 : UserProjection.valueOf(p).fields().size();
+            if (decode(bytes) != USERS * fields) {
+                throw new IllegalStateException(p + ": el recorrido no trae sólo los campos de la proyección");
+            }
+            System.out.printf("%-16s %d users: %d bytes (%d bytes/user)%n", p, USERS, bytes.length, bytes.length / USERS);
+        }
+        new Runner(new OptionsBuilder()
+                .include(FieldMaskPayloadBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
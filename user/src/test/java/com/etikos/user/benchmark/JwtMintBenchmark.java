@@ -0,0 +1,93 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.security.JwtService;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens/segundo y bytes asignados por token de {@link JwtService#generateToken} frente al
+ * {@code Jwts.builder()} que usaba antes (mapa de claims, dos {@code Date} y clave HMAC nueva en
+ * cada llamada). {@code JwtTokenIssuerTests} comprueba que ambos producen el mismo token.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=JwtMintBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtMintBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+    private static final long EXPIRATION = TimeUnit.HOURS.toMillis(24);
+
+    private JwtService jwtService;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(SECRET, EXPIRATION);
+    }
+
+    @Benchmark
+    public String jjwtBuilder() {
+        Date now = new Date();
+        return legacy("user@example.com", "CUSTOMER", "a1B2c3D4e5F6g7H8i9J0", now, new Date(now.getTime() + EXPIRATION),
+                UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public String specializedIssuer() {
+        return jwtService.generateToken("user@example.com", "CUSTOMER", "a1B2c3D4e5F6g7H8i9J0");
+    }
+
+    /**
+     * Copia de {@code JwtService.createToken} antes del cambio, con el {@code jti} añadido después.
+     */
+    private static String legacy(String subject, String role, String userId, Date issuedAt, Date expiresAt, String id) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("role", role);
+        claims.put("userId", userId);
+        return Jwts.builder()
+                .setClaims(claims)
+                .setSubject(subject)
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiresAt)
+                .setId(id)
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtMintBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.security.JwtService;
+import com.etikos.user.security.JwtTokenFilter;
+import com.etikos.user.security.TokenDenylist;
+import com.etikos.user.security.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Peticiones/segundo de {@link JwtTokenFilter} frente a la versión anterior, que verificaba la
+ * firma cuatro veces por petición (validar, subject, role, userId) reconstruyendo cada vez la
+ * clave HMAC y el parser.
+ * <p>
+ * {@code distinctTokens=1} es el caso habitual (un cliente repite su token: aciertos de caché);
+ * con 50000 tokens en ciclo y una caché de 1024 casi todas las peticiones verifican la firma.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=JwtTokenFilterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+    private static final int CACHE_SIZE = 1024;
+
+    @Param({"1", "50000"})
+    public int distinctTokens;
+
+    private String[] headers;
+    private int next;
+    private JwtTokenFilter filter;
+    private LegacyJwtTokenFilter legacyFilter;
+
+    @Setup
+    public void setUp() {
+        JwtService jwtService = new JwtService(SECRET, TimeUnit.HOURS.toMillis(24));
+        headers = new String[distinctTokens];
+        for (int i = 0; i < distinctTokens; i++) {
+            headers[i] = "Bearer " + jwtService.generateToken("user" + i, "CUSTOMER", "uid-" + i);
+        }
+        filter = new JwtTokenFilter(new VerifiedTokenCache(jwtService, CACHE_SIZE, new SimpleMeterRegistry()),
+                new TokenDenylist(TimeUnit.HOURS.toMillis(24), Duration.ofMinutes(5), 100_000, ""));
+        legacyFilter = new LegacyJwtTokenFilter(SECRET);
+    }
+
+    @Benchmark
+    public Authentication legacy() throws ServletException, IOException {
+        return run(legacyFilter);
+    }
+
+    @Benchmark
+    public Authentication verifyOnceWithCache() throws ServletException, IOException {
+        return run(filter);
+    }
+
+    private Authentication run(OncePerRequestFilter target) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/me");
+        request.addHeader("Authorization", headers[next++ % headers.length]);
+        try {
+            target.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    /**
+     * Copia del filtro y de las lecturas de {@code JwtService} antes del cambio.
+     */
+    private static final class LegacyJwtTokenFilter extends OncePerRequestFilter {
+
+        private final String secret;
+
+        LegacyJwtTokenFilter(String secret) {
+            this.secret = secret;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws ServletException, IOException {
+            String authHeader = request.getHeader("Authorization");
+            if (authHeader != null && authHeader.startsWith("Bearer ")) {
+                String token = authHeader.substring(7);
+                if (!extract(token, Claims::getExpiration).before(new Date())) {
+                    extract(token, Claims::getSubject);
+                    String role = extract(token, claims -> claims.get("role", String.class));
+                    String userId = extract(token, claims -> claims.get("userId", String.class));
+                    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                            userId, null, Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))));
+                }
+            }
+            filterChain.doFilter(request, response);
+        }
+
+        private <T> T extract(String token, Function<Claims, T> resolver) {
+            return resolver.apply(Jwts.parserBuilder()
+                    .setSigningKey(Keys.hmacShaKeyFor(secret.getBytes()))
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody());
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtTokenFilterBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.security.TokenBuckets;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intentos/segundo de {@link TokenBuckets} con 16 hilos frente a un limitador con un mapa y un lock
+ * global, contra una sola clave ({@code keys=1}, todos los hilos sobre la misma IP) o repartidos
+ * entre 1024. Con {@code throttled=true} casi todos los intentos se rechazan, como durante un ataque.
+ * {@code TokenBucketsTests} comprueba el comportamiento.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=LoginRateLimitBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class LoginRateLimitBenchmark {
+
+    @Param({"1", "1024"})
+    public int keys;
+
+    @Param({"false", "true"})
+    public boolean throttled;
+
+    private String[] keyNames;
+    private TokenBuckets lockFree;
+    private LockedBuckets locked;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        // Cada hilo empieza en una clave distinta
+        int next = ThreadLocalRandom.current().nextInt();
+    }
+
+    @Setup
+    public void setUp() {
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+        // Sin limitar, los tokens se recargan más rápido de lo que se piden
+        int capacity = throttled ? 10 : 1_000_000;
+        Duration refill = throttled ? Duration.ofMinutes(1) : Duration.ofNanos(1);
+        lockFree = new TokenBuckets(capacity, refill, 100_000);
+        locked = new LockedBuckets(capacity, refill);
+    }
+
+    @Benchmark
+    public long lockFree(Cursor cursor) {
+        return lockFree.tryAcquire(keyNames[Math.floorMod(cursor.next++, keys)]);
+    }
+
+    @Benchmark
+    public long globalLock(Cursor cursor) {
+        return locked.tryAcquire(keyNames[Math.floorMod(cursor.next++, keys)]);
+    }
+
+    /**
+     * Token bucket clásico (tokens y última recarga por clave) bajo un único lock.
+     */
+    private static final class LockedBuckets {
+
+        private final Map<String, double[]> buckets = new HashMap<>();
+        private final int capacity;
+        private final double tokensPerNano;
+
+        LockedBuckets(int capacity, Duration refill) {
+            this.capacity = capacity;
+            this.tokensPerNano = 1.0 / Math.max(1, refill.toNanos());
+        }
+
+        synchronized long tryAcquire(String key) {
+            long now = System.nanoTime();
+            double[] bucket = buckets.computeIfAbsent(key, k -> new double[]{capacity, now});
+            bucket[0] = Math.min(capacity, bucket[0] + (now - bucket[1]) * tokensPerNano);
+            bucket[1] = now;
+            if (bucket[0] >= 1) {
+                bucket[0] -= 1;
+                return 0;
+            }
+            return (long) ((1 - bucket[0]) / tokensPerNano);
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoginRateLimitBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
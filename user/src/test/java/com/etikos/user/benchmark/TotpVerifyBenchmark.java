@@ -0,0 +1,104 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.services.TotpService;
+import dev.samstevens.totp.code.CodeGenerator;
+import dev.samstevens.totp.code.CodeVerifier;
+import dev.samstevens.totp.code.DefaultCodeGenerator;
+import dev.samstevens.totp.code.DefaultCodeVerifier;
+import dev.samstevens.totp.exceptions.CodeGenerationException;
+import dev.samstevens.totp.time.SystemTimeProvider;
+import dev.samstevens.totp.time.TimeProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verificaciones/segundo de {@link TotpService#verifyCodeWithWindow} frente a la versión anterior,
+ * que creaba generador, verificador y proveedor de tiempo en cada llamada y decodificaba el Base32
+ * del secreto por cada periodo de la ventana. {@code validCode=false} recorre la ventana completa.
+ * {@code TotpVerifierTests} comprueba el comportamiento.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=TotpVerifyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TotpVerifyBenchmark {
+
+    private static final int PERIOD = 30;
+
+    @Param({"true", "false"})
+    public boolean validCode;
+
+    private String secret;
+    private String code;
+    private TotpService totpService;
+
+    @Setup
+    public void setUp() throws CodeGenerationException {
+        totpService = new TotpService();
+        secret = totpService.generateSecret();
+        String current = codeAt(secret, currentStep());
+        // Un código de 6 dígitos que no es el actual (los de la ventana también fallarían por igual)
+        code = validCode ? current : String.format("%06d", (Integer.parseInt(current) + 1) % 1_000_000);
+    }
+
+    @Benchmark
+    public boolean libraryPerCall() {
+        return legacy(secret, code);
+    }
+
+    @Benchmark
+    public boolean cachedVerifier() {
+        return totpService.verifyCodeWithWindow(secret, code);
+    }
+
+    /**
+     * Copia de {@code TotpService.verifyCodeWithWindow} antes del cambio.
+     */
+    private static boolean legacy(String secret, String code) {
+        TimeProvider timeProvider = new SystemTimeProvider();
+        CodeGenerator codeGenerator = new DefaultCodeGenerator();
+        CodeVerifier verifierWithWindow = new DefaultCodeVerifier(codeGenerator, timeProvider);
+        ((DefaultCodeVerifier) verifierWithWindow).setTimePeriod(PERIOD);
+        ((DefaultCodeVerifier) verifierWithWindow).setAllowedTimePeriodDiscrepancy(1);
+        return verifierWithWindow.isValidCode(secret, code);
+    }
+
+    private static long currentStep() {
+        return System.currentTimeMillis() / 1000 / PERIOD;
+    }
+
+    private static String codeAt(String secret, long step) throws CodeGenerationException {
+        return new DefaultCodeGenerator().generate(secret, step);
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TotpVerifyBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
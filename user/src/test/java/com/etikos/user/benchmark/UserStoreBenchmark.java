@@ -0,0 +1,125 @@
+package com.etikos.user.benchmark;
+
+import com.etikos.user.store.MvStoreUserStore;
+import com.etikos.user.store.UserProjection;
+import com.etikos.user.store.UserRecord;
+import com.etikos.user.store.UserStoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste propio de las operaciones de {@link MvStoreUserStore} en memoria, sin red: lectura por uid
+ * con la proyección del login, búsqueda por email, una página de 100 usuarios y un cambio de email,
+ * que mueve la clave en el índice. Las garantías del {@link com.etikos.user.store.UserStore} sobre
+ * el almacén embebido las comprueba {@code MvStoreUserStoreTests}.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=UserStoreBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStoreBenchmark {
+
+    private static final int USERS = 10_000;
+
+    private MvStoreUserStore store;
+    private String[] uids;
+    private String[] emails;
+    private int next;
+    private long renames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = inMemoryStore();
+        uids = new String[USERS];
+        emails = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            emails[i] = "user" + i + "@etikos.com";
+            uids[i] = store.create(user("user" + i, emails[i], "CUSTOMER")).join().getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.destroy();
+    }
+
+    @Benchmark
+    public UserRecord findById() {
+        return store.findById(uids[next++ % USERS], UserProjection.ACCOUNT).join();
+    }
+
+    @Benchmark
+    public String findUidByEmail() {
+        return store.findUidByEmail(emails[next++ % USERS]).join();
+    }
+
+    @Benchmark
+    public List<UserRecord> scanPage() {
+        int from = next++ % (USERS - 100);
+        return store.scan(UserProjection.PROFILE, uids[from], 100).join();
+    }
+
+    @Benchmark
+    public Boolean changeEmail() {
+        int i = next++ % USERS;
+        return store.update(uids[i], Map.of("email", "renamed" + renames++ + "@etikos.com")).join();
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserStoreBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private static MvStoreUserStore inMemoryStore() {
+        UserStoreProperties properties = new UserStoreProperties();
+        properties.setType(UserStoreProperties.Type.EMBEDDED);
+        properties.setPath("");
+        return new MvStoreUserStore(properties, new ObjectMapper());
+    }
+
+    private static Map<String, Object> user(String username, String email, String role) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("username", username);
+        user.put("email", email);
+        user.put("password", "hash");
+        user.put("name", username);
+        user.put("lastname", "Etikos");
+        user.put("role", role);
+        user.put("disabled", false);
+        user.put("biometricEnabled", false);
+        user.put("totpEnabled", false);
+        user.put("totpSecret", null);
+        return user;
+    }
+}
@@ -0,0 +1,137 @@
+package com.etikos.user.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Latencia y concurrencia máxima de un endpoint que bloquea su hilo {@value #BLOCKING_MS} ms (como
+ * una llamada síncrona a Firestore o al servicio de auditoría) con la configuración por defecto de
+ * Tomcat, en hilos de plataforma ({@code server.tomcat.threads.max=200}) y con
+ * {@code spring.threads.virtual.enabled=true}. {@code inFlight} es el máximo de peticiones que
+ * llegaron a estar dentro del endpoint a la vez.
+ * <pre>
+ * USER_BENCHMARK=true ./mvnw test -Dtest=VirtualThreadLoadTest
+ * </pre>
+ */
+class VirtualThreadLoadTest {
+
+    private static final long BLOCKING_MS = 1000;
+    private static final int CONCURRENT_REQUESTS = 1000;
+    private static final int ROUNDS = 5;
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "USER_BENCHMARK", matches = "true")
+    void run() {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(4))
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (var context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(LoadTestApplication.class)
+                    .web(WebApplicationType.SERVLET)
+                    .properties("spring.config.name=loadtest",
+                            "server.port=0",
+                            "server.tomcat.accept-count=" + CONCURRENT_REQUESTS,
+                            "spring.threads.virtual.enabled=" + virtual)
+                    .run()) {
+                URI uri = URI.create("http://localhost:" + context.getWebServer().getPort() + "/blocking");
+                // Calentamiento
+                round(client, uri);
+                long[] best = null;
+                int maxInFlight = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    MAX_IN_FLIGHT.set(0);
+                    long[] latencies = round(client, uri);
+                    maxInFlight = Math.max(maxInFlight, MAX_IN_FLIGHT.get());
+                    if (best == null || latencies[latencies.length - 1] < best[best.length - 1]) {
+                        best = latencies;
+                    }
+                }
+                report(virtual ? "virtual" : "platform", best, maxInFlight);
+            }
+        }
+    }
+
+    /**
+     * @return latencias ordenadas en ms; la última es la duración total de la ronda
+     */
+    private static long[] round(HttpClient client, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> responses = new ArrayList<>(CONCURRENT_REQUESTS);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            long sent = System.nanoTime();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(response -> {
+                assertEquals(200, response.statusCode());
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+            }));
+        }
+        long[] result = new long[CONCURRENT_REQUESTS + 1];
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            result[i] = responses.get(i).join();
+        }
+        Arrays.sort(result, 0, CONCURRENT_REQUESTS);
+        result[CONCURRENT_REQUESTS] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    private static void report(String mode, long[] result, int maxInFlight) {
+        int n = result.length - 1;
+        long total = Math.max(1, result[n]);
+        System.out.printf("%-8s concurrent=%d inFlight=%d total=%dms throughput=%.0f req/s p50=%dms p99=%dms max=%dms%n",
+                mode, CONCURRENT_REQUESTS, maxInFlight, total, n * 1000.0 / total,
+                result[n / 2], result[(int) (n * 0.99)], result[n - 1]);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableAutoConfiguration(exclude = {SecurityAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class,
+            ManagementWebSecurityAutoConfiguration.class})
+    @Import(LoadTestController.class)
+    static class LoadTestApplication {
+    }
+
+    @RestController
+    static class LoadTestController {
+
+        @GetMapping("/blocking")
+        public String blocking() throws InterruptedException {
+            int now = IN_FLIGHT.incrementAndGet();
+            MAX_IN_FLIGHT.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(BLOCKING_MS);
+                return Thread.currentThread().isVirtual() ? "virtual" : "platform";
+            } finally {
+                IN_FLIGHT.decrementAndGet();
+            }
+        }
+    }
+}
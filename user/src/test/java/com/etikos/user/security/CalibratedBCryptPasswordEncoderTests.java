@@ -0,0 +1,30 @@
+package com.etikos.user.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalibratedBCryptPasswordEncoderTests {
+
+    private static final String COST_10 = "$2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy";
+    private static final String COST_12 = "$2a$12$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy";
+
+    @Test
+    void calibratedStrengthOnlyRehashesUpward() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(11, false);
+
+        assertTrue(encoder.upgradeEncoding(COST_10));
+        assertFalse(encoder.upgradeEncoding(COST_12), "otra réplica pudo calibrar un coste mayor");
+        assertFalse(encoder.upgradeEncoding("no-es-bcrypt"));
+    }
+
+    @Test
+    void fixedStrengthRehashesBothWays() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(11, true);
+
+        assertTrue(encoder.upgradeEncoding(COST_10));
+        assertTrue(encoder.upgradeEncoding(COST_12));
+        assertFalse(encoder.upgradeEncoding("$2a$11$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.etikos.user.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link JwtTokenIssuer} (a través de {@link JwtService#generateToken}) produce byte a byte el
+ * mismo token que el {@code Jwts.builder()} al que sustituye.
+ */
+class JwtTokenIssuerTests {
+
+    private static final String SECRET = "test-secret-test-secret-test-secret-test-secret";
+    private static final long EXPIRATION = TimeUnit.HOURS.toMillis(24);
+
+    @Test
+    void mintsSameBytesAsJjwt() {
+        JwtService service = new JwtService(SECRET, EXPIRATION);
+        String[][] cases = {
+                {"user@example.com", "CUSTOMER", "a1B2c3D4e5F6g7H8i9J0"},
+                {"admin", "ADMIN", "uid"},
+                {"com\"illas\\barra/y\ttab\n\r\b\f", "ROLE", "ctl\u0001\u001f\u007f"},
+                {"ñandú 日本 😀", "CUSTOMER", "uid-ü"},
+                {"sin-role", null, "uid"},
+                {"", "", null},
+                {"x".repeat(600), "CUSTOMER", "y".repeat(300)},
+        };
+        for (String[] c : cases) {
+            String token = service.generateToken(c[0], c[1], c[2]);
+            Claims claims = Jwts.parserBuilder()
+                    .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+            String expected = jjwt(c[0], c[1], c[2], claims.getIssuedAt(), claims.getExpiration(), claims.getId());
+            assertEquals(expected, token, "token distinto para sub=" + c[0]);
+        }
+    }
+
+    /**
+     * {@code JwtService.createToken} antes de {@link JwtTokenIssuer}, con el {@code jti} añadido después.
+     */
+    private static String jjwt(String subject, String role, String userId, Date issuedAt, Date expiresAt, String id) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("role", role);
+        claims.put("userId", userId);
+        return Jwts.builder()
+                .setClaims(claims)
+                .setSubject(subject)
+                .setIssuedAt(issuedAt)
+                .setExpiration(expiresAt)
+                .setId(id)
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
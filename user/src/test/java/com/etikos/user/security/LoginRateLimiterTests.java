@@ -0,0 +1,71 @@
+package com.etikos.user.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoginRateLimiterTests {
+
+    @Test
+    void rotatingForwardedForDoesNotBypassTheIpLimit() {
+        LoginRateLimiter limiter = limiter(2, 100);
+
+        for (int i = 0; i < 2; i++) {
+            limiter.checkIp(request("203.0.113.7", "198.51.100." + i));
+        }
+        assertThrows(LoginRateLimitedException.class,
+                () -> limiter.checkIp(request("203.0.113.7", "198.51.100.99")));
+        assertDoesNotThrow(() -> limiter.checkIp(request("203.0.113.8", null)), "otra conexión");
+    }
+
+    @Test
+    void emailLimitAppliesAcrossAddressesAndCase() {
+        LoginRateLimiter limiter = limiter(100, 2);
+
+        limiter.checkLogin(request("203.0.113.1", null), "Ana@Etikos.com");
+        limiter.checkLogin(request("203.0.113.2", null), " ana@etikos.com ");
+        LoginRateLimitedException error = assertThrows(LoginRateLimitedException.class,
+                () -> limiter.checkLogin(request("203.0.113.3", null), "ANA@etikos.com"));
+        assertEquals(60, error.getRetryAfterSeconds());
+        assertDoesNotThrow(() -> limiter.checkLogin(request("203.0.113.3", null), "bea@etikos.com"));
+    }
+
+    @Test
+    void disabledLimiterLetsEverythingThrough() {
+        LoginRateLimitProperties properties = properties(1, 1);
+        properties.setEnabled(false);
+        LoginRateLimiter limiter = new LoginRateLimiter(properties, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 5; i++) {
+            limiter.checkLogin(request("203.0.113.1", null), "ana@etikos.com");
+        }
+    }
+
+    private static LoginRateLimiter limiter(int ipCapacity, int emailCapacity) {
+        return new LoginRateLimiter(properties(ipCapacity, emailCapacity), new SimpleMeterRegistry());
+    }
+
+    private static LoginRateLimitProperties properties(int ipCapacity, int emailCapacity) {
+        LoginRateLimitProperties properties = new LoginRateLimitProperties();
+        properties.setIpCapacity(ipCapacity);
+        properties.setIpRefillPeriod(Duration.ofMinutes(1));
+        properties.setEmailCapacity(emailCapacity);
+        properties.setEmailRefillPeriod(Duration.ofMinutes(1));
+        return properties;
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users/login");
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
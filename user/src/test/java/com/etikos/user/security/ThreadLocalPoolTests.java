@@ -0,0 +1,100 @@
+package com.etikos.user.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreadLocalPoolTests {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    void platformThreadKeepsItsOwnInstance() {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<>(this::create, 2);
+
+        Object first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertEquals(0, pool.idle(), "no pasa por la cola");
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void virtualThreadsReuseReleasedInstances() throws Exception {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<>(this::create, 2);
+        AtomicReference<Object> first = new AtomicReference<>();
+        AtomicReference<Object> second = new AtomicReference<>();
+
+        Thread.ofVirtual().start(() -> first.set(useOnce(pool))).join();
+        Thread.ofVirtual().start(() -> second.set(useOnce(pool))).join();
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, created.get());
+        assertEquals(1, pool.idle());
+    }
+
+    @Test
+    void concurrentVirtualThreadsNeverShareAnInstance() throws Exception {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<>(this::create, 2);
+        Set<Object> inUse = ConcurrentHashMap.newKeySet();
+        AtomicInteger shared = new AtomicInteger();
+        CountDownLatch holding = new CountDownLatch(8);
+
+        List<Thread> threads = IntStream.range(0, 8).mapToObj(i -> Thread.ofVirtual().start(() -> {
+            Object instance = pool.acquire();
+            try {
+                if (!inUse.add(instance)) {
+                    shared.incrementAndGet();
+                }
+                holding.countDown();
+                holding.await(5, TimeUnit.SECONDS);
+                inUse.remove(instance);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.release(instance);
+            }
+        })).toList();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, shared.get());
+        assertEquals(8, created.get());
+        assertTrue(pool.idle() <= 2, "sólo guarda maxIdle instancias");
+    }
+
+    @Test
+    void virtualAndPlatformInstancesAreSeparate() throws Exception {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<>(this::create, 2);
+        Object platform = pool.acquire();
+        AtomicReference<Object> virtual = new AtomicReference<>();
+
+        Thread.ofVirtual().start(() -> virtual.set(useOnce(pool))).join();
+
+        assertNotSame(platform, virtual.get());
+    }
+
+    private Object create() {
+        created.incrementAndGet();
+        return new Object();
+    }
+
+    private static Object useOnce(ThreadLocalPool<Object> pool) {
+        Object instance = pool.acquire();
+        pool.release(instance);
+        return instance;
+    }
+}
@@ -0,0 +1,74 @@
+package com.etikos.user.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketsTests {
+
+    @Test
+    void burstThenThrottle() {
+        AtomicLong clock = new AtomicLong();
+        TokenBuckets buckets = new TokenBuckets(3, Duration.ofSeconds(10), 100, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.tryAcquire("ip"), "intento " + i);
+        }
+        assertEquals(Duration.ofSeconds(10).toNanos(), buckets.tryAcquire("ip"));
+        assertEquals(0, buckets.tryAcquire("otra-ip"), "cada clave tiene su bucket");
+
+        clock.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertEquals(Duration.ofSeconds(6).toNanos(), buckets.tryAcquire("ip"), "los rechazos no consumen");
+        clock.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals(0, buckets.tryAcquire("ip"), "un token recargado");
+        assertTrue(buckets.tryAcquire("ip") > 0);
+
+        // Tras mucho tiempo sin uso el bucket vuelve a estar lleno, no acumula más
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, buckets.tryAcquire("ip"));
+        }
+        assertTrue(buckets.tryAcquire("ip") > 0);
+    }
+
+    @Test
+    void grantsCapacityOnceUnderContention() throws Exception {
+        int capacity = 1_000;
+        TokenBuckets buckets = new TokenBuckets(capacity, Duration.ofHours(1), 100);
+        int threads = 16;
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < capacity; i++) {
+                        if (buckets.tryAcquire("hot") == 0) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        }
+        assertEquals(capacity, granted.get());
+    }
+}
@@ -0,0 +1,97 @@
+package com.etikos.user.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenDenylistTests {
+
+    private static final long EXPIRATION_MILLIS = Duration.ofSeconds(60).toMillis();
+    private static final Duration BUCKET = Duration.ofSeconds(10);
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void expiredBucketsAreReusedAsTheRingTurns() {
+        TokenDenylist denylist = denylist(100, "");
+        VerifiedToken first = token(1, 1_005);
+        assertTrue(denylist.revoke(first));
+        assertTrue(denylist.isRevoked(first));
+
+        // 60 s / 10 s + 3 = 9 cubos: el cubo de 1095 cae en el mismo hueco que el de 1005
+        now.set(1_050);
+        VerifiedToken second = token(2, 1_095);
+        assertTrue(denylist.revoke(second));
+
+        assertTrue(denylist.isRevoked(second));
+        assertFalse(denylist.isRevoked(first));
+        assertFalse(denylist.isRevoked(token(1, 1_095)), "el id sólo cuenta en el cubo de su exp");
+        assertEquals(1, denylist.size());
+    }
+
+    @Test
+    void snapshotReloadKeepsOnlyLiveRevocations() throws Exception {
+        Path snapshot = directory.resolve("denylist.txt");
+        TokenDenylist denylist = denylist(100, snapshot.toString());
+        denylist.revoke(token(1, 1_010));
+        denylist.revoke(token(2, 1_050));
+        denylist.revoke(token(2, 1_050));
+        Files.writeString(snapshot, "basura\n", StandardOpenOption.APPEND);
+
+        now.set(1_020);
+        TokenDenylist reloaded = denylist(100, snapshot.toString());
+
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.isRevoked(token(2, 1_050)));
+        assertFalse(reloaded.isRevoked(token(1, 1_010)));
+        assertEquals(List.of("1050 " + new TokenId(0, 2)), Files.readAllLines(snapshot), "archivo compactado");
+    }
+
+    @Test
+    void fullListEvictsTheSoonestBucketsFirst() {
+        TokenDenylist denylist = denylist(2, "");
+        VerifiedToken soonest = token(1, 1_015);
+        VerifiedToken later = token(2, 1_025);
+        VerifiedToken latest = token(3, 1_035);
+        assertTrue(denylist.revoke(soonest));
+        assertTrue(denylist.revoke(later));
+
+        assertTrue(denylist.revoke(latest));
+        assertFalse(denylist.isRevoked(soonest));
+        assertTrue(denylist.isRevoked(later));
+        assertTrue(denylist.isRevoked(latest));
+        assertEquals(2, denylist.size());
+
+        // Si sólo queda el cubo del propio token no se descarta nada y el token no se revoca
+        VerifiedToken sameBucket = token(4, 1_036);
+        assertTrue(denylist.revoke(sameBucket));
+        assertFalse(denylist.isRevoked(later));
+        VerifiedToken overflow = token(5, 1_037);
+        assertFalse(denylist.revoke(overflow));
+        assertFalse(denylist.isRevoked(overflow));
+        assertTrue(denylist.isRevoked(latest));
+        assertTrue(denylist.isRevoked(sameBucket));
+    }
+
+    private TokenDenylist denylist(int maxEntries, String snapshotFile) {
+        return new TokenDenylist(EXPIRATION_MILLIS, BUCKET, maxEntries, snapshotFile, now::get);
+    }
+
+    private static VerifiedToken token(long id, long expiresAt) {
+        return new VerifiedToken("user", "CUSTOMER", "uid", Instant.ofEpochSecond(expiresAt), new TokenId(0, id));
+    }
+}
@@ -0,0 +1,179 @@
+package com.etikos.user.services;
+
+import com.etikos.user.store.UserStoreProperties;
+import com.google.cloud.firestore.ListenerRegistration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Construcción, listener y reconstrucción de {@link EmailBloomFilter} con un origen de claves en
+ * memoria en lugar de Firestore.
+ */
+class EmailBloomFilterTests {
+
+    private final FakeKeys keys = new FakeKeys();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailBloomFilter filter;
+
+    @AfterEach
+    void stop() {
+        keys.releaseStream.countDown();
+        if (filter != null) {
+            filter.destroy();
+        }
+    }
+
+    @Test
+    void negativeAnswersWaitForTheListener() throws Exception {
+        keys.stored.add(EmailBloomFilter.key("ana@etikos.com"));
+        filter = build();
+
+        assertTrue(filter.mightExist("Ana@Etikos.com"));
+        assertTrue(filter.mightExist("nadie@etikos.com"), "sin snapshot del listener se lee el índice");
+
+        keys.listener(0).onAdded(List.of());
+        assertTrue(filter.mightExist("ana@etikos.com"));
+        assertFalse(filter.mightExist("nadie@etikos.com"));
+    }
+
+    @Test
+    void listenerAddsRegistrationsFromOtherInstances() throws Exception {
+        filter = build();
+        keys.listener(0).onAdded(List.of());
+        assertFalse(filter.mightExist("bea@etikos.com"));
+
+        keys.listener(0).onAdded(List.of(EmailBloomFilter.key("bea@etikos.com")));
+        assertTrue(filter.mightExist("bea@etikos.com"));
+
+        filter.add("Carla@etikos.com");
+        assertTrue(filter.mightExist("carla@etikos.com"), "las altas propias no esperan al listener");
+    }
+
+    @Test
+    void listenerFailureDisablesTheFilter() throws Exception {
+        filter = build();
+        keys.listener(0).onAdded(List.of());
+        assertFalse(filter.mightExist("nadie@etikos.com"));
+
+        keys.listener(0).onError(new IllegalStateException("stream cerrado"));
+        assertTrue(filter.mightExist("nadie@etikos.com"));
+    }
+
+    @Test
+    void rebuildForgetsRemovedEmailsOnceItsListenerIsCurrent() throws Exception {
+        keys.stored.add(EmailBloomFilter.key("ana@etikos.com"));
+        filter = build();
+        keys.listener(0).onAdded(List.of());
+
+        keys.stored.clear();
+        keys.releaseStream = new CountDownLatch(1);
+        filter.requestRebuild();
+        await(() -> keys.listeners.size() == 2);
+
+        // Durante el recorrido el filtro anterior sigue en uso y recibe las altas de los dos listeners
+        assertTrue(filter.mightExist("ana@etikos.com"));
+        keys.listener(1).onAdded(List.of(EmailBloomFilter.key("bea@etikos.com")));
+        assertTrue(filter.mightExist("bea@etikos.com"));
+        keys.releaseStream.countDown();
+        await(() -> keys.removed.contains(0));
+
+        assertFalse(filter.mightExist("ana@etikos.com"));
+        assertTrue(filter.mightExist("bea@etikos.com"), "lo entregado durante el recorrido entra en el nuevo");
+    }
+
+    @Test
+    void newFilterIsNotTrustedUntilItsListenerDelivers() throws Exception {
+        filter = build();
+        keys.listener(0).onAdded(List.of());
+
+        filter.requestRebuild();
+        await(() -> keys.removed.contains(0));
+
+        assertTrue(filter.mightExist("nadie@etikos.com"));
+        keys.listener(1).onAdded(List.of());
+        assertFalse(filter.mightExist("nadie@etikos.com"));
+    }
+
+    @Test
+    void failedRebuildKeepsThePreviousFilterAndListener() throws Exception {
+        filter = build();
+        keys.listener(0).onAdded(List.of());
+
+        keys.failStream = true;
+        filter.requestRebuild();
+        await(() -> keys.removed.contains(1));
+
+        assertFalse(keys.removed.contains(0));
+        assertFalse(filter.mightExist("nadie@etikos.com"));
+        keys.listener(0).onAdded(List.of(EmailBloomFilter.key("bea@etikos.com")));
+        assertTrue(filter.mightExist("bea@etikos.com"));
+    }
+
+    private EmailBloomFilter build() throws InterruptedException {
+        EmailFilterProperties properties = new EmailFilterProperties();
+        properties.setExpectedUsers(1_000);
+        UserStoreProperties storeProperties = new UserStoreProperties();
+        storeProperties.setType(UserStoreProperties.Type.FIRESTORE);
+        EmailBloomFilter filter = new EmailBloomFilter(properties, storeProperties, meterRegistry, keys);
+        filter.start();
+        // La fpp estimada baja de 1 cuando el filtro está construido
+        await(() -> meterRegistry.get("users.email_filter.fpp").gauge().value() < 1);
+        return filter;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("La condición no se cumplió en 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class FakeKeys implements EmailBloomFilter.KeySource {
+
+        final Set<String> stored = ConcurrentHashMap.newKeySet();
+        final List<EmailBloomFilter.KeyListener> listeners = new CopyOnWriteArrayList<>();
+        final Set<Integer> removed = ConcurrentHashMap.newKeySet();
+        volatile CountDownLatch releaseStream = new CountDownLatch(0);
+        volatile boolean failStream;
+
+        @Override
+        public ListenerRegistration listen(Instant since, EmailBloomFilter.KeyListener listener) {
+            int index = listeners.size();
+            listeners.add(listener);
+            return () -> removed.add(index);
+        }
+
+        @Override
+        public long stream(Consumer<String> sink) throws Exception {
+            releaseStream.await(10, TimeUnit.SECONDS);
+            if (failStream) {
+                throw new IOException("stream cortado");
+            }
+            stored.forEach(sink);
+            return stored.size();
+        }
+
+        EmailBloomFilter.KeyListener listener(int index) {
+            return listeners.get(index);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.etikos.user.services;
+
+import com.etikos.user.dto.UserProfileDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PendingMfaSessionsTests {
+
+    @Test
+    void sessionCanOnlyBeConsumedOnce() {
+        PendingMfaSessions sessions = sessions(Duration.ofMinutes(5), 3);
+        String id = sessions.open(session("uid-1"));
+
+        PendingMfaSessions.PendingMfa consumed = sessions.consume(id);
+        assertNotNull(consumed);
+        assertEquals("uid-1", consumed.uid());
+        assertNull(sessions.consume(id), "un id sólo sirve una vez");
+        assertNull(sessions.consume("no-existe"));
+        assertNull(sessions.consume(null));
+    }
+
+    @Test
+    void openingOverTheCapDropsTheOldestSessionOfThatUser() {
+        PendingMfaSessions sessions = sessions(Duration.ofMinutes(5), 2);
+        String first = sessions.open(session("uid-1"));
+        String second = sessions.open(session("uid-1"));
+        String other = sessions.open(session("uid-2"));
+        String third = sessions.open(session("uid-1"));
+
+        assertNull(sessions.consume(first));
+        assertNotNull(sessions.consume(second));
+        assertNotNull(sessions.consume(third));
+        assertNotNull(sessions.consume(other), "el límite es por usuario");
+    }
+
+    @Test
+    void concurrentOpensNeverExceedTheCap() throws Exception {
+        PendingMfaSessions sessions = sessions(Duration.ofMinutes(5), 3);
+        List<CompletableFuture<String>> opens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            opens.add(CompletableFuture.supplyAsync(() -> sessions.open(session("uid-1"))));
+        }
+
+        CompletableFuture.allOf(opens.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, sessions.openSessions("uid-1"));
+        int live = 0;
+        for (CompletableFuture<String> open : opens) {
+            if (sessions.consume(open.join()) != null) {
+                live++;
+            }
+        }
+        assertEquals(3, live);
+    }
+
+    @Test
+    void expiredSessionsAreRemovedFromTheUserIndex() throws Exception {
+        PendingMfaSessions sessions = sessions(Duration.ofMillis(50), 3);
+        String id = sessions.open(session("uid-1"));
+        assertEquals(1, sessions.openSessions("uid-1"));
+
+        await(() -> sessions.openSessions("uid-1") == 0);
+        assertNull(sessions.consume(id));
+    }
+
+    private static PendingMfaSessions sessions(Duration ttl, int maxPerUser) {
+        PendingMfaProperties properties = new PendingMfaProperties();
+        properties.setSessionTtl(ttl);
+        properties.setMaxSessionsPerUser(maxPerUser);
+        return new PendingMfaSessions(properties, new SimpleMeterRegistry());
+    }
+
+    private static PendingMfaSessions.PendingMfa session(String uid) {
+        UserProfileDto user = new UserProfileDto();
+        user.setUid(uid);
+        return new PendingMfaSessions.PendingMfa(uid, uid, "CUSTOMER", "SECRET", user);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("La condición no se cumplió en 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
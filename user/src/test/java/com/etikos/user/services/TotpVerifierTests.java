@@ -0,0 +1,89 @@
+package com.etikos.user.services;
+
+import dev.samstevens.totp.code.DefaultCodeGenerator;
+import dev.samstevens.totp.code.DefaultCodeVerifier;
+import dev.samstevens.totp.exceptions.CodeGenerationException;
+import dev.samstevens.totp.secret.DefaultSecretGenerator;
+import dev.samstevens.totp.time.SystemTimeProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TotpVerifierTests {
+
+    private static final int PERIOD = TotpVerifier.PERIOD_SECONDS;
+
+    @Test
+    void matchesRfc6238Vectors() {
+        // RFC 6238, apéndice B (SHA1), truncados a 6 dígitos; secreto "12345678901234567890" en Base32
+        String secret = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+        long[] times = {59L, 1_111_111_109L, 1_111_111_111L, 1_234_567_890L, 2_000_000_000L, 20_000_000_000L};
+        String[] codes = {"287082", "081804", "050471", "005924", "279037", "353130"};
+        TotpVerifier verifier = new TotpVerifier(10, Duration.ofMinutes(1));
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i] / PERIOD, verifier.matchingStep(secret, codes[i], times[i], 0), "t=" + times[i]);
+            assertEquals(-1, verifier.matchingStep(secret, codes[i], times[i] + 2 * PERIOD, 1), "fuera de la ventana");
+        }
+    }
+
+    @Test
+    void acceptsSameWindowAsLibrary() throws Exception {
+        TotpService service = new TotpService();
+        for (int i = 0; i < 20; i++) {
+            String key = new DefaultSecretGenerator().generate();
+            long step = stableStep();
+            for (long offset = -3; offset <= 3; offset++) {
+                String candidate = codeAt(key, step + offset);
+                assertEquals(library(key, candidate), service.verifyCodeWithWindow(key, candidate),
+                        "periodo " + offset);
+            }
+            assertFalse(service.verifyCodeWithWindow(key, "12345"));
+            assertFalse(service.verifyCodeWithWindow(key, "12a456"));
+            assertFalse(service.verifyCodeWithWindow(key, null));
+        }
+    }
+
+    @Test
+    void rejectsReplayedCode() throws Exception {
+        TotpService service = new TotpService();
+        String key = service.generateSecret();
+        long step = stableStep();
+
+        assertTrue(service.verifyCodeOnce("uid-1", key, codeAt(key, step)));
+        assertFalse(service.verifyCodeOnce("uid-1", key, codeAt(key, step)), "mismo código repetido");
+        assertFalse(service.verifyCodeOnce("uid-1", key, codeAt(key, step - 1)), "código anterior al usado");
+        assertTrue(service.verifyCodeOnce("uid-2", key, codeAt(key, step)), "otro usuario");
+        assertTrue(service.verifyCodeOnce("uid-1", key, codeAt(key, step + 1)), "periodo siguiente");
+        assertFalse(service.verifyCodeOnce("uid-1", key, codeAt(key, step + 1)));
+    }
+
+    /**
+     * {@code TotpService.verifyCodeWithWindow} antes de {@link TotpVerifier}: verificador de la
+     * librería con ±1 periodo.
+     */
+    private static boolean library(String secret, String code) {
+        DefaultCodeVerifier verifier = new DefaultCodeVerifier(new DefaultCodeGenerator(), new SystemTimeProvider());
+        verifier.setTimePeriod(PERIOD);
+        verifier.setAllowedTimePeriodDiscrepancy(1);
+        return verifier.isValidCode(secret, code);
+    }
+
+    private static String codeAt(String secret, long step) throws CodeGenerationException {
+        return new DefaultCodeGenerator().generate(secret, step);
+    }
+
+    /**
+     * Espera al siguiente periodo si el actual está por terminar, para que la prueba no lo cruce.
+     */
+    private static long stableStep() throws InterruptedException {
+        long millisIntoPeriod = System.currentTimeMillis() % (PERIOD * 1000L);
+        if (millisIntoPeriod > (PERIOD - 3) * 1000L) {
+            Thread.sleep(PERIOD * 1000L - millisIntoPeriod + 100);
+        }
+        return System.currentTimeMillis() / 1000 / PERIOD;
+    }
+}
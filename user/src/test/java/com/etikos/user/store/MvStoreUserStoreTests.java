@@ -0,0 +1,165 @@
+package com.etikos.user.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Garantías del {@link UserStore} sobre el almacén embebido en memoria.
+ */
+class MvStoreUserStoreTests {
+
+    private MvStoreUserStore embedded;
+
+    @BeforeEach
+    void openStore() {
+        UserStoreProperties properties = new UserStoreProperties();
+        properties.setType(UserStoreProperties.Type.EMBEDDED);
+        properties.setPath("");
+        embedded = new MvStoreUserStore(properties, new ObjectMapper());
+    }
+
+    @AfterEach
+    void closeStore() {
+        embedded.destroy();
+    }
+
+    @Test
+    void createClaimsEmailAndUsername() {
+        UserRecord created = embedded.create(user("ana", "Ana@Etikos.com", "CUSTOMER")).join();
+
+        assertEquals(created.getId(), created.getString("uid"));
+        assertEquals(created.getId(), embedded.findUidByEmail(" ana@etikos.COM ").join(), "email normalizado");
+        assertEquals(created.getId(), embedded.findUidByUsername("ana").join());
+        assertNull(embedded.findUidByUsername("Ana").join(), "el username se compara tal cual");
+
+        assertConflict("Email already exists", embedded.create(user("otra", "ana@etikos.com", "CUSTOMER")));
+        assertConflict("Username already exists", embedded.create(user("ana", "otra@etikos.com", "CUSTOMER")));
+        assertNull(embedded.findUidByEmail("otra@etikos.com").join(), "un conflicto no deja claves a medias");
+        assertEquals(1, embedded.scan(UserProjection.KEYS, null, 10).join().size());
+    }
+
+    @Test
+    void updateMovesKeysAtomically() {
+        String ana = embedded.create(user("ana", "ana@etikos.com", "CUSTOMER")).join().getId();
+        String bea = embedded.create(user("bea", "bea@etikos.com", "CUSTOMER")).join().getId();
+
+        assertTrue(embedded.update(ana, Map.of("email", "ana.nueva@etikos.com", "password", "hash2")).join());
+        assertEquals(ana, embedded.findUidByEmail("ana.nueva@etikos.com").join());
+        assertNull(embedded.findUidByEmail("ana@etikos.com").join(), "la clave anterior queda libre");
+        assertEquals("hash2", embedded.findById(ana, UserProjection.PASSWORD).join().getString("password"));
+
+        assertConflict("Email already exists", embedded.update(bea, Map.of("email", "ANA.nueva@etikos.com", "name", "X")));
+        assertEquals("bea@etikos.com", embedded.findById(bea, UserProjection.PROFILE).join().getString("email"));
+        assertEquals("bea", embedded.findById(bea, UserProjection.PROFILE).join().getString("name"),
+                "un conflicto no aplica el resto de cambios");
+
+        // Cambiar sólo mayúsculas conserva la misma clave
+        assertTrue(embedded.update(ana, Map.of("email", "Ana.Nueva@etikos.com")).join());
+        assertEquals(ana, embedded.findUidByEmail("ana.nueva@etikos.com").join());
+
+        assertFalse(embedded.update("no-existe", Map.of("disabled", true)).join());
+    }
+
+    @Test
+    void deleteReleasesKeys() {
+        String ana = embedded.create(user("ana", "ana@etikos.com", "ADMIN")).join().getId();
+        assertTrue(embedded.existsWithRole("ADMIN").join());
+
+        UserRecord deleted = embedded.delete(ana).join();
+        assertEquals("ana@etikos.com", deleted.getString("email"));
+        assertEquals("ana", deleted.getString("username"));
+        assertNull(deleted.get("password"), "sólo devuelve las claves");
+        assertNull(embedded.findById(ana, UserProjection.ACCOUNT).join());
+        assertFalse(embedded.existsWithRole("ADMIN").join());
+        assertNull(embedded.delete(ana).join());
+
+        // El email y el username se pueden volver a registrar
+        embedded.create(user("ana", "ana@etikos.com", "CUSTOMER")).join();
+    }
+
+    @Test
+    void existsWithRoleFollowsRoleChanges() {
+        String ana = embedded.create(user("ana", "ana@etikos.com", "CUSTOMER")).join().getId();
+        assertFalse(embedded.existsWithRole("ADMIN").join());
+        assertFalse(embedded.existsWithRole("ADMI").join(), "no casa por prefijo");
+
+        embedded.update(ana, Map.of("role", "ADMIN")).join();
+        assertTrue(embedded.existsWithRole("ADMIN").join());
+        assertFalse(embedded.existsWithRole("CUSTOMER").join());
+    }
+
+    @Test
+    void scanPagesInUidOrderWithProjection() {
+        Set<String> created = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            created.add(embedded.create(user("user" + i, "user" + i + "@etikos.com", "CUSTOMER")).join().getId());
+        }
+
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        List<UserRecord> page;
+        do {
+            page = embedded.scan(UserProjection.BIOMETRIC_STATUS, after, 10).join();
+            for (UserRecord record : page) {
+                assertNull(record.get("password"));
+                assertEquals(Boolean.FALSE, record.getBoolean("biometricEnabled"));
+                seen.add(record.getId());
+            }
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 10);
+
+        assertEquals(25, seen.size());
+        assertEquals(created, new HashSet<>(seen));
+        assertEquals(seen.stream().sorted().toList(), seen);
+    }
+
+    @Test
+    void compareAndSetOnlyWritesExpectedValue() {
+        String ana = embedded.create(user("ana", "ana@etikos.com", "CUSTOMER")).join().getId();
+
+        assertFalse(embedded.compareAndSet(ana, "password", "otro", "hash2").join());
+        assertTrue(embedded.compareAndSet(ana, "password", "hash", "hash2").join());
+        assertFalse(embedded.compareAndSet(ana, "password", "hash", "hash3").join());
+        assertEquals("hash2", embedded.findById(ana, UserProjection.PASSWORD).join().getString("password"));
+        assertFalse(embedded.compareAndSet("no-existe", "password", "hash", "hash2").join());
+    }
+
+    private static Map<String, Object> user(String username, String email, String role) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("username", username);
+        user.put("email", email);
+        user.put("password", "hash");
+        user.put("name", username);
+        user.put("lastname", "Etikos");
+        user.put("role", role);
+        user.put("disabled", false);
+        user.put("biometricEnabled", false);
+        user.put("totpEnabled", false);
+        user.put("totpSecret", null);
+        return user;
+    }
+
+    private static void assertConflict(String message, CompletableFuture<?> future) {
+        ExecutionException error = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(UserKeyConflictException.class, error.getCause());
+        assertEquals(message, error.getCause().getMessage());
+    }
+}
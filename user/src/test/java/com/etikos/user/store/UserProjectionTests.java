@@ -0,0 +1,24 @@
+package com.etikos.user.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserProjectionTests {
+
+    @Test
+    void projectionsKeepSecretsWhereNeeded() {
+        for (UserProjection p : List.of(UserProjection.PROFILE, UserProjection.BIOMETRIC_STATUS, UserProjection.KEYS)) {
+            assertFalse(p.fields().contains("password"), p.name());
+            assertFalse(p.fields().contains("totpSecret"), p.name());
+        }
+        // La caché sirve al login y a TOTP: perfil completo más contraseña y secreto
+        assertTrue(UserProjection.ACCOUNT.fields().containsAll(UserProjection.PROFILE.fields()));
+        assertTrue(UserProjection.ACCOUNT.fields().containsAll(List.of("password", "totpSecret")));
+        assertTrue(UserProjection.ACCOUNT.fields().containsAll(UserProjection.BIOMETRIC_STATUS.fields()));
+        assertFalse(UserProjection.ACCOUNT.fields().contains("createdAt"));
+    }
+}